@@ -0,0 +1,27 @@
+package jcrush.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result comes with its allocation rate
+ * (gc.alloc.rate.norm is the number of bytes allocated per operation). <br></br>
+ * Any JMH command line option can be given, for example a regular expression to run only some of the benchmarks:
+ * java -jar target/benchmarks.jar Decoding
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty())
+            options.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,78 @@
+package jcrush.benchmarks;
+
+import com.google.gson.stream.JsonReader;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+import jcrush.system.Utils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the bodies of getFileInfo, getFileInfos and getFileStatus through the {@link ModelBinding} methods the
+ * client decodes them with, next to the old map based decoding of {@link Utils#convertMapToFile(Map)}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodingBenchmark {
+    @Param({"100"})
+    public int listSize;
+
+    private String info;
+    private String status;
+    private String infoList;
+    private Map<?, ?> infoMap;
+
+    @Setup
+    public void setup() {
+        info = Payloads.file(Payloads.HASH);
+        status = Payloads.status(Payloads.HASH);
+        infoList = Payloads.infoList(Payloads.hashes(listSize));
+        infoMap = ModelBinding.GSON.fromJson(info, Map.class);
+    }
+
+    @Benchmark
+    public MediaCrushFile fileInfo() throws IOException {
+        return ModelBinding.readFile(new JsonReader(new StringReader(info)), Payloads.HASH);
+    }
+
+    @Benchmark
+    public void fileInfos(Blackhole blackhole) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(infoList));
+        reader.beginObject();
+        MediaCrushFile file;
+        while ((file = ModelBinding.readListedFile(reader)) != null) {
+            blackhole.consume(file);
+        }
+        reader.endObject();
+    }
+
+    @Benchmark
+    public MediaCrushFile fileStatus() throws IOException {
+        return ModelBinding.readFileStatus(new JsonReader(new StringReader(status)), Payloads.HASH);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public MediaCrushFile convertMapToFile() throws Exception {
+        return Utils.convertMapToFile(infoMap);
+    }
+
+    @Benchmark
+    public MediaCrushFile parseMapThenConvert() throws Exception {
+        return convertMapToFileFromJson();
+    }
+
+    @SuppressWarnings("deprecation")
+    private MediaCrushFile convertMapToFileFromJson() throws Exception {
+        return Utils.convertMapToFile(ModelBinding.GSON.fromJson(info, Map.class));
+    }
+}
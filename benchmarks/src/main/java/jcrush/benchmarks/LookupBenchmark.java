@@ -0,0 +1,48 @@
+package jcrush.benchmarks;
+
+import jcrush.model.FileStatus;
+import jcrush.model.FileType;
+import jcrush.system.Utils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The string to enum lookups done for every decoded file, and the extension lookup done for every uploaded file
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+    @Param({"image/gif", "audio/ogg", "application/unknown"})
+    public String contentType;
+
+    @Param({"done", "timeout"})
+    public String status;
+
+    private File file;
+
+    @Setup
+    public void setup() {
+        file = new File("/tmp/some.directory/upload.JPEG");
+    }
+
+    @Benchmark
+    public FileType toFileType() {
+        return FileType.toFileType(contentType);
+    }
+
+    @Benchmark
+    public FileStatus toFileStatus() {
+        return FileStatus.toFileStatus(status);
+    }
+
+    @Benchmark
+    public String toContentType() {
+        return Utils.toContentType(file);
+    }
+}
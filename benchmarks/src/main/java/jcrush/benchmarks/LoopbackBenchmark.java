@@ -0,0 +1,69 @@
+package jcrush.benchmarks;
+
+import jcrush.JCrushClient;
+import jcrush.model.FileType;
+import jcrush.model.MediaCrushFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole calls through {@link JCrushClient} against a {@link LoopbackServer}: building the request, the pooled
+ * connection, and decoding the response. Caching and coalescing are disabled so every call reaches the server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopbackBenchmark {
+    private LoopbackServer server;
+    private JCrushClient client;
+    private String[] hashes;
+    private byte[] upload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new LoopbackServer();
+        client = new JCrushClient(server.getApiUrl());
+        client.setCoalescing(false);
+        hashes = Payloads.hashes(100);
+        upload = new byte[64 * 1024];
+        new Random(42).nextBytes(upload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public MediaCrushFile getFileInfo() throws IOException {
+        return client.getFileInfo(Payloads.HASH);
+    }
+
+    @Benchmark
+    public MediaCrushFile[] getFileInfos() throws IOException {
+        return client.getFileInfos(hashes);
+    }
+
+    @Benchmark
+    public MediaCrushFile getFileStatus() throws IOException {
+        return client.getFileStatus(Payloads.HASH);
+    }
+
+    @Benchmark
+    public boolean doesExists() throws IOException {
+        return client.doesExists(Payloads.HASH);
+    }
+
+    @Benchmark
+    public String uploadFile() throws IOException {
+        return client.uploadFile(new ByteArrayInputStream(upload), upload.length, FileType.GIF, "upload.gif");
+    }
+}
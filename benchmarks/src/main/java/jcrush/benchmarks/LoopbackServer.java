@@ -0,0 +1,76 @@
+package jcrush.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A loopback server that answers the API endpoints with canned responses, so the benchmarks measure the client and
+ * not the network
+ */
+final class LoopbackServer implements HttpHandler {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    LoopbackServer() throws IOException {
+        //Without TCP_NODELAY, every response waits for a delayed ACK and the benchmarks only measure that
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.createContext("/api/", this);
+        server.start();
+    }
+
+    String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/";
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/api/".length());
+        String query = exchange.getRequestURI().getRawQuery();
+        try {
+            if (path.equals("upload/file")) {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) { }
+                respond(exchange, "{\"hash\":\"" + Payloads.HASH + "\"}");
+            } else if (path.equals("info") && query != null && query.startsWith("list=")) {
+                respond(exchange, Payloads.infoList(query.substring("list=".length()).split(",")));
+            } else if (path.endsWith("/exists")) {
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.endsWith("/status")) {
+                respond(exchange, Payloads.status(path.substring(0, path.length() - "/status".length())));
+            } else {
+                respond(exchange, Payloads.file(path));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,54 @@
+package jcrush.benchmarks;
+
+import jcrush.io.MultipartBody;
+import jcrush.model.FileType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the multipart body of an upload and reading it the way the request is written
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartBenchmark {
+    @Param({"1024", "1048576"})
+    public int size;
+
+    private byte[] content;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        buffer = new byte[8192];
+    }
+
+    @Benchmark
+    public MultipartBody construct() {
+        return new MultipartBody("upload.gif", FileType.GIF);
+    }
+
+    @Benchmark
+    public long constructAndStream(Blackhole blackhole) throws IOException {
+        MultipartBody body = new MultipartBody("upload.gif", FileType.GIF);
+        blackhole.consume(body.getContentType());
+        InputStream in = body.wrap(new ByteArrayInputStream(content));
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total + body.getLength(content.length);
+    }
+}
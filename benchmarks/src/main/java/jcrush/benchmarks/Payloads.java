@@ -0,0 +1,41 @@
+package jcrush.benchmarks;
+
+/**
+ * The JSON bodies the benchmarks decode, shaped like the responses of the MediaCrush API
+ */
+final class Payloads {
+    static final String HASH = "CPvuR5lRhmS0";
+
+    private Payloads() { }
+
+    static String file(String hash) {
+        return "{\"compression\":8.93,\"original\":\"/" + hash + ".gif\",\"type\":\"image/gif\",\"blob_type\":\"video\"," +
+                "\"metadata\":{\"has_audio\":false,\"has_video\":true,\"dimensions\":{\"width\":500,\"height\":281}}," +
+                "\"files\":[{\"file\":\"/" + hash + ".mp4\",\"type\":\"video/mp4\"}," +
+                "{\"file\":\"/" + hash + ".ogv\",\"type\":\"video/ogv\"}," +
+                "{\"file\":\"/" + hash + ".webm\",\"type\":\"video/webm\"}," +
+                "{\"file\":\"/" + hash + ".gif\",\"type\":\"image/gif\"}]}";
+    }
+
+    static String status(String hash) {
+        return "{\"status\":\"done\",\"" + hash + "\":" + file(hash) + "}";
+    }
+
+    static String[] hashes(int count) {
+        String[] hashes = new String[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = String.format("h%011d", i);
+        }
+        return hashes;
+    }
+
+    static String infoList(String[] hashes) {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < hashes.length; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append('"').append(hashes[i]).append("\":").append(file(hashes[i]));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,88 @@
+package jcrush;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The totals of a {@link BulkUploader} run
+ */
+public class BulkUploadReport {
+    private final long uploaded;
+    private final long duplicates;
+    private final long rejected;
+    private final long failed;
+    private final long bytes;
+    private final long elapsed;
+
+    BulkUploadReport(long uploaded, long duplicates, long rejected, long failed, long bytes, long elapsed) {
+        this.uploaded = uploaded;
+        this.duplicates = duplicates;
+        this.rejected = rejected;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.elapsed = elapsed;
+    }
+
+    public long getUploadedCount() {
+        return uploaded;
+    }
+
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    public long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Get the number of files that were processed, whatever their outcome
+     * @return
+     *        The number of files
+     */
+    public long getFileCount() {
+        return uploaded + duplicates + rejected + failed;
+    }
+
+    /**
+     * Get the number of bytes of the files that were uploaded
+     * @return
+     *        The number of bytes
+     */
+    public long getUploadedBytes() {
+        return bytes;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of files processed every second, whatever their outcome
+     * @return
+     *        The files per second
+     */
+    public double getFilesPerSecond() {
+        return elapsed == 0 ? 0 : getFileCount() * 1e9 / elapsed;
+    }
+
+    /**
+     * Get the number of bytes uploaded every second
+     * @return
+     *        The bytes per second
+     */
+    public double getBytesPerSecond() {
+        return elapsed == 0 ? 0 : bytes * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d files in %.1fs (%.1f files/s, %.2f MB/s): %d uploaded, %d duplicates, %d rejected, %d failed",
+                getFileCount(), elapsed / 1e9, getFilesPerSecond(), getBytesPerSecond() / (1024 * 1024),
+                uploaded, duplicates, rejected, failed);
+    }
+}
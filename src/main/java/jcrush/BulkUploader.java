@@ -0,0 +1,301 @@
+package jcrush;
+
+import jcrush.model.FileType;
+import jcrush.system.exceptions.DuplicateUploadException;
+import jcrush.system.exceptions.UploadRejectedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jcrush.system.Utils.toContentType;
+
+/**
+ * Uploads many files through a {@link JCrushClient}. <br></br>
+ * Files are uploaded on the executor of the client, at most <b>parallelism</b> at a time. A run hands out files only
+ * as fast as they are uploaded, so a directory of millions of files is walked as it is uploaded rather than listed up
+ * front, and no more than <b>parallelism</b> files are ever waiting. Files whose type cannot be uploaded are rejected
+ * without being sent, as are files refused by the {@link UploadPolicy} of the client, which also lets files without a
+ * known extension through to be sniffed. A failed file does not stop the run. <br></br>
+ * The result of every file is given to the listener, and the totals are returned once the run is done. The limits of the
+ * client, such as its {@link jcrush.io.RateLimiter} and {@link jcrush.io.ConnectionPool}, still apply. <br></br>
+ * This class is thread-safe, but each run blocks the thread that started it.
+ */
+public class BulkUploader {
+    /**
+     * The default number of files uploaded at once
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Receives the result of every file
+     */
+    public interface Listener {
+        /**
+         * Called once a file was processed. This is called from the threads uploading the files, so it must be
+         * thread-safe.
+         * @param result
+         *              The result of the file
+         */
+        void onResult(UploadResult result);
+    }
+
+    private final JCrushClient client;
+    private volatile int parallelism = DEFAULT_PARALLELISM;
+    private volatile Listener listener;
+
+    /**
+     * Create a new uploader
+     * @param client
+     *              The client to upload the files with
+     */
+    public BulkUploader(JCrushClient client) {
+        if (client == null)
+            throw new IllegalArgumentException("client cannot be null!");
+        this.client = client;
+    }
+
+    /**
+     * Upload every file in <b>directory</b> and its subdirectories
+     * @param directory
+     *                 The directory
+     * @return
+     *        The totals of the run
+     * @throws IOException
+     *                    If <b>directory</b> is not a directory, or the thread was interrupted
+     */
+    public BulkUploadReport uploadDirectory(File directory) throws IOException {
+        return uploadDirectory(directory.toPath());
+    }
+
+    /**
+     * Upload every file in <b>directory</b> and its subdirectories
+     * @param directory
+     *                 The directory
+     * @return
+     *        The totals of the run
+     * @throws IOException
+     *                    If <b>directory</b> is not a directory, or the thread was interrupted
+     */
+    public BulkUploadReport uploadDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            throw new IOException("The path specified is not a directory!");
+        final Run run = new Run();
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile())
+                        run.submit(file.toFile());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    run.report(new UploadResult(file.toFile(), UploadResult.Outcome.FAILED, null, e));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            run.await();
+        }
+        return run.toReport();
+    }
+
+    /**
+     * Upload every file in <b>files</b>
+     * @param files
+     *             The files
+     * @return
+     *        The totals of the run
+     * @throws IOException
+     *                    If the thread was interrupted
+     */
+    public BulkUploadReport uploadFiles(Iterable<File> files) throws IOException {
+        Run run = new Run();
+        try {
+            for (File file : files) {
+                run.submit(file);
+            }
+        } finally {
+            run.await();
+        }
+        return run.toReport();
+    }
+
+    /**
+     * Upload every file in <b>paths</b>
+     * @param paths
+     *             The files
+     * @return
+     *        The totals of the run
+     * @throws IOException
+     *                    If the thread was interrupted
+     */
+    public BulkUploadReport uploadPaths(Iterable<Path> paths) throws IOException {
+        Run run = new Run();
+        try {
+            for (Path path : paths) {
+                run.submit(path.toFile());
+            }
+        } finally {
+            run.await();
+        }
+        return run.toReport();
+    }
+
+    /**
+     * Check whether <b>file</b> has a type that can be uploaded
+     * @param file
+     *            The file
+     * @return
+     *        true if the type of <b>file</b> is known
+     */
+    public static boolean isUploadable(File file) {
+        String type = toContentType(file);
+        return type != null && FileType.toFileType(type) != FileType.UNKNOWN;
+    }
+
+    /**
+     * Set the number of files uploaded at once
+     * @param parallelism
+     *                   The number of files
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1!");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the listener the result of every file is given to
+     * @param listener
+     *                The listener, or null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * The state of one run
+     */
+    private class Run {
+        private final int permits = parallelism;
+        private final Semaphore slots = new Semaphore(permits);
+        private final Executor executor = client.getExecutor();
+        private final Listener listener = BulkUploader.this.listener;
+        private final long start = System.nanoTime();
+        private final AtomicLong uploaded = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private long elapsed;
+
+        /**
+         * Upload <b>file</b> once a slot is free, waiting for one
+         */
+        void submit(final File file) throws InterruptedIOException {
+            //With a policy the client sniffs the type itself, and rejects the file just as fast
+            if (client.getUploadPolicy() == null && !isUploadable(file)) {
+                report(new UploadResult(file, UploadResult.Outcome.REJECTED, null, null));
+                return;
+            }
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to upload " + file);
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            report(upload(file));
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                report(new UploadResult(file, UploadResult.Outcome.FAILED, null, e));
+            }
+        }
+
+        private UploadResult upload(File file) {
+            try {
+                long length = file.length();
+                String hash = client.uploadFile(file, true);
+                bytes.addAndGet(length);
+                return new UploadResult(file, UploadResult.Outcome.UPLOADED, hash, null);
+            } catch (DuplicateUploadException e) {
+                return new UploadResult(file, UploadResult.Outcome.DUPLICATE, e.getHash(), null);
+            } catch (UploadRejectedException e) {
+                return new UploadResult(file, UploadResult.Outcome.REJECTED, null, e);
+            } catch (Exception e) {
+                return new UploadResult(file, UploadResult.Outcome.FAILED, null, e);
+            }
+        }
+
+        void report(UploadResult result) {
+            switch (result.getOutcome()) {
+                case UPLOADED:
+                    uploaded.incrementAndGet();
+                    break;
+                case DUPLICATE:
+                    duplicates.incrementAndGet();
+                    break;
+                case REJECTED:
+                    rejected.incrementAndGet();
+                    break;
+                default:
+                    failed.incrementAndGet();
+                    break;
+            }
+            if (listener != null) {
+                try {
+                    listener.onResult(result);
+                } catch (RuntimeException ignored) {
+                    //A broken listener must not stop the run
+                }
+            }
+        }
+
+        /**
+         * Wait for every file that was handed out to be done
+         */
+        void await() throws InterruptedIOException {
+            try {
+                slots.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the uploads to finish");
+            }
+            slots.release(permits);
+            elapsed = System.nanoTime() - start;
+        }
+
+        BulkUploadReport toReport() {
+            return new BulkUploadReport(uploaded.get(), duplicates.get(), rejected.get(), failed.get(), bytes.get(), elapsed);
+        }
+    }
+}
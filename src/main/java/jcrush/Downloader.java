@@ -0,0 +1,521 @@
+package jcrush;
+
+import jcrush.io.ConnectionPool;
+import jcrush.io.ConnectionType;
+import jcrush.io.Requester;
+import jcrush.model.CrushedFile;
+import jcrush.model.MediaCrushFile;
+import jcrush.system.Validator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static jcrush.system.Utils.join;
+
+/**
+ * Downloads the crushed files of a {@link MediaCrushFile}. <br></br>
+ * Every file is written straight from the response into a {@link FileChannel} in large transfers, without copying it
+ * through a buffer of this class. A file whose server supports byte ranges and that is larger than the segment size is
+ * split into segments that are downloaded in parallel, and all the files of a {@link MediaCrushFile} are downloaded at
+ * the same time. The downloads are bounded by a {@link ConnectionPool} of their own, so they never hold the connections
+ * of the client. The work runs on the executor of the client, and no task waits for another one, so that executor may
+ * have any number of threads. <br></br>
+ * A download is written to part files next to the target, named after the byte range they hold, and the target only
+ * appears once every part is complete. A download that was interrupted resumes from its part files; the server must
+ * support byte ranges for that, otherwise it starts over. A target that already exists with the expected length is not
+ * downloaded again. <br></br>
+ * This class is thread-safe.
+ */
+public class Downloader implements Closeable {
+    /**
+     * The default maximum number of connections open at once
+     */
+    public static final int DEFAULT_CONNECTIONS = 8;
+    /**
+     * The default size of a segment, 8 MiB
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * The number of bytes moved into the file by one transfer
+     */
+    public static final long TRANSFER_SIZE = 1024 * 1024;
+
+    private final JCrushClient client;
+    private final ConnectionPool pool;
+    private volatile long segmentSize = DEFAULT_SEGMENT_SIZE;
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong resumedBytes = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    /**
+     * Create a downloader with {@link Downloader#DEFAULT_CONNECTIONS} connections
+     * @param client
+     *              The client whose API URL relative file paths are resolved against, and whose executor and timeouts
+     *              are used
+     */
+    public Downloader(JCrushClient client) {
+        this(client, DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * Create a downloader
+     * @param client
+     *              The client whose API URL relative file paths are resolved against, and whose executor and timeouts
+     *              are used
+     * @param connections
+     *                   The maximum number of connections open at once, counting every segment of every file
+     */
+    public Downloader(JCrushClient client, int connections) {
+        if (client == null)
+            throw new IllegalArgumentException("client cannot be null!");
+        this.client = client;
+        this.pool = new ConnectionPool(connections);
+    }
+
+    /**
+     * Download every crushed file of <b>file</b> into <b>directory</b>, or its original file if it has none
+     * @param file
+     *            The file
+     * @param directory
+     *                 The directory to download into. Every file is named after the last part of its path.
+     * @return
+     *        The downloaded files, in the order of {@link MediaCrushFile#getFiles()}
+     * @throws IOException
+     *                    If any file could not be downloaded. The other files are still downloaded.
+     */
+    public Map<CrushedFile, File> download(MediaCrushFile file, File directory) throws IOException {
+        Validator.validateNotNull(file, "file");
+        CrushedFile[] files = file.getFiles();
+        if (files == null || files.length == 0)
+            files = new CrushedFile[] { file.getOriginalFile() };
+        return download(Arrays.asList(files), directory);
+    }
+
+    /**
+     * Download every file in <b>files</b> into <b>directory</b> at the same time
+     * @param files
+     *             The files
+     * @param directory
+     *                 The directory to download into. Every file is named after the last part of its path.
+     * @return
+     *        The downloaded files, in the order of <b>files</b>
+     * @throws IOException
+     *                    If any file could not be downloaded. The other files are still downloaded.
+     */
+    public Map<CrushedFile, File> download(Collection<CrushedFile> files, File directory) throws IOException {
+        Validator.validateNotNull(files, "files");
+        Validator.validateNotNull(directory, "directory");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("The directory " + directory + " could not be created!");
+
+        Executor executor = client.getExecutor();
+        Map<CrushedFile, CompletableFuture<File>> futures = new LinkedHashMap<CrushedFile, CompletableFuture<File>>();
+        for (CrushedFile file : files) {
+            futures.put(file, downloadAsync(file, new File(directory, nameOf(file)), executor));
+        }
+
+        Map<CrushedFile, File> downloaded = new LinkedHashMap<CrushedFile, File>();
+        IOException failure = null;
+        for (Map.Entry<CrushedFile, CompletableFuture<File>> entry : futures.entrySet()) {
+            try {
+                downloaded.put(entry.getKey(), join(entry.getValue()));
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+        return downloaded;
+    }
+
+    /**
+     * Download <b>file</b> to <b>target</b>, in parallel segments if it is large enough
+     * @param file
+     *            The file
+     * @param target
+     *              Where to write it
+     * @return
+     *        <b>target</b>
+     * @throws IOException
+     *                    If the file could not be downloaded. Its complete segments are kept to resume from.
+     */
+    public File download(CrushedFile file, File target) throws IOException {
+        Validator.validateNotNull(file, "file");
+        Validator.validateNotNull(target, "target");
+        return join(downloadAsync(file, target, client.getExecutor()));
+    }
+
+    /**
+     * Start downloading <b>file</b> to <b>target</b> on <b>executor</b>. No task of a download waits for another one:
+     * the segments are fetched by tasks of their own, and the task that assembles them is only submitted once they are
+     * all done, so a bounded executor never has all of its threads waiting for work queued behind them.
+     */
+    private CompletableFuture<File> downloadAsync(final CrushedFile file, final File target, final Executor executor) {
+        return submit(executor, new Callable<Probe>() {
+            @Override
+            public Probe call() throws Exception {
+                return probe(resolve(file));
+            }
+        }).thenCompose(new Function<Probe, CompletionStage<File>>() {
+            @Override
+            public CompletionStage<File> apply(Probe probe) {
+                return fetchAll(probe, target, executor);
+            }
+        });
+    }
+
+    /**
+     * Find the length of <b>url</b> and whether it can be downloaded in ranges
+     */
+    private Probe probe(URL url) throws IOException {
+        Requester head = newRequester(ConnectionType.HEAD, url);
+        try {
+            head.connect();
+            long length = contentLength(head);
+            return new Probe(url, length, length >= 0 && "bytes".equalsIgnoreCase(header(head, "Accept-Ranges")));
+        } finally {
+            head.disconnect();
+        }
+    }
+
+    /**
+     * Download the file <b>probe</b> describes to <b>target</b>, in parallel segments if the server supports ranges
+     */
+    private CompletableFuture<File> fetchAll(final Probe probe, final File target, final Executor executor) {
+        final URL url = probe.url;
+        final long length = probe.length;
+        if (length >= 0 && target.isFile() && target.length() == length)
+            return CompletableFuture.completedFuture(target);
+        if (!probe.ranged) {
+            return submit(executor, new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    File part = new File(target.getPath() + ".part");
+                    fetch(url, part, 0, -1, false);
+                    if (length >= 0 && part.length() != length)
+                        throw new IOException("Downloaded " + part.length() + " of " + length + " bytes of " + url);
+                    Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    return target;
+                }
+            });
+        }
+
+        //Split the file into segments, whose part files are found again by their ranges when resuming
+        long size = Math.max(1, segmentSize);
+        final List<File> parts = new ArrayList<File>();
+        final List<CompletableFuture<Void>> fetches = new ArrayList<CompletableFuture<Void>>();
+        for (long start = 0; start < length || (length == 0 && start == 0); start += size) {
+            final long first = start;
+            final long last = Math.min(length, start + size) - 1;
+            final File part = new File(target.getPath() + ".part-" + first + "-" + last);
+            parts.add(part);
+            fetches.add(submit(executor, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fetch(url, part, first, last, true);
+                    return null;
+                }
+            }));
+        }
+
+        //Wait for every segment, failed or not, before assembling or reporting the failures
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[fetches.size()]))
+                .handle(new BiFunction<Void, Throwable, Void>() {
+                    @Override
+                    public Void apply(Void result, Throwable t) {
+                        return null;
+                    }
+                }).thenCompose(new Function<Void, CompletionStage<File>>() {
+                    @Override
+                    public CompletionStage<File> apply(Void result) {
+                        return submit(executor, new Callable<File>() {
+                            @Override
+                            public File call() throws Exception {
+                                IOException failure = null;
+                                for (CompletableFuture<Void> fetch : fetches) {
+                                    try {
+                                        join(fetch);
+                                    } catch (IOException e) {
+                                        if (failure == null)
+                                            failure = e;
+                                        else
+                                            failure.addSuppressed(e);
+                                    }
+                                }
+                                if (failure != null)
+                                    throw failure;
+                                assemble(parts, target, length);
+                                return target;
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Download the bytes <b>first</b> to <b>last</b> of <b>url</b> into <b>part</b>, continuing from what it already
+     * holds when <b>ranged</b>
+     */
+    private void fetch(URL url, File part, long first, long last, boolean ranged) throws IOException {
+        long expected = last - first + 1;
+        long have = ranged && part.isFile() ? part.length() : 0;
+        if (ranged && have > expected) {
+            //Only the range of the part is ever written, so anything past it is not part of the file
+            FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE);
+            try {
+                channel.truncate(expected);
+            } finally {
+                channel.close();
+            }
+            have = expected;
+        }
+        if (have > 0)
+            resumedBytes.addAndGet(have);
+        if (ranged && have == expected)
+            return;
+        if (ranged && expected == 0) {
+            Files.write(part.toPath(), new byte[0]);
+            return;
+        }
+
+        Requester requester = newRequester(ConnectionType.GET, url);
+        requester.setStreamResponse(true);
+        if (ranged)
+            requester.addHeader("Range", "bytes=" + (first + have) + "-" + last);
+        try {
+            requester.connect();
+            if (ranged && requester.getResponseCode() != 206)
+                throw new IOException("The server ignored the byte range of " + url + " (" + requester.getResponseCode() + ")");
+            segments.incrementAndGet();
+
+            FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                if (!ranged)
+                    channel.truncate(0);
+                ReadableByteChannel in = Channels.newChannel(requester.getResponseStream());
+                long position = have;
+                long count;
+                //A ranged part never grows past its range, even if the server sends more
+                while ((count = channel.transferFrom(in, position, ranged ? Math.min(TRANSFER_SIZE, expected - position) : TRANSFER_SIZE)) > 0) {
+                    position += count;
+                    downloadedBytes.addAndGet(count);
+                }
+                if (ranged && position != expected)
+                    throw new IOException("The response for " + url + " ended after " + position + " of " + expected + " bytes");
+                if (ranged && in.read(ByteBuffer.allocate(1)) > 0)
+                    throw new IOException("The response for " + url + " is longer than the " + expected + " bytes asked for");
+            } finally {
+                channel.close();
+            }
+        } finally {
+            requester.disconnect();
+        }
+    }
+
+    /**
+     * Join <b>parts</b> into <b>target</b> and delete them. A single part is moved instead of copied. If the parts do
+     * not add up to <b>length</b> bytes, they are deleted and <b>target</b> is left as it was.
+     */
+    private static void assemble(List<File> parts, File target, long length) throws IOException {
+        if (parts.size() == 1) {
+            File part = parts.get(0);
+            if (part.length() != length) {
+                Files.deleteIfExists(part.toPath());
+                throw new IOException("Assembled " + part.length() + " of " + length + " bytes of " + target);
+            }
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        File assembling = new File(target.getPath() + ".part");
+        FileChannel out = FileChannel.open(assembling.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            for (File part : parts) {
+                FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ);
+                try {
+                    long size = in.size();
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += in.transferTo(copied, size - copied, out);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (assembling.length() != length) {
+            long assembled = assembling.length();
+            Files.deleteIfExists(assembling.toPath());
+            for (File part : parts) {
+                Files.deleteIfExists(part.toPath());
+            }
+            throw new IOException("Assembled " + assembled + " of " + length + " bytes of " + target);
+        }
+        Files.move(assembling.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for (File part : parts) {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    /**
+     * Get the URL of <b>file</b>. Files that only have a path are resolved against the server of the client.
+     * @param file
+     *            The file
+     * @return
+     *        The URL to download it from
+     * @throws IOException
+     *                    If the file has neither a URL nor a path
+     */
+    public URL resolve(CrushedFile file) throws IOException {
+        if (file.getURLAsString() != null)
+            return new URL(file.getURLAsString());
+        if (file.getFile() == null)
+            throw new IOException("The file has no URL to download it from!");
+        return new URL(new URL(client.getApiURL()), file.getFile());
+    }
+
+    private static String nameOf(CrushedFile file) {
+        String path = file.getURLAsString() != null ? file.getURLAsString() : file.getFile();
+        if (path == null)
+            throw new IllegalArgumentException("The file has no URL to download it from!");
+        int query = path.indexOf('?');
+        if (query != -1)
+            path = path.substring(0, query);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private Requester newRequester(ConnectionType type, URL url) {
+        Requester requester = new Requester(type, url, pool);
+        requester.setConnectTimeout(client.getConnectTimeout());
+        requester.setReadTimeout(client.getReadTimeout());
+        requester.setRecieve(true);
+        return requester;
+    }
+
+    private static long contentLength(Requester requester) {
+        String length = header(requester, "Content-Length");
+        if (length == null)
+            return -1;
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String header(Requester requester, String name) {
+        for (Map.Entry<String, List<String>> entry : requester.getHeaderFields().entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty())
+                return entry.getValue().get(0);
+        }
+        return null;
+    }
+
+    private static final class Probe {
+        private final URL url;
+        private final long length;
+        private final boolean ranged;
+
+        private Probe(URL url, long length, boolean ranged) {
+            this.url = url;
+            this.length = length;
+            this.ranged = ranged;
+        }
+    }
+
+    private static <T> CompletableFuture<T> submit(Executor executor, final Callable<T> call) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Set the size of the segments large files are split into
+     * @param segmentSize
+     *                   The size in bytes
+     */
+    public void setSegmentSize(long segmentSize) {
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("segmentSize must be greater than 0!");
+        this.segmentSize = segmentSize;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Get the number of bytes downloaded, not counting the bytes resumed from part files
+     * @return
+     *        The number of bytes
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    /**
+     * Get the number of bytes that were already in part files and did not have to be downloaded again
+     * @return
+     *        The number of bytes
+     */
+    public long getResumedBytes() {
+        return resumedBytes.get();
+    }
+
+    /**
+     * Get the number of responses that were downloaded, each a whole file or a segment
+     * @return
+     *        The number of responses
+     */
+    public long getSegmentCount() {
+        return segments.get();
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Close the connections of this downloader
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
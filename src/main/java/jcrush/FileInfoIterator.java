@@ -0,0 +1,111 @@
+package jcrush;
+
+import com.google.gson.stream.JsonReader;
+import jcrush.io.Requester;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the files of a batched info lookup while their responses are being read. <br></br>
+ * The hashes are looked up one info?list= request at a time, and every file is decoded straight from the response as
+ * it arrives, so only one file is held in memory at a time however many hashes are looked up. Hashes that do not
+ * exist are skipped, and files are returned in the order the server sends them. <br></br>
+ * An iterator holds a connection open while it is in the middle of a response, so it should always be closed. Since
+ * {@link Iterator} methods cannot throw checked exceptions, a failed request is thrown as an
+ * {@link UncheckedIOException}. <br></br>
+ * This class is not thread-safe.
+ * @see JCrushClient#iterateFileInfos(String...)
+ */
+public class FileInfoIterator implements Iterator<MediaCrushFile>, Closeable {
+    private final JCrushClient client;
+    private final List<String[]> chunks;
+    private int nextChunk;
+    private Requester requester;
+    private JsonReader reader;
+    private MediaCrushFile next;
+    private boolean closed;
+
+    FileInfoIterator(JCrushClient client, List<String[]> chunks) {
+        this.client = client;
+        this.chunks = chunks;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return peek() != null;
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public MediaCrushFile next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        MediaCrushFile file = next;
+        next = null;
+        return file;
+    }
+
+    /**
+     * Read the next file without wrapping exceptions
+     * @return
+     *        The next file, or null once every response was read
+     * @throws IOException
+     *                    If a request failed or the server returned 404
+     */
+    MediaCrushFile read() throws IOException {
+        MediaCrushFile file = peek();
+        next = null;
+        return file;
+    }
+
+    private MediaCrushFile peek() throws IOException {
+        while (next == null && !closed) {
+            if (reader == null) {
+                if (nextChunk >= chunks.size()) {
+                    close();
+                    break;
+                }
+                requester = client.openInfoList(chunks.get(nextChunk++));
+                reader = new JsonReader(requester.getResponseReader());
+                reader.beginObject();
+            }
+            MediaCrushFile file = ModelBinding.readListedFile(reader);
+            if (file == null) {
+                reader.endObject();
+                closeResponse();
+                continue;
+            }
+            client.remember(file);
+            next = file;
+        }
+        return next;
+    }
+
+    private void closeResponse() {
+        reader = null;
+        if (requester != null) {
+            requester.disconnect();
+            requester = null;
+        }
+    }
+
+    /**
+     * Stop iterating and close the response being read, if any
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeResponse();
+    }
+}
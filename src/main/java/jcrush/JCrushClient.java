@@ -0,0 +1,1936 @@
+package jcrush;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import jcrush.cache.ExistenceFilter;
+import jcrush.cache.MetadataCache;
+import jcrush.cache.MetadataStore;
+import jcrush.io.ConnectionPool;
+import jcrush.io.ConnectionType;
+import jcrush.io.MultipartBody;
+import jcrush.io.RateLimiter;
+import jcrush.io.RetryPolicy;
+import jcrush.io.ServerGroup;
+import jcrush.io.TransferStats;
+import jcrush.io.Transport;
+import jcrush.io.UrlConnectionTransport;
+import jcrush.io.Requester;
+import jcrush.metrics.Endpoint;
+import jcrush.metrics.MetricsRegistry;
+import jcrush.model.FileStatus;
+import jcrush.model.FileType;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+import jcrush.system.AsyncExecutors;
+import jcrush.system.BufferPool;
+import jcrush.system.ContentSniffer;
+import jcrush.system.SingleFlight;
+import jcrush.system.Validator;
+import jcrush.system.exceptions.DuplicateUploadException;
+import jcrush.system.exceptions.FileUploadFailedException;
+import jcrush.system.exceptions.RateLimitedException;
+import jcrush.system.exceptions.UploadRejectedException;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jcrush.system.Constants.*;
+import static jcrush.system.Utils.*;
+
+/**
+ * A client for the MediaCrush API. <br></br>
+ * A client owns its configuration and a {@link ConnectionPool}, which bounds its connections to the server; the
+ * keep-alive cache of HttpURLConnection reuses them between requests. That cache keeps 5 idle connections per server
+ * unless the <code>http.maxConnections</code> system property says otherwise, which the application sets before its
+ * first HTTP request. A client is thread-safe and is meant to be created once and shared.
+ * {@link JCrush} delegates to a default client.
+ */
+public class JCrushClient implements Closeable {
+    static final Gson GSON = ModelBinding.GSON;
+    //The answer to an upload, holding either the hash or an error
+    private static final Type RESPONSE_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+
+
+    private final ConnectionPool pool;
+    private volatile Transport transport;
+    private volatile String apiUrl;
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+    private volatile Executor executor;
+    private volatile boolean coalescing = true;
+    private volatile boolean deduplicating;
+    private final AtomicLong deduplicatedUploads = new AtomicLong();
+    private volatile MetadataCache cache;
+    private volatile MetadataStore store;
+    private volatile ExistenceFilter existenceFilter;
+    private volatile RateLimiter rateLimiter;
+    private volatile RetryPolicy retryPolicy;
+    private volatile ServerGroup servers;
+    private volatile UploadPolicy uploadPolicy;
+    private final TransferStats transferStats = new TransferStats();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final SingleFlight<String, MediaCrushFile> fileFlights = new SingleFlight<String, MediaCrushFile>();
+    private final SingleFlight<String, Boolean> existsFlights = new SingleFlight<String, Boolean>();
+    private StatusPoller statusPoller;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> probes;
+
+    /**
+     * Create a new client for https://www.mediacru.sh/api with a pool of {@link jcrush.system.Constants#DEFAULT_MAX_CONNECTIONS}
+     * connections
+     */
+    public JCrushClient() {
+        this(MEDIA_CRUSH_URL + API_DIRECTORY);
+    }
+
+    /**
+     * Create a new client with a pool of {@link jcrush.system.Constants#DEFAULT_MAX_CONNECTIONS} connections
+     * @param apiUrl
+     *              The URL where the API waits for connections.
+     */
+    public JCrushClient(String apiUrl) {
+        this(apiUrl, new ConnectionPool(DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /**
+     * Create a new client
+     * @param apiUrl
+     *              The URL where the API waits for connections.
+     * @param pool
+     *            The pool connections are taken from. A pool may be shared between clients.
+     */
+    public JCrushClient(String apiUrl, ConnectionPool pool) {
+        Validator.validateNotNull(apiUrl, "apiUrl");
+        Validator.validateNotNull(pool, "pool");
+        this.apiUrl = apiUrl;
+        this.pool = pool;
+        this.transport = new UrlConnectionTransport(pool);
+        this.executor = AsyncExecutors.defaultExecutor();
+    }
+
+    /**
+     * Change the server URL where the API resides.
+     * @param apiUrl The URL where the API waits for connections.
+     */
+    public void setApiURL(String apiUrl) {
+        Validator.validateNotNull(apiUrl, "apiUrl");
+        this.apiUrl = apiUrl;
+    }
+
+    /**
+     * Get the server URL where the API resides.
+     * @return
+     *        The URL where the API waits for connections.
+     */
+    public String getApiURL() {
+        return apiUrl;
+    }
+
+    /**
+     * Set the transport the requests of this client are sent with. By default this is a {@link UrlConnectionTransport}
+     * on the pool of this client. A {@link jcrush.io.HttpClientTransport} multiplexes concurrent requests over HTTP/2
+     * instead, and does not use the pool.
+     * @param transport
+     *                 The transport
+     */
+    public void setTransport(Transport transport) {
+        Validator.validateNotNull(transport, "transport");
+        this.transport = transport;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set the executor the asynchronous methods of this client run on when no executor is given. By default this is
+     * {@link AsyncExecutors#defaultExecutor()}, which uses virtual threads when the runtime provides them.
+     * @param executor
+     *                The executor
+     */
+    public void setExecutor(Executor executor) {
+        Validator.validateNotNull(executor, "executor");
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set whether concurrent identical lookups are coalesced. While a {@link JCrushClient#getFileInfo(String)},
+     * {@link JCrushClient#getFileStatus(String)} or {@link JCrushClient#doesExists(String)} request for a hash is in
+     * flight, other callers for the same hash share its result instead of sending their own request. Callers that
+     * share a request also share the returned {@link MediaCrushFile}. This is enabled by default.
+     * @param coalescing
+     *                  Whether to coalesce identical lookups
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Set whether uploads are deduplicated. MediaCrush derives the hash of a file from its content, so the hash can be
+     * computed locally while the file is read: <br></br>
+     * * Uploading a {@link File} hashes it first, and does not send it at all if the server already has it <br></br>
+     * * Uploading an {@link InputStream} hashes it while it is sent. If the server answers that it already has it, its
+     *   hash is returned instead of throwing a {@link FileUploadFailedException} <br></br>
+     * * The hash the server returns is checked against the local one <br></br>
+     * Deduplication is disabled by default.
+     * @param deduplicating
+     *                     Whether to deduplicate uploads
+     */
+    public void setDeduplicating(boolean deduplicating) {
+        this.deduplicating = deduplicating;
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicating;
+    }
+
+    /**
+     * Get the number of uploads that were found to be duplicates while deduplicating, whether their content was sent
+     * or not
+     * @return
+     *        The number of deduplicated uploads
+     */
+    public long getDeduplicatedCount() {
+        return deduplicatedUploads.get();
+    }
+
+    /**
+     * Get the number of lookups that shared a request already in flight instead of sending their own
+     * @return
+     *        The number of coalesced lookups
+     */
+    public long getCoalescedCount() {
+        return fileFlights.getCoalescedCount() + existsFlights.getCoalescedCount();
+    }
+
+    /**
+     * Set the cache {@link JCrushClient#getFileInfo(String)}, {@link JCrushClient#getFileStatus(String)},
+     * {@link JCrushClient#getFile(String)} and {@link JCrushClient#getFileInfos(String...)} answer from before going
+     * to the server. {@link JCrushClient#delete(String)} removes the file from the cache. There is no cache by default.
+     * @param cache
+     *             The cache, or null to disable caching
+     */
+    public void setCache(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    public MetadataCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Set the store finished files are kept in across restarts. The methods that answer from the cache answer from
+     * the store after it, and every {@link jcrush.model.FileStatus#DONE} file returned by the server is written to it.
+     * If the store serves stale data, {@link JCrushClient#getFileInfo(String)},
+     * {@link JCrushClient#getFileStatus(String)} and {@link JCrushClient#getFileInfos(String...)} answer with the files
+     * it holds when the server cannot be reached. The store is not closed with this client. There is no store by
+     * default.
+     * @param store
+     *             The store, or null to keep files only in memory
+     * @see MetadataStore
+     */
+    public void setStore(MetadataStore store) {
+        this.store = store;
+    }
+
+    public MetadataStore getStore() {
+        return store;
+    }
+
+    /**
+     * Set the filter {@link JCrushClient#doesExists(String)} answers misses from before going to the server. Every
+     * file this client looks up or uploads is recorded in it. There is no filter by default.
+     * @param existenceFilter
+     *                       The filter, or null to disable it
+     */
+    public void setExistenceFilter(ExistenceFilter existenceFilter) {
+        this.existenceFilter = existenceFilter;
+    }
+
+    public ExistenceFilter getExistenceFilter() {
+        return existenceFilter;
+    }
+
+    /**
+     * Set the limiter every request this client sends takes a token from. Its rate is cut whenever the server answers
+     * 420 and grows again while it does not. There is no limiter by default.
+     * @param rateLimiter
+     *                   The limiter, or null to send requests without pacing them
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Set the policy the idempotent requests of this client are retried and hedged with. These are the lookups:
+     * {@link JCrushClient#getFileInfo(String)}, {@link JCrushClient#getFileInfos(String...)},
+     * {@link JCrushClient#getFileStatus(String)}, {@link JCrushClient#doesExists(String)} and the methods built on
+     * them. Uploads and deletes are never retried. There is no policy by default.
+     * @param retryPolicy
+     *                   The policy, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set the policy every upload of data is checked with before it is sent. The type of the data is sniffed from its
+     * first bytes, and data that would be refused fails locally with an {@link UploadRejectedException}. Uploads of a
+     * URL are not checked. There is no policy by default.
+     * @param uploadPolicy
+     *                    The policy, or null to upload data as the type it was declared as
+     * @see UploadPolicy
+     */
+    public void setUploadPolicy(UploadPolicy uploadPolicy) {
+        this.uploadPolicy = uploadPolicy;
+    }
+
+    public UploadPolicy getUploadPolicy() {
+        return uploadPolicy;
+    }
+
+    /**
+     * Spread the requests of this client over a group of servers instead of sending them all to the API URL. Requests
+     * about one file, which are {@link JCrushClient#getFileInfo(String)}, {@link JCrushClient#getFileStatus(String)},
+     * {@link JCrushClient#doesExists(String)} and {@link JCrushClient#delete(String)}, always go to the server that
+     * owns the hash of the file. Uploads and lists of files go to the server with the fewest requests outstanding.
+     * Servers that keep failing are ejected until a probe succeeds. While a server is ejected, this client sends the
+     * probe on a background thread as a HEAD request to its API root once it was ejected long enough, unless a request
+     * routed to the server was the probe first. There is no group by default.
+     * @param servers
+     *               The group, or null to send every request to the API URL
+     * @see ServerGroup
+     */
+    public void setServers(final ServerGroup servers) {
+        this.servers = servers;
+        synchronized (this) {
+            if (probes != null)
+                probes.cancel(false);
+            probes = null;
+            if (servers == null || (scheduler != null && scheduler.isShutdown()))
+                return;
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "JCrush-Probe");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
+            //Checking twice per open time keeps a server from staying ejected much longer than its open time
+            long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(10), servers.getMinOpenTime(TimeUnit.NANOSECONDS) / 2);
+            probes = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        probe(servers);
+                    } catch (RuntimeException e) {
+                        //Keep probing, the servers are probed again on the next tick
+                    }
+                }
+            }, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public ServerGroup getServers() {
+        return servers;
+    }
+
+    /**
+     * Get the byte counts of the responses this client read. Every request accepts gzip and deflate, so the received
+     * bytes are what went over the wire, and the decoded bytes what they decompressed to.
+     * @return
+     *        The stats of this client
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    /**
+     * Get the per-endpoint metrics of this client. They are off until {@link MetricsRegistry#setEnabled(boolean)} is
+     * invoked, and are not visible over JMX until {@link MetricsRegistry#registerMBeans(String)} is invoked.
+     * @return
+     *        The metrics of this client
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Set how long to wait for a connection to the server to be established
+     * @param connectTimeout
+     *                      The timeout in milliseconds, or 0 to wait forever
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Set how long to wait for the server to respond
+     * @param readTimeout
+     *                   The timeout in milliseconds, or 0 to wait forever
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Open <b>connections</b> connections to the server, or to every server of the group, ahead of time, so the first requests made do not have to wait
+     * for a TCP and TLS handshake.
+     * @param connections
+     *                   The number of connections to open. This is capped at the size of the pool.
+     * @return
+     *        The number of connections that were opened
+     * @throws IOException
+     *                    If the API URL is malformed
+     */
+    public int prewarm(int connections) throws IOException {
+        ServerGroup group = this.servers;
+        if (group == null)
+            return pool.prewarm(new URL(apiUrl), connections);
+        int opened = 0;
+        for (ServerGroup.Server server : group.getServers()) {
+            opened += pool.prewarm(new URL(server.getApiUrl()), connections);
+        }
+        return opened;
+    }
+
+    /**
+     * Get the poller {@link JCrushClient#waitForStatus(String)} uses. It is created the first time it is needed.
+     * @return
+     *        The status poller of this client
+     */
+    public synchronized StatusPoller getStatusPoller() {
+        if (statusPoller == null || statusPoller.isClosed())
+            statusPoller = new StatusPoller(this);
+        return statusPoller;
+    }
+
+    /**
+     * Wait for the file <b>hash</b> to be done processing. Every hash waited for is polled in shared batches, see
+     * {@link StatusPoller}.
+     * @param hash
+     *            The hash of the file, usually as returned by an upload
+     * @return
+     *        A future that completes with the file once its status is {@link FileStatus#DONE}, {@link FileStatus#ERROR}
+     *        or {@link FileStatus#TIMEOUT}
+     * @see StatusPoller#waitForStatus(String)
+     */
+    public CompletableFuture<MediaCrushFile> waitForStatus(String hash) {
+        Validator.validateNotNull(hash, "hash");
+        return getStatusPoller().waitForStatus(hash);
+    }
+
+    /**
+     * Wait for the file <b>hash</b> to be done processing, giving up after <b>timeout</b>
+     * @param hash
+     *            The hash of the file, usually as returned by an upload
+     * @param timeout
+     *               The time to wait for
+     * @param unit
+     *            The unit of <b>timeout</b>
+     * @return
+     *        A future that completes with the file once it is done processing, or fails with a
+     *        {@link java.util.concurrent.TimeoutException} once <b>timeout</b> has passed
+     * @see StatusPoller#waitForStatus(String, long, TimeUnit)
+     */
+    public CompletableFuture<MediaCrushFile> waitForStatus(String hash, long timeout, TimeUnit unit) {
+        Validator.validateNotNull(hash, "hash");
+        return getStatusPoller().waitForStatus(hash, timeout, unit);
+    }
+
+    /**
+     * Close the status poller, the server probes and the connection pool of this client
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (statusPoller != null)
+                statusPoller.close();
+            if (scheduler != null)
+                scheduler.shutdownNow();
+        }
+        metrics.unregisterMBeans();
+        pool.close();
+    }
+
+    /**
+     * Remember a file the server returned in the cache and the existence filter
+     */
+    void remember(MediaCrushFile file) {
+        MetadataCache cache = this.cache;
+        if (cache != null)
+            cache.put(file);
+        MetadataStore store = this.store;
+        if (store != null) {
+            try {
+                store.put(file);
+            } catch (IOException ignored) {
+                //The store is only a cache, a failing disk must not fail the request
+            }
+        }
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null && file != null)
+            filter.recordExists(file.getHash());
+    }
+
+    /**
+     * Get the file for <b>hash</b> from the cache, or else from the store
+     */
+    private MediaCrushFile cached(String hash, boolean requireStatus) {
+        MetadataCache cache = this.cache;
+        if (cache != null) {
+            MediaCrushFile cached = cache.get(hash, requireStatus);
+            if (cached != null)
+                return cached;
+        }
+        MetadataStore store = this.store;
+        if (store != null) {
+            try {
+                MediaCrushFile stored = store.get(hash, requireStatus);
+                if (stored != null && cache != null)
+                    cache.put(stored);
+                return stored;
+            } catch (IOException ignored) {
+                //Looked up from the server instead
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the file for <b>hash</b> from a store serving stale data, if <b>e</b> means the server could not be reached
+     */
+    private MediaCrushFile stale(String hash, IOException e) {
+        MetadataStore store = this.store;
+        if (store == null || !store.isServingStale() || !ServerGroup.isServerFailure(e))
+            return null;
+        try {
+            return store.getStale(hash);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Remember the hash of a file that was just uploaded in the existence filter
+     */
+    private String rememberUpload(String hash) {
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null && hash != null)
+            filter.recordExists(hash);
+        return hash;
+    }
+
+    private Requester newRequester(ConnectionType type, URL url, Endpoint endpoint) {
+        Requester requester = new Requester(type, url, transport);
+        requester.setConnectTimeout(connectTimeout);
+        requester.setReadTimeout(readTimeout);
+        requester.setAcceptCompression(true);
+        requester.setTransferStats(transferStats);
+        requester.setEndpoint(endpoint);
+        requester.setMetrics(metrics.forRequest(endpoint));
+        return requester;
+    }
+
+    /**
+     * Take the server a request is sent to
+     * @param hash
+     *            The hash of the file the request is about, or null if it is not about one file
+     * @return
+     *        The server, or null if this client has no group of servers
+     */
+    private ServerGroup.Server route(String hash) throws IOException {
+        ServerGroup group = this.servers;
+        if (group == null)
+            return null;
+        return hash != null ? group.select(hash) : group.selectLeastOutstanding();
+    }
+
+    /**
+     * Send a HEAD request to the API root of every ejected server of <b>group</b> that is due for a probe. Any answer
+     * brings the server back.
+     */
+    private void probe(ServerGroup group) {
+        for (ServerGroup.Server server : group.takeProbes()) {
+            Requester requester = null;
+            try {
+                requester = newRequester(ConnectionType.HEAD, url(server, ""), Endpoint.PROBE);
+                requester.setRecieve(true);
+                connect(requester, server);
+            } catch (IOException ignored) {
+                //The breaker was told by connect, and stays ejected if the server failed
+            } finally {
+                if (requester != null)
+                    requester.disconnect();
+                else
+                    server.release(null, false);
+            }
+        }
+    }
+
+    private URL url(ServerGroup.Server server, String path) throws IOException {
+        return new URL((server != null ? server.getApiUrl() : apiUrl) + path);
+    }
+
+    /**
+     * Connect <b>requester</b> and give <b>server</b> back to its group, telling its breaker whether the server failed
+     */
+    private void connect(Requester requester, ServerGroup.Server server) throws IOException {
+        if (server == null) {
+            connect(requester);
+            return;
+        }
+        IOException failure = null;
+        try {
+            connect(requester);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            server.release(failure, requester.getResponseCode() > 0);
+        }
+    }
+
+    /**
+     * Connect <b>requester</b> once the rate limiter lets it through, and tell the limiter whether it was answered 420
+     */
+    private void connect(Requester requester) throws IOException {
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter == null) {
+            requester.connect();
+            return;
+        }
+        limiter.acquire();
+        try {
+            requester.connect();
+        } finally {
+            if (requester.getResponseCode() == 420)
+                limiter.onRateLimited();
+            else if (requester.getResponseCode() > 0)
+                limiter.onSuccess();
+        }
+    }
+
+    /**
+     * Make the idempotent request <b>attempt</b>, retrying and hedging it as the retry policy of this client allows
+     */
+    private <T> T idempotent(Callable<T> attempt, boolean hedge) throws IOException {
+        RetryPolicy policy = this.retryPolicy;
+        if (policy != null)
+            return policy.execute(attempt, hedge);
+        try {
+            return attempt.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns information about the file whose hash is <b>hash</b>
+     * @param hash
+     *            <b>NOT NULLABLE</b>
+     *            <br></br>
+     *            - The hash of the file to retrieve.
+     * @return
+     *        The file represented as a {@link MediaCrushFile} object
+     * @throws IOException
+     *                    An {@link IOException} can be thrown for the following reasons: <br></br>
+     *                    * There was an error invoking {@link jcrush.io.Requester#connect()} <br></br>
+     *                    * The json returned contained a 404 error
+     * @see jcrush.io.Requester#connect()
+     */
+    public MediaCrushFile getFileInfo(String hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        MediaCrushFile cached = cached(hash, false);
+        if (cached != null)
+            return cached;
+        try {
+            if (!coalescing)
+                return fetchFileInfo(hash);
+            return fileFlights.execute(apiUrl + hash, fetchFileInfoCall(hash));
+        } catch (IOException e) {
+            MediaCrushFile stale = stale(hash, e);
+            if (stale == null)
+                throw e;
+            return stale;
+        }
+    }
+
+    private Callable<MediaCrushFile> fetchFileInfoCall(final String hash) {
+        return new Callable<MediaCrushFile>() {
+            @Override
+            public MediaCrushFile call() throws Exception {
+                return fetchFileInfo(hash);
+            }
+        };
+    }
+
+    private MediaCrushFile fetchFileInfo(final String hash) throws IOException {
+        return idempotent(new Callable<MediaCrushFile>() {
+            @Override
+            public MediaCrushFile call() throws Exception {
+                return requestFileInfo(hash);
+            }
+        }, true);
+    }
+
+    private MediaCrushFile requestFileInfo(String hash) throws IOException {
+        ServerGroup.Server server = route(hash);
+        Requester requester = newRequester(ConnectionType.GET, url(server, hash), Endpoint.INFO);
+        requester.setRecieve(true);
+        connect(requester, server);
+
+        String json = requester.getResponse();
+        requester.disconnect();
+        Validator.validateNot404(json);
+
+        MediaCrushFile toreturn = ModelBinding.readFile(new JsonReader(new StringReader(json)), hash);
+
+        remember(toreturn);
+        return toreturn;
+    }
+
+    /**
+     * Returns an array of {@link MediaCrushFile} containing information about the file whose hash is <b>hash</b> <br></br>
+     * The files are returned in the same order as the hashes given. A hash that does not exist is returned as null.
+     * Long lists of hashes are split into several requests to stay under {@link jcrush.system.Constants#MAX_URL_LENGTH},
+     * which are sent in parallel on the executor of this client.
+     * @param hash
+     *           <b>NOT NULLABLE</b>
+     *           <br></br>
+     *           - An array of hash's to lookup
+     * @return
+     *        An array of files represented as a {@link MediaCrushFile} object
+     * @throws IOException
+     *                    An {@link IOException} can be thrown for the following reasons: <br></br>
+     *                    * There was an error invoking {@link jcrush.io.Requester#connect()} <br></br>
+     *                    * The json returned contained a 404 error
+     * @see jcrush.io.Requester#connect()
+     */
+    public MediaCrushFile[] getFileInfos(String... hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        return getFileInfos(hash, false);
+    }
+
+    private MediaCrushFile[] getFileInfos(String[] hash, final boolean lenient) throws IOException {
+        final Map<String, MediaCrushFile> found = new ConcurrentHashMap<String, MediaCrushFile>();
+        String[] missing = hash;
+        if (cache != null || store != null) {
+            List<String> notCached = new ArrayList<String>();
+            for (String h : hash) {
+                MediaCrushFile cached = h == null ? null : cached(h, false);
+                if (cached != null)
+                    found.put(h, cached);
+                else
+                    notCached.add(h);
+            }
+            missing = notCached.toArray(new String[notCached.size()]);
+        }
+        List<String[]> chunks = splitHashList(missing);
+
+        //The first chunk is fetched on this thread, the rest in parallel on the executor
+        List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 1; i < chunks.size(); i++) {
+            final String[] chunk = chunks.get(i);
+            pending.add(supplyAsync(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fetchFileInfos(chunk, found, lenient);
+                    return null;
+                }
+            }, executor));
+        }
+        if (!chunks.isEmpty())
+            fetchFileInfos(chunks.get(0), found, lenient);
+        for (CompletableFuture<Void> future : pending) {
+            join(future);
+        }
+
+        MediaCrushFile[] array = new MediaCrushFile[hash.length];
+        for (int i = 0; i < hash.length; i++) {
+            array[i] = hash[i] == null ? null : found.get(hash[i]);
+        }
+        return array;
+    }
+
+    private void fetchFileInfos(String[] hash, Map<String, MediaCrushFile> found, boolean lenient) throws IOException {
+        FileInfoIterator files = new FileInfoIterator(this, Collections.singletonList(hash));
+        try {
+            MediaCrushFile file;
+            while ((file = files.read()) != null) {
+                found.put(file.getHash(), file);
+            }
+        } catch (IOException e) {
+            boolean served = true;
+            for (String h : hash) {
+                MediaCrushFile stale = h == null || found.containsKey(h) ? null : stale(h, e);
+                if (stale != null)
+                    found.put(h, stale);
+                else if (h != null && !found.containsKey(h))
+                    served = false;
+            }
+            if (!served && !lenient)
+                throw e;
+        } catch (RuntimeException e) {
+            //A malformed response only loses the files of this chunk
+            if (!lenient)
+                throw e;
+        } finally {
+            files.close();
+        }
+    }
+
+    /**
+     * Send the info?list= request for <b>hash</b> and leave its response on the connection to be streamed
+     */
+    Requester openInfoList(String[] hash) throws IOException {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < hash.length; i++) {
+            if (i > 0)
+                list.append(',');
+            list.append(hash[i]);
+        }
+
+        final String path = "info?list=" + list;
+        //The response is streamed after this returns, so only sending the request can be retried
+        return idempotent(new Callable<Requester>() {
+            @Override
+            public Requester call() throws Exception {
+                ServerGroup.Server server = route(null);
+                Requester requester = newRequester(ConnectionType.GET, url(server, path), Endpoint.INFO_LIST);
+                requester.setRecieve(true);
+                requester.setStreamResponse(true);
+                connect(requester, server);
+                return requester;
+            }
+        }, false);
+    }
+
+    /**
+     * Iterate over information about the files whose hashes are in <b>hash</b>, decoding each file as its response is
+     * read. Unlike {@link JCrushClient#getFileInfos(String...)}, the results are never all held in memory at once, so
+     * this is meant for very long lists of hashes. <br></br>
+     * The hashes are looked up one request at a time, in chunks that stay under
+     * {@link jcrush.system.Constants#MAX_URL_LENGTH}. Every file returned is still put in the cache of this client.
+     * @param hash
+     *           <b>NOT NULLABLE</b>
+     *           <br></br>
+     *           - An array of hash's to lookup
+     * @return
+     *        An iterator over the files that exist, which should be closed once it is no longer needed
+     * @see FileInfoIterator
+     */
+    public FileInfoIterator iterateFileInfos(String... hash) {
+        Validator.validateNotNull(hash, "hash");
+        return new FileInfoIterator(this, splitHashList(hash));
+    }
+
+    /**
+     * Get the longest URL a request of this client can be sent to
+     */
+    private String longestApiUrl() {
+        ServerGroup group = this.servers;
+        if (group == null)
+            return apiUrl;
+        String longest = "";
+        for (ServerGroup.Server server : group.getServers()) {
+            if (server.getApiUrl().length() > longest.length())
+                longest = server.getApiUrl();
+        }
+        return longest;
+    }
+
+    /**
+     * Split a list of hashes into chunks whose info?list= URL stays under {@link jcrush.system.Constants#MAX_URL_LENGTH}.
+     * Duplicate and null hashes are dropped.
+     */
+    private List<String[]> splitHashList(String[] hash) {
+        int available = Math.max(1, MAX_URL_LENGTH - (longestApiUrl() + "info?list=").length());
+        List<String[]> chunks = new ArrayList<String[]>();
+        List<String> chunk = new ArrayList<String>();
+        int length = 0;
+        for (String h : new LinkedHashSet<String>(Arrays.asList(hash))) {
+            if (h == null)
+                continue;
+            int added = chunk.isEmpty() ? h.length() : h.length() + 1;
+            if (!chunk.isEmpty() && length + added > available) {
+                chunks.add(chunk.toArray(new String[chunk.size()]));
+                chunk.clear();
+                length = 0;
+                added = h.length();
+            }
+            chunk.add(h);
+            length += added;
+        }
+        if (!chunk.isEmpty())
+            chunks.add(chunk.toArray(new String[chunk.size()]));
+        return chunks;
+    }
+
+    /**
+     * A convenience method. Returns a {@link MediaCrushFile} object with all info attached and does not throw an exception
+     * when the file does not exist. When the hash specified does not exist, this method simply returns null.
+     * @param hash
+     *            The hash to retrieve
+     * @return
+     *        The file represented as a {@link MediaCrushFile} object.
+     * @throws IOException
+     *                    This exception can be thrown if {@link JCrushClient#getFileInfo(String)} or {@link JCrushClient#getFileStatus(String)} throws an exception
+     * @see JCrushClient#getFileInfo(String)
+     * @see JCrushClient#getFileStatus(String)
+     */
+    public MediaCrushFile getFile(String hash) throws IOException {
+        MediaCrushFile cached = cached(hash, true);
+        if (cached != null)
+            return cached;
+        if (!doesExists(hash))
+            return null;
+
+        //The info may be the cached instance other threads hold, so the status goes on a copy
+        MediaCrushFile info = getFileInfo(hash);
+        FileStatus status = getFileStatus(hash).getStatus();
+        MediaCrushFile file = ModelBinding.withStatus(info, status);
+
+        remember(file);
+        return file;
+    }
+
+    /**
+     * A convenience method. Returns a {@link MediaCrushFile} object with all info attached and does not throw an exception
+     * when the file does not exist. When the hash specified does not exist, this method simply returns null. <br></br>
+     * If any file throws an {@link IOException}, then the exception is ignored and the file in the array is set to null. <br></br>
+     * The files are looked up in batches with {@link JCrushClient#getFileInfos(String...)}, then the status of every
+     * file the batch did not carry a status for is looked up in parallel. A batch that fails only sets its own files to
+     * null, and if the batches cannot be sent at all, every file is looked up on its own with
+     * {@link JCrushClient#getFile(String)}.
+     * @param hash
+     *            The hash(s) to retrieve
+     * @return
+     *        The file(s) represented as an array of {@link MediaCrushFile} object(s), in the same order as the hashes given.
+     */
+    public MediaCrushFile[] getFiles(String... hash) {
+        MediaCrushFile[] files;
+        try {
+            files = getFileInfos(hash, true);
+        } catch (IOException e) {
+            files = new MediaCrushFile[hash.length];
+            for (int i = 0; i < hash.length; i++) {
+                try {
+                    files[i] = hash[i] == null ? null : getFile(hash[i]);
+                } catch (IOException ignored) {
+                    //The file is left null
+                }
+            }
+            return files;
+        }
+
+        try {
+            fillStatuses(files, true);
+        } catch (IOException e) {
+            //A lenient lookup sets the files it could not get to null instead of throwing
+        }
+        return files;
+    }
+
+    /**
+     * Get the current status of every file in <b>hash</b> using as few requests as possible. <br></br>
+     * The files are looked up in batches with {@link JCrushClient#getFileInfos(String...)}. When the server does not
+     * include the status of a file in the batch, it is looked up with {@link JCrushClient#getFileStatus(String)};
+     * these lookups are sent in parallel.
+     * @param hash
+     *            The hash(s) to look up
+     * @return
+     *        The file(s) with their status, in the same order as the hashes given. A hash that does not exist is
+     *        returned as null.
+     * @throws IOException
+     *                    If any request fails
+     * @see JCrushClient#getFileInfos(String...)
+     * @see JCrushClient#getFileStatus(String)
+     */
+    public MediaCrushFile[] getFileStatuses(String... hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        MediaCrushFile[] files = getFileInfos(hash, false);
+        fillStatuses(files, false);
+        return files;
+    }
+
+    /**
+     * Replace every file whose status is not known with the result of a status lookup. The lookups are sent in parallel.
+     */
+    private void fillStatuses(MediaCrushFile[] files, boolean lenient) throws IOException {
+        Map<String, CompletableFuture<MediaCrushFile>> statuses = new HashMap<String, CompletableFuture<MediaCrushFile>>();
+        for (MediaCrushFile file : files) {
+            if (file != null && !file.isStatusKnown() && !statuses.containsKey(file.getHash()))
+                statuses.put(file.getHash(), getFileStatusAsync(file.getHash()));
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (files[i] == null || files[i].isStatusKnown())
+                continue;
+            try {
+                files[i] = join(statuses.get(files[i].getHash()));
+            } catch (IOException e) {
+                if (!lenient)
+                    throw e;
+                files[i] = null;
+            } catch (RuntimeException e) {
+                if (!lenient)
+                    throw e;
+                files[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a hash exists or not.
+     * @param hash
+     *            The hash to lookup
+     * @return
+     *        true if the has exists or false if it does not
+     * @throws IOException
+     *                    An {@link IOException} will be thrown if {@link jcrush.io.Requester#connect()} raises an exception
+     * @see jcrush.io.Requester#connect()
+     */
+    public boolean doesExists(String hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null && filter.isKnownMissing(hash))
+            return false;
+        if (!coalescing)
+            return fetchExists(hash);
+        return existsFlights.execute(apiUrl + hash + "/exists", fetchExistsCall(hash));
+    }
+
+    private Callable<Boolean> fetchExistsCall(final String hash) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return fetchExists(hash);
+            }
+        };
+    }
+
+    private boolean fetchExists(final String hash) throws IOException {
+        return idempotent(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return requestExists(hash);
+            }
+        }, true);
+    }
+
+    private boolean requestExists(String hash) throws IOException {
+        ServerGroup.Server server = route(hash);
+        Requester requester = newRequester(ConnectionType.HEAD, url(server, hash + "/exists"), Endpoint.EXISTS);
+        requester.setRecieve(true);
+        boolean exists = true;
+        try {
+            connect(requester, server);
+        } catch (FileNotFoundException ignored) {
+            exists = false;
+        }
+        requester.disconnect();
+
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null)
+            filter.recordLookup(hash, exists);
+        return exists;
+    }
+
+    /**
+     * Upload a file to mediacru.sh <br></br>
+     * This method creates a new instance of a {@link File} and then invoke {@link JCrushClient#uploadFile(java.io.File)}
+     * @param filePath
+     *                The full file path to the file that will be uploaded to mediacru.sh
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws IOException
+     *                    An IOException can be thrown for the following reasons:<br></br>
+     *                    * The file path specified is not a file, but a directory   <br></br>
+     *                    * The file path specified does not exist  <br></br>
+     *                    * {@link JCrushClient#uploadFile(java.io.File)} raises an Exception  <br></br>
+     * @see JCrushClient#uploadFile(java.io.File)
+     */
+    public String uploadFile(String filePath) throws IOException {
+        Validator.validateNotNull(filePath, "filePath");
+        File file = new File(filePath);
+        if (!file.exists())
+            throw new FileNotFoundException("The file could not be found!");
+        else if (file.isDirectory())
+            throw new IOException("The filePath specified is a directory!");
+        else
+            return uploadFile(file);
+    }
+
+    /**
+     * Upload the file specified in the parameter to mediacru.sh <br></br>
+     * Only the following file types are allowed:<br></br>
+     * * .png <br></br>
+     * * .jpg <br></br>
+     * * .jpeg <br></br>
+     * * .gif <br></br>
+     * * .mp4 <br></br>
+     * * .ogv <br></br>
+     * * .mp3 <br></br>
+     * * .ogg <br></br>
+     * An unknown file type will raise an {@link IOException} <br></br>
+     *
+     * @param file
+     *            The file to upload represented as a {@link File} object
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws FileUploadFailedException
+     *                                  A FileUploadFiledException can be thrown for the following reasons: <br></br>
+     *                                  * The file was already uploaded. <br></br>
+     *                                  * The rate limit was exceeded. <br></br>
+     *                                  * The file extension is not acceptable. However, for this to be thrown is highly unlikely. An {@link IOException} will be thrown first
+     *                                  before the upload with the reason "Unknown file type!"
+     * @throws IOException
+     *                    An IOException can be thrown for the following reasons:<br></br>
+     *                    * An unknown file type was specified <br></br>
+     *                    * The file specified does not exist <br></br>
+     *                    * The file specified is not a file, but a directory <br></br>
+     *                    * An unknown error code was returned from the server <br></br>
+     */
+    public String uploadFile(File file) throws IOException {
+        return uploadFile(file, false);
+    }
+
+    /**
+     * Upload <b>file</b> like {@link JCrushClient#uploadFile(File)}. If <b>reportDuplicates</b>, a file the server
+     * already has is thrown as a {@link DuplicateUploadException} even while deduplicating.
+     */
+    String uploadFile(File file, boolean reportDuplicates) throws IOException {
+        Validator.validateNotNull(file, "file");
+
+        if (!file.exists())
+            throw new FileNotFoundException();
+        if (file.isDirectory())
+            throw new IOException("This file is a directory!");
+
+        //Get content type of file
+        FileType contentType = FileType.toFileType(toContentType(file));
+        String fileName = file.getName();
+        long length = file.length();
+        UploadPolicy policy = this.uploadPolicy;
+        if (policy != null) {
+            byte[] head = new byte[ContentSniffer.SNIFF_LENGTH];
+            int headLength = ContentSniffer.readHead(file, head);
+            FileType checked = policy.check(contentType, head, headLength, length);
+            if (checked != contentType)
+                fileName = UploadPolicy.withExtension(fileName, checked);
+            contentType = checked;
+        }
+        if (contentType == FileType.UNKNOWN)
+            throw new IOException("Unknown file type!");
+
+        if (deduplicating) {
+            String hash = computeHash(file);
+            if (doesExists(hash)) {
+                deduplicatedUploads.incrementAndGet();
+                rememberUpload(hash);
+                if (reportDuplicates)
+                    throw new DuplicateUploadException("This file was already uploaded!", hash);
+                return hash;
+            }
+        }
+
+        InputStream imageData = new FileInputStream(file);
+        try {
+            return uploadFile(imageData, length, contentType, fileName, reportDuplicates);
+        } finally {
+            imageData.close();
+        }
+    }
+
+    /**
+     * Upload an image/sound/video to mediacru.sh using the data provided in the InputStream provided <br></br>
+     * The length of the data is not known up front, so it is streamed to the server using chunked transfer encoding.
+     * See {@link JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)} <br></br>
+     *
+     * @param imageData
+     *                 The {@link InputStream} with the image data to upload
+     * @param type
+     *            The {@link FileType} of the data being uploaded
+     * @param fileName
+     *                 The file name for this data <b>INCLUDING</b> the file extension.
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws IOException
+     *                    An IOException will only be thrown if
+     *                    {@link JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)} throws an exception
+     * @see JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)
+     */
+    public String uploadFile(InputStream imageData, FileType type, String fileName) throws IOException {
+        return uploadFile(imageData, -1, type, fileName);
+    }
+
+    /**
+     * Upload an image/sound/video to mediacru.sh using the data provided in the InputStream provided <br></br>
+     * The data is streamed straight to the server, so only a small buffer is held in memory whatever the size of
+     * the data. When <b>length</b> is known the request is sent with a fixed Content-Length, otherwise chunked
+     * transfer encoding is used. <br></br>
+     * This method requires a file name with an extension at the end. This can be provided manually or you can use the
+     * helper method {@link jcrush.model.FileType#getFileExtension()} <br></br>
+     * Only the following file types are allowed:<br></br>
+     * * .png <br></br>
+     * * .jpg <br></br>
+     * * .jpeg <br></br>
+     * * .gif <br></br>
+     * * .mp4 <br></br>
+     * * .ogv <br></br>
+     * * .mp3 <br></br>
+     * * .ogg <br></br>
+     * An unknown file type will raise an {@link IOException} <br></br>
+     *
+     * @param imageData
+     *                 The {@link InputStream} with the image data to upload
+     * @param length
+     *               The number of bytes in <b>imageData</b>, or -1 if it is not known
+     * @param type
+     *            The {@link FileType} of the data being uploaded
+     * @param fileName
+     *                 The file name for this data <b>INCLUDING</b> the file extension.
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws FileUploadFailedException
+     *                                  A FileUploadFiledException can be thrown for the following reasons: <br></br>
+     *                                  * The file was already uploaded. <br></br>
+     *                                  * The rate limit was exceeded. <br></br>
+     *                                  * The file extension is not acceptable. However, for this to be thrown is highly unlikely. An {@link IOException} will be thrown first
+     *                                  before the upload with the reason "Unknown file type!"
+     * @throws IOException
+     *                    An IOException can be thrown for the following reasons:<br></br>
+     *                    * An unknown file type was specified <br></br>
+     *                    * The file specified does not exist <br></br>
+     *                    * The file specified is not a file, but a directory <br></br>
+     *                    * An unknown error code was returned from the server <br></br>
+     *                    * While deduplicating, the hash returned by the server does not match the content <br></br>
+     * @see JCrushClient#setDeduplicating(boolean)
+     */
+    public String uploadFile(InputStream imageData, long length, FileType type, String fileName) throws IOException {
+        Validator.validateNotNull(imageData, "imageData");
+        UploadPolicy policy = this.uploadPolicy;
+        if (policy != null) {
+            //Sniff the first bytes and push them back, so they are still sent
+            PushbackInputStream data = new PushbackInputStream(imageData, ContentSniffer.SNIFF_LENGTH);
+            byte[] head = new byte[ContentSniffer.SNIFF_LENGTH];
+            int headLength = ContentSniffer.readHead(data, head);
+            data.unread(head, 0, headLength);
+            FileType checked = policy.check(type, head, headLength, length);
+            if (checked != type)
+                fileName = UploadPolicy.withExtension(fileName, checked);
+            type = checked;
+            imageData = data;
+        }
+        return uploadFile(imageData, length, type, fileName, false);
+    }
+
+    private String uploadFile(InputStream imageData, long length, FileType type, String fileName, boolean reportDuplicates) throws IOException {
+        Validator.validateNotNull(imageData, "imageData");
+        if (!deduplicating)
+            return sendFile(imageData, length, type, fileName, null, reportDuplicates);
+
+        MessageDigest digest = newContentDigest();
+        return sendFile(new DigestInputStream(imageData, digest), length, type, fileName, digest, reportDuplicates);
+    }
+
+    /**
+     * Send <b>imageData</b> to the server. If <b>digest</b> is not null, it is given the content as it is sent, and is
+     * used to answer duplicates and check the hash the server returns.
+     */
+    private String sendFile(InputStream imageData, long length, FileType type, String fileName, MessageDigest digest,
+                            boolean reportDuplicates) throws IOException {
+        //Prepare form data to send
+        MultipartBody body = new MultipartBody(fileName, type);
+
+        //Prepare the requester with form data
+        ServerGroup.Server server = route(null);
+        Requester requester = newRequester(ConnectionType.POST, url(server, "upload/file"), Endpoint.UPLOAD_FILE);
+        requester.setPostData(body.wrap(imageData), body.getLength(length));
+        requester.addHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        requester.addHeader("X-Requested-With", "XMLHttpRequest");
+        requester.addHeader("Content-Type", body.getContentType());
+        requester.setRecieve(true);
+        try {
+            connect(requester, server); //Connect
+        } catch (IOException e) {
+            //The request may have failed before the server answered, e.g. on a rate limiter failing fast
+            int code = requester.getResponseCode();
+            if (code <= 0)
+                throw e;
+            switch (code) {
+                case 409:
+                    if (digest != null)
+                        return duplicateOf(imageData, digest, reportDuplicates);
+                    throw new DuplicateUploadException("This file was already uploaded!", null, e);
+                case 420:
+                    throw new RateLimitedException("The rate limit was exceeded. Enhance your calm.", e);
+                case 415:
+                    throw new FileUploadFailedException("The file extension is not acceptable.", e);
+                default:
+                    throw new IOException("The server responded with an unknown error code! (" + code + ")", e);
+            }
+        }
+
+        //Parse results
+        int code = requester.getResponseCode();
+        String json = requester.getResponse();
+        requester.disconnect(); //Disconnect
+        Map<String, Object> map = GSON.fromJson(json, RESPONSE_TYPE);
+        if (code == 200 && !map.containsKey("error")) {
+            String hash = (String) map.get("hash");
+            if (digest != null) {
+                String local = hashOf(imageData, digest);
+                if (!local.equals(hash))
+                    throw new FileUploadFailedException("The server returned the hash " + hash + ", but the file hashes to " + local + "!");
+            }
+            return rememberUpload(hash);
+        } else {
+            if (code == 200) {
+                try {
+                    code = Integer.parseInt((String)map.get("error"));
+                } catch (Throwable t) {
+                    throw new IOException("The server responded with an unknown error (" + (map.get("error") == null ? "null" : map.get("error")) + ")", t);
+                }
+            }
+            switch (code) {
+                case 409:
+                    if (digest != null)
+                        return duplicateOf(imageData, digest, reportDuplicates);
+                    throw new DuplicateUploadException("This file was already uploaded!", null);
+                case 420:
+                    rateLimited();
+                    throw new RateLimitedException("The rate limit was exceeded. Enhance your calm.");
+                case 415:
+                    throw new FileUploadFailedException("The file extension is not acceptable.");
+                default:
+                    throw new IOException("The server responded with an unknown error code! (" + code + ")");
+            }
+        }
+    }
+
+    /**
+     * Tell the rate limiter about a 420 the server sent in the body of a 200 response
+     */
+    private void rateLimited() {
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter != null)
+            limiter.onRateLimited();
+    }
+
+    /**
+     * Get the hash of content whose upload was answered as a duplicate
+     */
+    private String duplicateOf(InputStream imageData, MessageDigest digest, boolean reportDuplicates) throws IOException {
+        deduplicatedUploads.incrementAndGet();
+        String hash = rememberUpload(hashOf(imageData, digest));
+        if (reportDuplicates)
+            throw new DuplicateUploadException("This file was already uploaded!", hash);
+        return hash;
+    }
+
+    /**
+     * Finish hashing <b>imageData</b>. The server may answer before the whole content was sent, so whatever is left
+     * is read into the digest.
+     */
+    private static String hashOf(InputStream imageData, MessageDigest digest) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        byte[] buf = pool.acquire(STREAM_BUFFER_SIZE);
+        try {
+            while (imageData.read(buf) != -1) { }
+        } finally {
+            pool.release(buf);
+        }
+        return toHash(digest);
+    }
+
+    /**
+     * Delete a file from mediacru.sh. <br></br>
+     * Only same IP as the uploader may delete the file specified. An {@link IOException} will be thrown if the IP's do
+     * not match
+     * @param hash
+     *            The hash of the file to delete
+     * @throws IOException
+     *                    An IOException can be thrown for the following reasons: <br></br>
+     *                    * The hash specified does not exist  <br></br>
+     *                    * The IP does not match the stored hash <br></br>
+     *                    * The server responded with an unknown error code. <br></br>
+     */
+    public void delete(String hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        forget(hash);
+
+        ServerGroup.Server server = route(hash);
+        Requester requester = newRequester(ConnectionType.GET, url(server, hash + "/delete"), Endpoint.DELETE);
+        requester.setRecieve(true);
+        try {
+            connect(requester, server);
+        } catch (FileNotFoundException e) {
+            requester.disconnect();
+            throw new IOException("There is no file with that hash!");
+        }
+
+        int code = requester.getResponseCode();
+        requester.disconnect();
+
+        if (code != 200) {
+            if (code == 404)
+                throw new IOException("There is no file with that hash!");
+            else if (code == 401)
+                throw new IOException("The IP does not match the stored hash!");
+            else
+                throw new IOException("The server responded with an unknown code! (" + code + ")");
+        }
+
+        //A lookup that completed while the file was being deleted may have cached it again
+        forget(hash);
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null)
+            filter.recordMissing(hash);
+    }
+
+    /**
+     * Remove <b>hash</b> from the cache and the store
+     */
+    private void forget(String hash) {
+        MetadataCache cache = this.cache;
+        if (cache != null)
+            cache.invalidate(hash);
+        MetadataStore store = this.store;
+        if (store != null) {
+            try {
+                store.remove(hash);
+            } catch (IOException ignored) {
+                //The store is only a cache, a failing disk must not fail the request
+            }
+        }
+    }
+
+    /**
+     * Delete the {@link MediaCrushFile} object from mediacru.sh <br></br>
+     * Only same IP as the uploader may delete the file specified. An {@link IOException} will be thrown if the IP's do
+     * not match
+     * @param file
+     *            The {@link MediaCrushFile} object that represents the file to delete
+     * @throws IOException
+     *                    An IOException will only be thrown if {@link JCrushClient#delete(String)} throws an exception
+     * @see JCrushClient#delete(String)
+     */
+    public void delete(MediaCrushFile file) throws IOException {
+        Validator.validateNotNull(file, "file");
+        delete(file.getHash());
+    }
+
+    /**
+     * Get the current upload status for the file specified by the hash
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        A {@link MediaCrushFile} object that represents the file. <br></br>
+     *        You can use {@link jcrush.model.MediaCrushFile#getStatus()} to get the status of the file
+     * @throws IOException
+     *                   An IOException can be thrown for the following reasons: <br></br>
+     *                   * {@link jcrush.io.Requester#connect()} throws an IOException
+     *                   * There was an error constructing the {@link MediaCrushFile} file.
+     * @see jcrush.io.Requester#connect()
+     */
+    public MediaCrushFile getFileStatus(String hash) throws IOException {
+        Validator.validateNotNull(hash, "hash");
+        MediaCrushFile cached = cached(hash, true);
+        if (cached != null)
+            return cached;
+        try {
+            if (!coalescing)
+                return fetchFileStatus(hash);
+            return fileFlights.execute(apiUrl + hash + "/status", fetchFileStatusCall(hash));
+        } catch (IOException e) {
+            MediaCrushFile stale = stale(hash, e);
+            if (stale == null || !stale.isStatusKnown())
+                throw e;
+            return stale;
+        }
+    }
+
+    private Callable<MediaCrushFile> fetchFileStatusCall(final String hash) {
+        return new Callable<MediaCrushFile>() {
+            @Override
+            public MediaCrushFile call() throws Exception {
+                return fetchFileStatus(hash);
+            }
+        };
+    }
+
+    private MediaCrushFile fetchFileStatus(final String hash) throws IOException {
+        return idempotent(new Callable<MediaCrushFile>() {
+            @Override
+            public MediaCrushFile call() throws Exception {
+                return requestFileStatus(hash);
+            }
+        }, true);
+    }
+
+    private MediaCrushFile requestFileStatus(String hash) throws IOException {
+        ServerGroup.Server server = route(hash);
+        Requester requester = newRequester(ConnectionType.GET, url(server, hash + "/status"), Endpoint.STATUS);
+        requester.setRecieve(true);
+        connect(requester, server);
+
+        String json = requester.getResponse();
+        requester.disconnect();
+        Validator.validateNot404(json);
+
+        MediaCrushFile file;
+        try {
+            file = ModelBinding.readFileStatus(new JsonReader(new StringReader(json)), hash);
+        } catch (IllegalStateException e) {
+            throw new IOException("Error creating MediaCrushFile", e);
+        }
+
+        remember(file);
+        return file;
+    }
+    /**
+     * Upload the file at a URL to mediacru.sh <br></br>
+     * {@link JCrushClient#uploadFileViaURL(String)} is invoked with {@link java.net.URL#toString()} passed as the URL parameter
+     * @param url
+     *          The URL from where to fetch the file to upload, represented as a {@link URL} object
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws IOException
+     *                    An IOException will only be thrown if {@link JCrushClient#uploadFileViaURL(String)} throws an exception
+     * @see JCrushClient#uploadFileViaURL(String)
+     */
+    public String uploadFileViaURL(URL url) throws IOException {
+        Validator.validateNotNull(url, "url");
+        return uploadFileViaURL(url.toString());
+    }
+
+    /**
+     * Upload the file at a URL to mediacru.sh <br></br>
+     * {@link JCrushClient#uploadFileViaURL(String)} is invoked with {@link java.net.URI#toString()} passed as the URL parameter
+     * @param uri
+     *          The URL from where to fetch the file to upload, represented as a {@link URI} object
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws IOException
+     *                    An IOException will only be thrown if {@link JCrushClient#uploadFileViaURL(String)} throws an exception
+     * @see JCrushClient#uploadFileViaURL(String)
+     */
+    public String uploadFileViaURL(URI uri) throws IOException {
+        Validator.validateNotNull(uri, "uri");
+        return uploadFileViaURL(uri.toString());
+    }
+
+    /**
+     * Upload the file at a URL to mediacru.sh <br></br>
+     * @param url
+     *            The URL from where to fetch the file to upload
+     * @return
+     *        The hash of the currently uploading file on mediacru.sh
+     * @throws FileUploadFailedException
+     *                                  A FileUploadFiledException can be thrown for the following reasons: <br></br>
+     *                                  * The file was already uploaded. <br></br>
+     *                                  * The rate limit was exceeded. <br></br>
+     *                                  * The file extension is not acceptable. <br></br>
+     *                                  * The URL was invalid <br></br>
+     *                                  * The file requested does not exist <br></br>
+     * @throws IOException
+     *                    An IOException can be thrown for the following reasons:<br></br>
+     *                    * An unknown error code was returned from the server <br></br>
+     */
+    public String uploadFileViaURL(String url) throws IOException {
+        Validator.validateNotNull(url, "url");
+
+        String post = "url=" + url;
+        ServerGroup.Server server = route(null);
+        Requester requester = newRequester(ConnectionType.POST, url(server, "upload/url"), Endpoint.UPLOAD_URL);
+        requester.setPostData(post);
+        requester.addHeader("Content-Length", "" + post.length());
+        requester.setRecieve(true);
+        try {
+            connect(requester, server); //Connect
+        } catch (IOException e) {
+            //The request may have failed before the server answered, e.g. on a rate limiter failing fast
+            int code = requester.getResponseCode();
+            if (code <= 0)
+                throw e;
+            switch (code) {
+                case 400:
+                    throw new FileUploadFailedException("The URL is invalid.", e);
+                case 404:
+                    throw new FileUploadFailedException("The file requested does not exist", e);
+                case 409:
+                    throw new DuplicateUploadException("This file was already uploaded!", null, e);
+                case 420:
+                    throw new RateLimitedException("The rate limit was exceeded. Enhance your calm.", e);
+                case 415:
+                    throw new FileUploadFailedException("The file extension is not acceptable.", e);
+                default:
+                    throw new IOException("The server responded with an unknown error code! (" + code + ")", e);
+            }
+        }
+
+        //Parse results
+        int code = requester.getResponseCode();
+        String json = requester.getResponse();
+        requester.disconnect(); //Disconnect
+        Map<String, Object> map = GSON.fromJson(json, RESPONSE_TYPE);
+        if (code == 200 && !map.containsKey("error")) {
+            return rememberUpload((String) map.get("hash"));
+        } else {
+            if (code == 200) {
+                try {
+                    code = Integer.parseInt((String)map.get("error"));
+                } catch (Throwable t) {
+                    throw new IOException("The server responded with an unknown error (" + (map.get("error") == null ? "null" : map.get("error")) + ")", t);
+                }
+            }
+            switch (code) {
+                case 400:
+                    throw new FileUploadFailedException("The URL is invalid.");
+                case 404:
+                    throw new FileUploadFailedException("The file requested does not exist");
+                case 409:
+                    throw new DuplicateUploadException("This file was already uploaded!", null);
+                case 420:
+                    rateLimited();
+                    throw new RateLimitedException("The rate limit was exceeded. Enhance your calm.");
+                case 415:
+                    throw new FileUploadFailedException("The file extension is not acceptable.");
+                default:
+                    throw new IOException("The server responded with an unknown error code! (" + code + ")");
+            }
+        }
+    }
+
+    /**
+     * Asynchronously returns information about the file whose hash is <b>hash</b>, using the executor of this client
+     * @param hash
+     *            The hash of the file to retrieve.
+     * @return
+     *        A future that completes with the file, or exceptionally with the exception
+     *        {@link JCrushClient#getFileInfo(String)} throws
+     * @see JCrushClient#getFileInfo(String)
+     */
+    public CompletableFuture<MediaCrushFile> getFileInfoAsync(String hash) {
+        return getFileInfoAsync(hash, executor);
+    }
+
+    /**
+     * Asynchronously returns information about the file whose hash is <b>hash</b>
+     * @param hash
+     *            The hash of the file to retrieve.
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the file, or exceptionally with the exception
+     *        {@link JCrushClient#getFileInfo(String)} throws
+     * @see JCrushClient#getFileInfo(String)
+     */
+    public CompletableFuture<MediaCrushFile> getFileInfoAsync(String hash, Executor executor) {
+        Validator.validateNotNull(hash, "hash");
+        Validator.validateNotNull(executor, "executor");
+        MediaCrushFile cached = cached(hash, false);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        if (!coalescing)
+            return supplyAsync(fetchFileInfoCall(hash), executor);
+        return fileFlights.executeAsync(apiUrl + hash, fetchFileInfoCall(hash), executor);
+    }
+
+    /**
+     * Asynchronously get the current upload status for the file specified by the hash, using the executor of this client
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        A future that completes with the file, or exceptionally with the exception
+     *        {@link JCrushClient#getFileStatus(String)} throws
+     * @see JCrushClient#getFileStatus(String)
+     */
+    public CompletableFuture<MediaCrushFile> getFileStatusAsync(String hash) {
+        return getFileStatusAsync(hash, executor);
+    }
+
+    /**
+     * Asynchronously get the current upload status for the file specified by the hash
+     * @param hash
+     *            The hash of the file
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the file, or exceptionally with the exception
+     *        {@link JCrushClient#getFileStatus(String)} throws
+     * @see JCrushClient#getFileStatus(String)
+     */
+    public CompletableFuture<MediaCrushFile> getFileStatusAsync(String hash, Executor executor) {
+        Validator.validateNotNull(hash, "hash");
+        Validator.validateNotNull(executor, "executor");
+        MediaCrushFile cached = cached(hash, true);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        if (!coalescing)
+            return supplyAsync(fetchFileStatusCall(hash), executor);
+        return fileFlights.executeAsync(apiUrl + hash + "/status", fetchFileStatusCall(hash), executor);
+    }
+
+    /**
+     * Asynchronously check whether a hash exists or not, using the executor of this client
+     * @param hash
+     *            The hash to lookup
+     * @return
+     *        A future that completes with the result, or exceptionally with the exception
+     *        {@link JCrushClient#doesExists(String)} throws
+     * @see JCrushClient#doesExists(String)
+     */
+    public CompletableFuture<Boolean> doesExistsAsync(String hash) {
+        return doesExistsAsync(hash, executor);
+    }
+
+    /**
+     * Asynchronously check whether a hash exists or not
+     * @param hash
+     *            The hash to lookup
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the result, or exceptionally with the exception
+     *        {@link JCrushClient#doesExists(String)} throws
+     * @see JCrushClient#doesExists(String)
+     */
+    public CompletableFuture<Boolean> doesExistsAsync(String hash, Executor executor) {
+        Validator.validateNotNull(hash, "hash");
+        Validator.validateNotNull(executor, "executor");
+        ExistenceFilter filter = this.existenceFilter;
+        if (filter != null && filter.isKnownMissing(hash))
+            return CompletableFuture.completedFuture(false);
+        if (!coalescing)
+            return supplyAsync(fetchExistsCall(hash), executor);
+        return existsFlights.executeAsync(apiUrl + hash + "/exists", fetchExistsCall(hash), executor);
+    }
+
+    /**
+     * Asynchronously upload the file specified in the parameter, using the executor of this client
+     * @param file
+     *            The file to upload represented as a {@link File} object
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFile(java.io.File)} throws
+     * @see JCrushClient#uploadFile(java.io.File)
+     */
+    public CompletableFuture<String> uploadFileAsync(File file) {
+        return uploadFileAsync(file, executor);
+    }
+
+    /**
+     * Asynchronously upload the file specified in the parameter
+     * @param file
+     *            The file to upload represented as a {@link File} object
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFile(java.io.File)} throws
+     * @see JCrushClient#uploadFile(java.io.File)
+     */
+    public CompletableFuture<String> uploadFileAsync(final File file, Executor executor) {
+        return supplyAsync(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return uploadFile(file);
+            }
+        }, executor);
+    }
+
+    /**
+     * Asynchronously upload the data in <b>imageData</b>, using the executor of this client. The stream is read on
+     * the executor, so it must not be used until the returned future completes.
+     * @param imageData
+     *                 The {@link InputStream} with the image data to upload
+     * @param length
+     *               The number of bytes in <b>imageData</b>, or -1 if it is not known
+     * @param type
+     *            The {@link FileType} of the data being uploaded
+     * @param fileName
+     *                 The file name for this data <b>INCLUDING</b> the file extension.
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)} throws
+     * @see JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)
+     */
+    public CompletableFuture<String> uploadFileAsync(InputStream imageData, long length, FileType type, String fileName) {
+        return uploadFileAsync(imageData, length, type, fileName, executor);
+    }
+
+    /**
+     * Asynchronously upload the data in <b>imageData</b>. The stream is read on the executor, so it must not be used
+     * until the returned future completes.
+     * @param imageData
+     *                 The {@link InputStream} with the image data to upload
+     * @param length
+     *               The number of bytes in <b>imageData</b>, or -1 if it is not known
+     * @param type
+     *            The {@link FileType} of the data being uploaded
+     * @param fileName
+     *                 The file name for this data <b>INCLUDING</b> the file extension.
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)} throws
+     * @see JCrushClient#uploadFile(java.io.InputStream, long, jcrush.model.FileType, String)
+     */
+    public CompletableFuture<String> uploadFileAsync(final InputStream imageData, final long length, final FileType type,
+                                                     final String fileName, Executor executor) {
+        return supplyAsync(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return uploadFile(imageData, length, type, fileName);
+            }
+        }, executor);
+    }
+
+    /**
+     * Asynchronously upload the file at a URL, using the executor of this client
+     * @param url
+     *            The URL from where to fetch the file to upload
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFileViaURL(String)} throws
+     * @see JCrushClient#uploadFileViaURL(String)
+     */
+    public CompletableFuture<String> uploadFileViaURLAsync(String url) {
+        return uploadFileViaURLAsync(url, executor);
+    }
+
+    /**
+     * Asynchronously upload the file at a URL
+     * @param url
+     *            The URL from where to fetch the file to upload
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes with the hash of the file, or exceptionally with the exception
+     *        {@link JCrushClient#uploadFileViaURL(String)} throws
+     * @see JCrushClient#uploadFileViaURL(String)
+     */
+    public CompletableFuture<String> uploadFileViaURLAsync(final String url, Executor executor) {
+        return supplyAsync(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return uploadFileViaURL(url);
+            }
+        }, executor);
+    }
+
+    /**
+     * Asynchronously delete a file, using the executor of this client
+     * @param hash
+     *            The hash of the file to delete
+     * @return
+     *        A future that completes when the file is deleted, or exceptionally with the exception
+     *        {@link JCrushClient#delete(String)} throws
+     * @see JCrushClient#delete(String)
+     */
+    public CompletableFuture<Void> deleteAsync(String hash) {
+        return deleteAsync(hash, executor);
+    }
+
+    /**
+     * Asynchronously delete a file
+     * @param hash
+     *            The hash of the file to delete
+     * @param executor
+     *                The executor to run the request on
+     * @return
+     *        A future that completes when the file is deleted, or exceptionally with the exception
+     *        {@link JCrushClient#delete(String)} throws
+     * @see JCrushClient#delete(String)
+     */
+    public CompletableFuture<Void> deleteAsync(final String hash, Executor executor) {
+        return supplyAsync(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                delete(hash);
+                return null;
+            }
+        }, executor);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(final Callable<T> call, Executor executor) {
+        Validator.validateNotNull(executor, "executor");
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(call.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,354 @@
+package jcrush;
+
+import jcrush.cache.MetadataCache;
+import jcrush.model.FileStatus;
+import jcrush.model.MediaCrushFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Waits for files to finish processing. <br></br>
+ * Every hash being waited for is polled on a shared schedule: on each tick, the hashes that are due are looked up
+ * together with {@link JCrushClient#getFileStatuses(String...)}, so thousands of files cost a few batched requests per
+ * tick instead of one request per file. The interval between two polls of the same hash starts at the initial interval
+ * and grows by the backoff factor each time the file is still processing, up to the maximum interval. <br></br>
+ * This class is thread-safe.
+ */
+public class StatusPoller implements Closeable {
+    /**
+     * The default time in milliseconds between two ticks of the poller
+     */
+    public static final long DEFAULT_TICK = 250;
+    /**
+     * The default time in milliseconds before a hash is polled again the first time
+     */
+    public static final long DEFAULT_INITIAL_INTERVAL = 1000;
+    /**
+     * The default maximum time in milliseconds between two polls of the same hash
+     */
+    public static final long DEFAULT_MAX_INTERVAL = 30000;
+    /**
+     * The default factor the interval of a hash grows by each time it is still processing
+     */
+    public static final double DEFAULT_BACKOFF_FACTOR = 1.5;
+    /**
+     * How many polls in a row may report a hash as missing before its future fails. A file may not show up in the
+     * API right after it was uploaded.
+     */
+    public static final int MAX_MISSES = 3;
+
+    private final JCrushClient client;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, Watch> watches = new ConcurrentHashMap<String, Watch>();
+    private volatile long initialInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_INTERVAL);
+    private volatile long maxInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_INTERVAL);
+    private volatile double backoffFactor = DEFAULT_BACKOFF_FACTOR;
+    private volatile boolean closed;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+
+    /**
+     * Create a new poller that ticks every {@link StatusPoller#DEFAULT_TICK} milliseconds
+     * @param client
+     *              The client to look the statuses up with
+     */
+    public StatusPoller(JCrushClient client) {
+        this(client, DEFAULT_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new poller
+     * @param client
+     *              The client to look the statuses up with
+     * @param tick
+     *            The time between two ticks of the poller
+     * @param unit
+     *            The unit of <b>tick</b>
+     */
+    public StatusPoller(JCrushClient client, long tick, TimeUnit unit) {
+        if (client == null)
+            throw new IllegalArgumentException("client cannot be null!");
+        if (tick <= 0)
+            throw new IllegalArgumentException("tick must be greater than 0!");
+        this.client = client;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JCrush-StatusPoller");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (RuntimeException e) {
+                    //Keep the poller alive, the failed hashes are polled again on the next tick
+                }
+            }
+        }, tick, tick, unit);
+    }
+
+    /**
+     * Wait for the file <b>hash</b> to be done processing. Every caller gets a future of its own, and a hash waited for
+     * by several callers is still polled once for all of them.
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        A future that completes with the file once its status is {@link FileStatus#DONE}, {@link FileStatus#ERROR}
+     *        or {@link FileStatus#TIMEOUT}. It fails if the file does not exist. Cancelling it only affects this caller;
+     *        the hash stops being polled once no caller waits for it.
+     */
+    public CompletableFuture<MediaCrushFile> waitForStatus(String hash) {
+        if (hash == null)
+            throw new IllegalArgumentException("hash cannot be null!");
+        if (closed)
+            throw new IllegalStateException("This StatusPoller is closed!");
+        CompletableFuture<MediaCrushFile> waiter = new CompletableFuture<MediaCrushFile>();
+        while (true) {
+            Watch watch = new Watch(System.nanoTime(), initialInterval);
+            Watch existing = watches.putIfAbsent(hash, watch);
+            if (existing != null)
+                watch = existing;
+            if (watch.add(waiter))
+                return waiter;
+            //The watch was dropped because nobody waited for it any more, start a new one
+            watches.remove(hash, watch);
+        }
+    }
+
+    /**
+     * Wait for the file <b>hash</b> to be done processing, giving up after <b>timeout</b>
+     * @param hash
+     *            The hash of the file
+     * @param timeout
+     *               The time to wait for
+     * @param unit
+     *            The unit of <b>timeout</b>
+     * @return
+     *        A future that completes like {@link StatusPoller#waitForStatus(String)}, or fails with a
+     *        {@link TimeoutException} once <b>timeout</b> has passed. Timing out does not affect the other callers
+     *        waiting for the same hash.
+     */
+    public CompletableFuture<MediaCrushFile> waitForStatus(String hash, long timeout, TimeUnit unit) {
+        final CompletableFuture<MediaCrushFile> future = waitForStatus(hash);
+        final String waited = hash;
+        //The watch is dropped on the next tick if no other caller waits for it
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.completeExceptionally(new TimeoutException("Timed out waiting for " + waited));
+            }
+        }, timeout, unit);
+        return future;
+    }
+
+    /**
+     * Poll every hash that is due. This is called on every tick.
+     */
+    void poll() {
+        long now = System.nanoTime();
+        List<String> due = new ArrayList<String>();
+        for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+            Watch watch = entry.getValue();
+            if (watch.future.isDone() || watch.dropIfUnwaited()) {
+                watches.remove(entry.getKey(), watch);
+            } else if (watch.nextPoll - now <= 0) {
+                due.add(entry.getKey());
+            }
+        }
+        if (due.isEmpty())
+            return;
+
+        //A status that is still processing may be cached, the poller needs the live one
+        MetadataCache cache = client.getCache();
+        if (cache != null) {
+            for (String hash : due) {
+                cache.invalidate(hash);
+            }
+        }
+
+        String[] hashes = due.toArray(new String[due.size()]);
+        MediaCrushFile[] files;
+        try {
+            files = client.getFileStatuses(hashes);
+        } catch (IOException e) {
+            for (String hash : hashes) {
+                Watch watch = watches.get(hash);
+                if (watch != null)
+                    watch.backoff(now);
+            }
+            return;
+        } finally {
+            batches.incrementAndGet();
+            polls.addAndGet(hashes.length);
+        }
+
+        for (int i = 0; i < hashes.length; i++) {
+            Watch watch = watches.get(hashes[i]);
+            if (watch == null)
+                continue;
+            MediaCrushFile file = files[i];
+            if (file == null) {
+                if (++watch.misses >= MAX_MISSES) {
+                    watches.remove(hashes[i], watch);
+                    watch.future.completeExceptionally(new IOException("The file " + hashes[i] + " does not exist!"));
+                } else {
+                    watch.backoff(now);
+                }
+            } else if (file.isStatusKnown() && file.getStatus() != FileStatus.PROCESSING) {
+                watches.remove(hashes[i], watch);
+                watch.future.complete(file);
+            } else {
+                watch.misses = 0;
+                watch.backoff(now);
+            }
+        }
+    }
+
+    /**
+     * Stop polling and fail every future that is still waiting
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+            entry.getValue().future.completeExceptionally(new IOException("The StatusPoller was closed!"));
+        }
+        watches.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of hashes being waited for
+     * @return
+     *        The number of hashes
+     */
+    public int getWatchedCount() {
+        return watches.size();
+    }
+
+    /**
+     * Get the number of batches that were sent
+     * @return
+     *        The number of calls to {@link JCrushClient#getFileStatuses(String...)}
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Get the number of hashes that were polled, counting every batch
+     * @return
+     *        The number of hashes polled
+     */
+    public long getPollCount() {
+        return polls.get();
+    }
+
+    public void setInitialInterval(long interval, TimeUnit unit) {
+        this.initialInterval = unit.toNanos(interval);
+    }
+
+    public long getInitialInterval(TimeUnit unit) {
+        return unit.convert(initialInterval, TimeUnit.NANOSECONDS);
+    }
+
+    public void setMaxInterval(long interval, TimeUnit unit) {
+        this.maxInterval = unit.toNanos(interval);
+    }
+
+    public long getMaxInterval(TimeUnit unit) {
+        return unit.convert(maxInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the factor the interval of a hash grows by each time it is still processing
+     * @param backoffFactor
+     *                     The factor, 1 to poll at a fixed interval
+     */
+    public void setBackoffFactor(double backoffFactor) {
+        if (backoffFactor < 1)
+            throw new IllegalArgumentException("backoffFactor cannot be less than 1!");
+        this.backoffFactor = backoffFactor;
+    }
+
+    public double getBackoffFactor() {
+        return backoffFactor;
+    }
+
+    private class Watch {
+        //Completed by the poller, never handed to a caller
+        final CompletableFuture<MediaCrushFile> future = new CompletableFuture<MediaCrushFile>();
+        private final List<CompletableFuture<MediaCrushFile>> waiters = new ArrayList<CompletableFuture<MediaCrushFile>>();
+        private boolean dropped;
+        //Only accessed by the poller thread once the watch was created
+        long nextPoll;
+        long interval;
+        int misses;
+
+        Watch(long now, long interval) {
+            this.interval = interval;
+            this.nextPoll = now + interval;
+        }
+
+        /**
+         * Complete <b>waiter</b> with the outcome of this watch
+         * @return
+         *        false if the watch was already dropped
+         */
+        synchronized boolean add(final CompletableFuture<MediaCrushFile> waiter) {
+            if (dropped)
+                return false;
+            waiters.add(waiter);
+            future.whenComplete(new BiConsumer<MediaCrushFile, Throwable>() {
+                @Override
+                public void accept(MediaCrushFile file, Throwable t) {
+                    if (t != null)
+                        waiter.completeExceptionally(t);
+                    else
+                        waiter.complete(file);
+                }
+            });
+            return true;
+        }
+
+        /**
+         * Drop this watch if every caller waiting for it timed out or cancelled
+         * @return
+         *        true if the watch was dropped
+         */
+        synchronized boolean dropIfUnwaited() {
+            for (CompletableFuture<MediaCrushFile> waiter : waiters) {
+                if (!waiter.isDone())
+                    return false;
+            }
+            dropped = true;
+            return true;
+        }
+
+        void backoff(long now) {
+            nextPoll = now + interval;
+            interval = Math.min(maxInterval, (long) (interval * backoffFactor));
+        }
+    }
+}
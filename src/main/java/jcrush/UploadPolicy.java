@@ -0,0 +1,153 @@
+package jcrush;
+
+import jcrush.model.FileType;
+import jcrush.system.ContentSniffer;
+import jcrush.system.exceptions.UploadRejectedException;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Checks a file before it is uploaded, so a file the server would refuse fails locally without using any upload
+ * bandwidth. <br></br>
+ * The type of the file is sniffed from its first bytes with {@link ContentSniffer}. A file whose content does not
+ * match the type it was declared as is uploaded as the type of its content, or rejected if
+ * {@link UploadPolicy#setRejectingMismatches(boolean)} is set. Content that cannot be sniffed keeps its declared type.
+ * The file is then rejected if its type is unknown or not allowed, or if it is larger than the maximum size. <br></br>
+ * This class is thread-safe.
+ * @see JCrushClient#setUploadPolicy(UploadPolicy)
+ */
+public class UploadPolicy {
+    private volatile long maxSize = -1;
+    private volatile Set<FileType> allowedTypes;
+    private volatile boolean sniffing = true;
+    private volatile boolean rejectingMismatches;
+
+    /**
+     * Check a file about to be uploaded
+     * @param declared
+     *                The type the file was declared as, from its extension or by the caller
+     * @param head
+     *            The first bytes of the file, see {@link ContentSniffer#SNIFF_LENGTH}
+     * @param headLength
+     *                  The number of bytes in <b>head</b>
+     * @param length
+     *              The size of the file, or -1 if it is not known
+     * @return
+     *        The type to upload the file as
+     * @throws UploadRejectedException
+     *                                If the file must not be uploaded
+     */
+    public FileType check(FileType declared, byte[] head, int headLength, long length) throws UploadRejectedException {
+        long maxSize = this.maxSize;
+        if (maxSize >= 0 && length > maxSize)
+            throw new UploadRejectedException("The file is " + length + " bytes, more than the limit of " + maxSize + " bytes!");
+
+        FileType type = declared == null ? FileType.UNKNOWN : declared;
+        if (sniffing) {
+            FileType sniffed = ContentSniffer.sniff(head, headLength);
+            if (sniffed != FileType.UNKNOWN && !sameType(sniffed, type)) {
+                if (rejectingMismatches)
+                    throw new UploadRejectedException("The content is " + sniffed + ", but the file was declared as " + type + "!");
+                type = sniffed;
+            }
+        }
+
+        if (type == FileType.UNKNOWN)
+            throw new UploadRejectedException("Unknown file type!");
+        Set<FileType> allowedTypes = this.allowedTypes;
+        if (allowedTypes != null && !isAllowed(allowedTypes, type))
+            throw new UploadRejectedException("Files of type " + type + " are not allowed!");
+        return type;
+    }
+
+    /**
+     * Set the largest file that can be uploaded. Files whose length is not known up front are not checked.
+     * @param maxSize
+     *               The size in bytes, or -1 for no limit
+     */
+    public void setMaxSize(long maxSize) {
+        if (maxSize < -1)
+            throw new IllegalArgumentException("maxSize must be at least -1!");
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the types that can be uploaded. {@link FileType#JPEG} and {@link FileType#JPG} allow each other.
+     * @param types
+     *             The types, or null to allow every known type
+     */
+    public void setAllowedTypes(FileType... types) {
+        if (types == null) {
+            this.allowedTypes = null;
+            return;
+        }
+        Set<FileType> allowed = EnumSet.noneOf(FileType.class);
+        Collections.addAll(allowed, types);
+        this.allowedTypes = Collections.unmodifiableSet(allowed);
+    }
+
+    /**
+     * Get the types that can be uploaded
+     * @return
+     *        The types, or null if every known type is allowed
+     */
+    public Set<FileType> getAllowedTypes() {
+        return allowedTypes;
+    }
+
+    /**
+     * Set whether the type of a file is sniffed from its content. This is on by default.
+     * @param sniffing
+     *                false to trust the declared type
+     */
+    public void setSniffing(boolean sniffing) {
+        this.sniffing = sniffing;
+    }
+
+    public boolean isSniffing() {
+        return sniffing;
+    }
+
+    /**
+     * Set whether a file whose content does not match its declared type is rejected instead of being uploaded as
+     * the type of its content. This is off by default.
+     * @param rejectingMismatches
+     *                           true to reject mismatched files
+     */
+    public void setRejectingMismatches(boolean rejectingMismatches) {
+        this.rejectingMismatches = rejectingMismatches;
+    }
+
+    public boolean isRejectingMismatches() {
+        return rejectingMismatches;
+    }
+
+    /**
+     * Give <b>fileName</b> the extension of <b>type</b>, as the server goes by the extension of the name
+     */
+    static String withExtension(String fileName, FileType type) {
+        String ext = type.getFileExtension();
+        if (fileName == null || ext.length() == 0 || ext.startsWith("."))
+            return fileName;
+        int dot = fileName.lastIndexOf('.');
+        return (dot > 0 ? fileName.substring(0, dot) : fileName) + "." + ext;
+    }
+
+    private static boolean sameType(FileType a, FileType b) {
+        return a.toString().equals(b.toString());
+    }
+
+    private static boolean isAllowed(Set<FileType> allowedTypes, FileType type) {
+        for (FileType allowed : allowedTypes) {
+            if (sameType(allowed, type))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,75 @@
+package jcrush;
+
+import java.io.File;
+
+/**
+ * The result of uploading one file with a {@link BulkUploader}
+ */
+public class UploadResult {
+    /**
+     * What happened to a file
+     */
+    public enum Outcome {
+        /**
+         * The file was uploaded
+         */
+        UPLOADED,
+        /**
+         * The server already had the file
+         */
+        DUPLICATE,
+        /**
+         * The file was not sent because its type cannot be uploaded, or the upload policy of the client refused it
+         */
+        REJECTED,
+        /**
+         * Uploading the file failed
+         */
+        FAILED
+    }
+
+    private final File file;
+    private final Outcome outcome;
+    private final String hash;
+    private final Exception exception;
+
+    UploadResult(File file, Outcome outcome, String hash, Exception exception) {
+        this.file = file;
+        this.outcome = outcome;
+        this.hash = hash;
+        this.exception = exception;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Get the hash of the file on the server
+     * @return
+     *        The hash if the file was uploaded. For a duplicate it is only known if the client is deduplicating,
+     *        otherwise it is null.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get why the file failed to upload
+     * @return
+     *        The exception if the outcome is {@link Outcome#FAILED}, or if the upload policy of the client rejected the
+     *        file, otherwise null
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return outcome + " " + file + (hash != null ? " " + hash : "") + (exception != null ? " " + exception.getMessage() : "");
+    }
+}
@@ -0,0 +1,241 @@
+package jcrush.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers {@link jcrush.JCrushClient#doesExists(String)} misses locally. <br></br>
+ * Hashes the server reported as missing are remembered in a bounded negative cache for a TTL. <br></br>
+ * Optionally, a {@link BloomFilter} is seeded with every hash the client has seen or uploaded. When it is enabled,
+ * a hash the filter has never seen is reported as missing without asking the server. This is only correct when every
+ * hash worth looking up passes through this client or is given to {@link ExistenceFilter#seed(Iterable)}, for example
+ * when validating links to files you uploaded yourself. <br></br>
+ * This class is thread-safe.
+ */
+public class ExistenceFilter {
+    private final int maxNegativeEntries;
+    private final LinkedHashMap<String, Long> missing;
+    private volatile long negativeTtl;
+    private volatile BloomFilter bloomFilter;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong negativeCacheHits = new AtomicLong();
+    private final AtomicLong bloomFilterMisses = new AtomicLong();
+    private final AtomicLong serverHits = new AtomicLong();
+    private final AtomicLong serverMisses = new AtomicLong();
+    private final AtomicLong bloomFilterPasses = new AtomicLong();
+    private final AtomicLong bloomFilterFalsePositives = new AtomicLong();
+
+    /**
+     * Create a new filter without a Bloom filter
+     * @param maxNegativeEntries
+     *                          The maximum number of missing hashes to remember
+     * @param negativeTtl
+     *                   How long a missing hash is remembered
+     * @param unit
+     *            The unit of <b>negativeTtl</b>
+     */
+    public ExistenceFilter(final int maxNegativeEntries, long negativeTtl, TimeUnit unit) {
+        if (maxNegativeEntries <= 0)
+            throw new IllegalArgumentException("maxNegativeEntries must be greater than 0!");
+        this.maxNegativeEntries = maxNegativeEntries;
+        this.negativeTtl = unit.toNanos(negativeTtl);
+        this.missing = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxNegativeEntries;
+            }
+        };
+    }
+
+    /**
+     * Enable the Bloom filter of known hashes. From now on, a hash that was never seen or seeded is reported as missing
+     * without asking the server.
+     * @param expectedHashes
+     *                      The number of hashes expected to be seen
+     * @param falsePositiveRate
+     *                         The false positive rate wanted once that many hashes were seen
+     */
+    public void enableBloomFilter(long expectedHashes, double falsePositiveRate) {
+        this.bloomFilter = new BloomFilter(expectedHashes, falsePositiveRate);
+    }
+
+    public BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * Add known hashes to the Bloom filter
+     * @param hashes
+     *              The hashes that exist
+     */
+    public void seed(Iterable<String> hashes) {
+        BloomFilter bloom = this.bloomFilter;
+        if (bloom == null)
+            throw new IllegalStateException("The Bloom filter is not enabled!");
+        for (String hash : hashes) {
+            bloom.put(hash);
+        }
+    }
+
+    /**
+     * Check whether <b>hash</b> is known to be missing, so the server does not have to be asked
+     * @param hash
+     *            The hash to check
+     * @return
+     *        true if the hash is definitely missing, false if the server has to be asked
+     */
+    public boolean isKnownMissing(String hash) {
+        lookups.incrementAndGet();
+        BloomFilter bloom = this.bloomFilter;
+        if (bloom != null && !bloom.mightContain(hash)) {
+            bloomFilterMisses.incrementAndGet();
+            return true;
+        }
+        long now = System.nanoTime();
+        synchronized (missing) {
+            Long expires = missing.get(hash);
+            if (expires != null) {
+                if (expires - now > 0) {
+                    negativeCacheHits.incrementAndGet();
+                    return true;
+                }
+                missing.remove(hash);
+            }
+        }
+        if (bloom != null)
+            bloomFilterPasses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record that <b>hash</b> exists
+     * @param hash
+     *            The hash that exists
+     */
+    public void recordExists(String hash) {
+        BloomFilter bloom = this.bloomFilter;
+        if (bloom != null)
+            bloom.put(hash);
+        synchronized (missing) {
+            missing.remove(hash);
+        }
+    }
+
+    /**
+     * Record the answer the server gave for a lookup that {@link ExistenceFilter#isKnownMissing(String)} could not
+     * answer
+     * @param hash
+     *            The hash that was looked up
+     * @param exists
+     *              Whether the server reported the hash as existing
+     */
+    public void recordLookup(String hash, boolean exists) {
+        if (exists) {
+            serverHits.incrementAndGet();
+            recordExists(hash);
+        } else {
+            serverMisses.incrementAndGet();
+            if (bloomFilter != null)
+                bloomFilterFalsePositives.incrementAndGet();
+            recordMissing(hash);
+        }
+    }
+
+    /**
+     * Record that <b>hash</b> does not exist, for example because it was deleted
+     * @param hash
+     *            The hash that is missing
+     */
+    public void recordMissing(String hash) {
+        long expires = System.nanoTime() + negativeTtl;
+        synchronized (missing) {
+            missing.put(hash, expires);
+        }
+    }
+
+    /**
+     * Forget that <b>hash</b> was reported as missing
+     * @param hash
+     *            The hash to forget
+     */
+    public void invalidate(String hash) {
+        synchronized (missing) {
+            missing.remove(hash);
+        }
+    }
+
+    public void setNegativeTtl(long negativeTtl, TimeUnit unit) {
+        this.negativeTtl = unit.toNanos(negativeTtl);
+    }
+
+    public long getNegativeTtl(TimeUnit unit) {
+        return unit.convert(negativeTtl, TimeUnit.NANOSECONDS);
+    }
+
+    public int getMaxNegativeEntries() {
+        return maxNegativeEntries;
+    }
+
+    /**
+     * Get the number of lookups this filter was asked to answer
+     * @return
+     *        The number of lookups
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * Get the number of lookups answered as missing by the negative cache
+     * @return
+     *        The number of negative cache hits
+     */
+    public long getNegativeCacheHitCount() {
+        return negativeCacheHits.get();
+    }
+
+    /**
+     * Get the number of lookups answered as missing by the Bloom filter
+     * @return
+     *        The number of Bloom filter misses
+     */
+    public long getBloomFilterMissCount() {
+        return bloomFilterMisses.get();
+    }
+
+    /**
+     * Get the ratio of lookups that were misses, whether they were answered locally or by the server
+     * @return
+     *        The miss rate between 0 and 1
+     */
+    public double getMissRate() {
+        long lookups = this.lookups.get();
+        long misses = negativeCacheHits.get() + bloomFilterMisses.get() + serverMisses.get();
+        return lookups == 0 ? 0 : (double) misses / lookups;
+    }
+
+    /**
+     * Get the ratio of misses that were answered locally
+     * @return
+     *        The local miss rate between 0 and 1
+     */
+    public double getLocalMissRate() {
+        long local = negativeCacheHits.get() + bloomFilterMisses.get();
+        long misses = local + serverMisses.get();
+        return misses == 0 ? 0 : (double) local / misses;
+    }
+
+    /**
+     * Get the observed false positive rate of the Bloom filter: the ratio of hashes it let through to the server that
+     * the server then reported as missing
+     * @return
+     *        The observed false positive rate between 0 and 1
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        long passes = bloomFilterPasses.get();
+        return passes == 0 ? 0 : (double) bloomFilterFalsePositives.get() / passes;
+    }
+}
@@ -0,0 +1,227 @@
+package jcrush.cache;
+
+import jcrush.model.FileStatus;
+import jcrush.model.MediaCrushFile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least-recently-used cache of {@link MediaCrushFile} objects keyed by hash. <br></br>
+ * How long an entry is kept depends on the status of the file: <br></br>
+ * * {@link FileStatus#DONE} files never change again, so they are kept until they are evicted <br></br>
+ * * {@link FileStatus#PROCESSING} files, and files whose status was not sent by the server, are kept for the
+ *   processing TTL <br></br>
+ * * {@link FileStatus#ERROR} and {@link FileStatus#TIMEOUT} files are kept for the failed TTL <br></br>
+ * This class is thread-safe.
+ */
+public class MetadataCache {
+    /**
+     * The default time in milliseconds a file that is still processing is kept
+     */
+    public static final long DEFAULT_PROCESSING_TTL = 5000;
+    /**
+     * The default time in milliseconds a file that failed to process is kept
+     */
+    public static final long DEFAULT_FAILED_TTL = 30000;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedEntry> entries;
+    private volatile long processingTtl = TimeUnit.MILLISECONDS.toNanos(DEFAULT_PROCESSING_TTL);
+    private volatile long failedTtl = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FAILED_TTL);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Create a new cache
+     * @param maxEntries
+     *                  The maximum number of files to keep. When it is exceeded, the least recently used file is evicted.
+     */
+    public MetadataCache(final int maxEntries) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be greater than 0!");
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the cached file for <b>hash</b>
+     * @param hash
+     *            The hash of the file
+     * @param requireStatus
+     *                     Whether only a file whose status was sent by the server may be returned
+     * @return
+     *        The cached file, or null if there is no usable entry
+     */
+    public MediaCrushFile get(String hash, boolean requireStatus) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            CachedEntry entry = entries.get(hash);
+            if (entry != null && entry.expires - now <= 0) {
+                entries.remove(hash);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null || (requireStatus && !entry.statusKnown)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.file;
+        }
+    }
+
+    /**
+     * Cache <b>file</b>. A file whose status is known is never replaced by the same file with an unknown status.
+     * @param file
+     *            The file to cache
+     */
+    public void put(MediaCrushFile file) {
+        if (file == null || file.getHash() == null)
+            return;
+        boolean statusKnown = file.isStatusKnown();
+        long now = System.nanoTime();
+        CachedEntry entry = new CachedEntry(file, statusKnown, now + ttlOf(file));
+        synchronized (entries) {
+            CachedEntry existing = entries.get(file.getHash());
+            if (existing != null && existing.statusKnown && !statusKnown && existing.expires - now > 0)
+                return;
+            entries.put(file.getHash(), entry);
+        }
+    }
+
+    private long ttlOf(MediaCrushFile file) {
+        if (!file.isStatusKnown())
+            return processingTtl;
+        switch (file.getStatus()) {
+            case DONE:
+                return Long.MAX_VALUE / 2;
+            case PROCESSING:
+                return processingTtl;
+            default:
+                return failedTtl;
+        }
+    }
+
+    /**
+     * Remove the cached file for <b>hash</b>
+     * @param hash
+     *            The hash of the file
+     */
+    public void invalidate(String hash) {
+        synchronized (entries) {
+            entries.remove(hash);
+        }
+    }
+
+    /**
+     * Remove every cached file
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Set how long a file that is still processing, or whose status is not known, is kept
+     * @param ttl
+     *           The time to keep the file
+     * @param unit
+     *            The unit of <b>ttl</b>
+     */
+    public void setProcessingTtl(long ttl, TimeUnit unit) {
+        this.processingTtl = unit.toNanos(ttl);
+    }
+
+    public long getProcessingTtl(TimeUnit unit) {
+        return unit.convert(processingTtl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set how long a file whose status is {@link FileStatus#ERROR} or {@link FileStatus#TIMEOUT} is kept
+     * @param ttl
+     *           The time to keep the file
+     * @param unit
+     *            The unit of <b>ttl</b>
+     */
+    public void setFailedTtl(long ttl, TimeUnit unit) {
+        this.failedTtl = unit.toNanos(ttl);
+    }
+
+    public long getFailedTtl(TimeUnit unit) {
+        return unit.convert(failedTtl, TimeUnit.NANOSECONDS);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of files that were evicted because the cache was full
+     * @return
+     *        The number of evicted files
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of files that were removed because their TTL expired
+     * @return
+     *        The number of expired files
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Get the ratio of lookups that were answered from the cache
+     * @return
+     *        The hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static class CachedEntry {
+        final MediaCrushFile file;
+        final boolean statusKnown;
+        final long expires;
+
+        CachedEntry(MediaCrushFile file, boolean statusKnown, long expires) {
+            this.file = file;
+            this.statusKnown = statusKnown;
+            this.expires = expires;
+        }
+    }
+}
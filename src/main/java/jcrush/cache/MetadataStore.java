@@ -0,0 +1,945 @@
+package jcrush.cache;
+
+import com.google.gson.stream.JsonReader;
+import jcrush.model.FileStatus;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps {@link MediaCrushFile} objects on disk, keyed by hash, so that they survive a restart of the process. <br></br>
+ * Files are appended to a log, and a memory-mapped hash table maps every hash to its latest record in the log.
+ * Opening a store only maps the table, so a store of millions of files opens without reading them, and every file is
+ * read from the log the first time it is asked for. The log is checksummed: a record torn by a crash is dropped when
+ * the store is opened, and the table is rebuilt from the log if it is missing or does not belong to it. <br></br>
+ * {@link FileStatus#DONE} files are kept by default, as they never change again and can be answered without
+ * asking the server. Files sent without a status, as the info endpoints send them, are kept as well, but they only
+ * answer lookups that do not need a status; the information of a file that was still processing when it was stored
+ * may be incomplete until a status lookup replaces it. Files that are replaced or removed leave garbage in the log,
+ * which is compacted on a background thread once it passes a share of the log. <br></br>
+ * When serving stale data, files of every status are kept as well, and the client answers lookups with them when the
+ * server cannot be reached. <br></br>
+ * This class is thread-safe, but a directory must only be opened by one store at a time.
+ * @see jcrush.JCrushClient#setStore(MetadataStore)
+ */
+public class MetadataStore implements Closeable {
+    /**
+     * The default share of the log that must be garbage before it is compacted
+     */
+    public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+    /**
+     * The default number of garbage bytes below which the log is never compacted
+     */
+    public static final long DEFAULT_MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private static final String LOG_NAME = "metadata.log";
+    private static final String INDEX_NAME = "metadata.idx";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int LOG_MAGIC = 0x4A434C47;
+    private static final int LOG_VERSION = 1;
+    private static final int LOG_HEADER = 16;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte NOT_DONE = 0;
+    private static final byte DONE = 1;
+    private static final byte STATUS_UNKNOWN = 2;
+    private static final int MAX_RECORD = 1024 * 1024;
+
+    private final File directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private FileChannel log;
+    private long logLength;
+    private long generation;
+    private Index index;
+    private boolean closed;
+    private volatile boolean reopenLater;
+
+    private volatile boolean servingStale;
+    private volatile double compactionRatio = DEFAULT_COMPACTION_RATIO;
+    private volatile long minCompactionBytes = DEFAULT_MIN_COMPACTION_BYTES;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactionFailures = new AtomicLong();
+
+    /**
+     * Open the store in <b>directory</b>, creating it if needed
+     * @param directory
+     *                 The directory the log and the table are kept in
+     * @throws IOException
+     *                    If the directory cannot be created, or holds a log that is not a log of this class
+     */
+    public MetadataStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("The store directory could not be created!");
+        this.directory = directory;
+        Files.deleteIfExists(file(LOG_NAME + COMPACT_SUFFIX).toPath());
+        Files.deleteIfExists(file(INDEX_NAME + COMPACT_SUFFIX).toPath());
+
+        log = FileChannel.open(file(LOG_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            generation = readLogHeader(log);
+            index = Index.open(file(INDEX_NAME), generation);
+            if (index == null)
+                index = Index.create(file(INDEX_NAME), generation, Index.MIN_CAPACITY);
+            recover();
+        } catch (IOException e) {
+            log.close();
+            if (index != null)
+                index.close();
+            throw e;
+        }
+
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JCrush-MetadataStore");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Get the file stored for <b>hash</b> if it is {@link FileStatus#DONE}
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        The file, or null if no finished file is stored for <b>hash</b>
+     * @throws IOException
+     *                    If the log cannot be read
+     */
+    public MediaCrushFile get(String hash) throws IOException {
+        return get(hash, true);
+    }
+
+    /**
+     * Get the file stored for <b>hash</b> if it is {@link FileStatus#DONE}, or if <b>requireStatus</b> is false and it
+     * was stored without a status
+     * @param hash
+     *            The hash of the file
+     * @param requireStatus
+     *                     Whether only a finished file may be returned
+     * @return
+     *        The file, or null if no usable file is stored for <b>hash</b>
+     * @throws IOException
+     *                    If the log cannot be read
+     */
+    public MediaCrushFile get(String hash, boolean requireStatus) throws IOException {
+        Record record = read(hash);
+        if (record == null || !(record.status == DONE || (!requireStatus && record.status == STATUS_UNKNOWN))) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return record.toFile();
+    }
+
+    /**
+     * Get the file stored for <b>hash</b> whatever its status
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        The file, or null if no file is stored for <b>hash</b>
+     * @throws IOException
+     *                    If the log cannot be read
+     */
+    public MediaCrushFile getStale(String hash) throws IOException {
+        Record record = read(hash);
+        if (record == null)
+            return null;
+        staleHits.incrementAndGet();
+        return record.toFile();
+    }
+
+    /**
+     * Store <b>file</b>. A file whose status is known but not {@link FileStatus#DONE} is only stored while serving
+     * stale data. A finished file is never replaced, and a file whose status is known is never replaced by a file
+     * without one.
+     * @param file
+     *            The file to store
+     * @throws IOException
+     *                    If the log cannot be written
+     */
+    public void put(MediaCrushFile file) throws IOException {
+        if (file == null || file.getHash() == null)
+            return;
+        byte status = !file.isStatusKnown() ? STATUS_UNKNOWN : file.getStatus() == FileStatus.DONE ? DONE : NOT_DONE;
+        if (status == NOT_DONE && !servingStale)
+            return;
+        String hash = file.getHash();
+        byte[] body = ModelBinding.MEDIA_CRUSH_FILE_ADAPTER.toJson(file).getBytes(UTF_8);
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Record existing = probe(index, log, logLength, hash);
+            if (existing != null && (existing.status == DONE
+                    || (status == STATUS_UNKNOWN && existing.status != STATUS_UNKNOWN)))
+                return;
+            append(new Record(PUT, status, hash, body));
+        } catch (ClosedByInterruptException e) {
+            reopenLater = true;
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+            reopenIfInterrupted();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove the file stored for <b>hash</b>
+     * @param hash
+     *            The hash of the file
+     * @throws IOException
+     *                    If the log cannot be written
+     */
+    public void remove(String hash) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (probe(index, log, logLength, hash) == null)
+                return;
+            append(new Record(REMOVE, NOT_DONE, hash, new byte[0]));
+        } catch (ClosedByInterruptException e) {
+            reopenLater = true;
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+            reopenIfInterrupted();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Rewrite the log with only the latest record of every stored file. Files can still be read and written while the
+     * log is compacted. This returns at once if the log is already being compacted.
+     * @throws IOException
+     *                    If the log cannot be rewritten, in which case the old log is kept
+     */
+    public void compact() throws IOException {
+        if (!compacting.compareAndSet(false, true))
+            return;
+        try {
+            rewrite();
+            compactions.incrementAndGet();
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Write everything stored so far through to the disk
+     * @throws IOException
+     *                    If the log cannot be forced
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            log.force(false);
+            index.map.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flush and close the store. A compaction that is running is abandoned.
+     * @throws IOException
+     *                    If the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                log.force(false);
+            } finally {
+                log.close();
+                index.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Set whether files that are not {@link FileStatus#DONE} are stored too, so that the client can answer lookups
+     * with them while the server cannot be reached. This is off by default.
+     * @param servingStale
+     *                    true to store and serve stale files
+     */
+    public void setServingStale(boolean servingStale) {
+        this.servingStale = servingStale;
+    }
+
+    public boolean isServingStale() {
+        return servingStale;
+    }
+
+    /**
+     * Set when the log is compacted in the background
+     * @param ratio
+     *             The share of the log that must be garbage, between 0 and 1
+     * @param minBytes
+     *                The number of garbage bytes below which the log is never compacted
+     */
+    public void setCompactionThreshold(double ratio, long minBytes) {
+        if (ratio <= 0 || ratio > 1)
+            throw new IllegalArgumentException("ratio must be greater than 0 and at most 1!");
+        if (minBytes < 0)
+            throw new IllegalArgumentException("minBytes cannot be negative!");
+        this.compactionRatio = ratio;
+        this.minCompactionBytes = minBytes;
+    }
+
+    public double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    public long getMinCompactionBytes() {
+        return minCompactionBytes;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the number of files stored
+     * @return
+     *        The number of files
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the length of the log
+     * @return
+     *        The length in bytes
+     */
+    public long getLogLength() {
+        lock.readLock().lock();
+        try {
+            return logLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of bytes in the log taken by records that were replaced or removed
+     * @return
+     *        The number of garbage bytes
+     */
+    public long getGarbageBytes() {
+        lock.readLock().lock();
+        try {
+            return index.garbage;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of lookups answered with a file whatever its status
+     * @return
+     *        The number of stale lookups
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    /**
+     * Get the number of background compactions that failed. The old log is kept when a compaction fails.
+     * @return
+     *        The number of failed compactions
+     */
+    public long getCompactionFailureCount() {
+        return compactionFailures.get();
+    }
+
+    private Record read(String hash) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return probe(index, log, logLength, hash);
+        } catch (ClosedByInterruptException e) {
+            reopenLater = true;
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+            reopenIfInterrupted();
+        }
+    }
+
+    /**
+     * A thread interrupted while it reads or writes the log closes the channel for every thread, so it is opened again
+     */
+    private void reopenIfInterrupted() throws IOException {
+        if (!reopenLater)
+            return;
+        lock.writeLock().lock();
+        try {
+            if (!closed && !log.isOpen())
+                log = FileChannel.open(file(LOG_NAME).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            reopenLater = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write <b>record</b> at the end of the log and point the table at it. The write lock must be held.
+     */
+    private void append(Record record) throws IOException {
+        long offset = logLength;
+        writeFully(log, record.encode(), offset);
+        logLength += record.size;
+        apply(index, log, record, offset);
+        index.indexedLength = logLength;
+        index.sync();
+        index = index.growIfNeeded();
+    }
+
+    /**
+     * Point the table at the record at <b>offset</b>, counting the record it replaces as garbage
+     */
+    private static void apply(Index index, FileChannel log, Record record, long offset) throws IOException {
+        Record existing = probe(index, log, offset, record.hash);
+        if (record.kind == PUT) {
+            if (existing != null) {
+                index.setOffset(existing.slot, offset);
+                index.garbage += existing.size;
+            } else {
+                index.insert(fingerprint(record.hash), offset);
+            }
+        } else {
+            if (existing != null) {
+                index.setOffset(existing.slot, -1);
+                index.live--;
+                index.garbage += existing.size;
+            }
+            index.garbage += record.size;
+        }
+    }
+
+    /**
+     * Find the latest record of <b>hash</b> among the records before <b>limit</b>
+     */
+    private static Record probe(Index index, FileChannel log, long limit, String hash) throws IOException {
+        long key = fingerprint(hash);
+        int mask = index.capacity - 1;
+        for (int slot = index.slotOf(key); ; slot = (slot + 1) & mask) {
+            long k = index.key(slot);
+            if (k == 0)
+                return null;
+            long offset = index.offset(slot);
+            if (k != key || offset < 0 || offset >= limit)
+                continue;
+            Record record = Record.read(log, offset, limit);
+            if (record != null && record.hash.equals(hash)) {
+                record.slot = slot;
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Replay the records the table does not cover yet, and drop a record torn by a crash
+     */
+    private void recover() throws IOException {
+        long position = Math.max(index.indexedLength, LOG_HEADER);
+        long size = log.size();
+        if (position > size) {
+            index.close();
+            index = Index.create(file(INDEX_NAME), generation, Index.MIN_CAPACITY);
+            position = LOG_HEADER;
+        }
+        Record record;
+        while ((record = Record.read(log, position, size)) != null) {
+            apply(index, log, record, position);
+            position += record.size;
+            index = index.growIfNeeded();
+        }
+        if (position < size)
+            log.truncate(position);
+        logLength = position;
+        index.indexedLength = position;
+        index.sync();
+    }
+
+    private void compactIfNeeded() {
+        long garbage;
+        long length;
+        lock.readLock().lock();
+        try {
+            if (closed)
+                return;
+            garbage = index.garbage;
+            length = logLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (garbage < minCompactionBytes || garbage < length * compactionRatio || compacting.get())
+            return;
+        try {
+            compactor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        compactionFailures.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RuntimeException ignored) {
+            //The store was closed in the meantime
+        }
+    }
+
+    /**
+     * Copy the live records to a new log. Records up to the length of the log when the copy started are copied without
+     * the write lock, then the records appended meanwhile are copied with it, and the new log replaces the old one.
+     */
+    private void rewrite() throws IOException {
+        File compactLog = file(LOG_NAME + COMPACT_SUFFIX);
+        File compactIndex = file(INDEX_NAME + COMPACT_SUFFIX);
+        FileChannel source;
+        long snapshot;
+        int live;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            source = log;
+            snapshot = logLength;
+            live = index.live;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        long newGeneration = generation + 1;
+        FileChannel target = FileChannel.open(compactLog.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Index fresh = null;
+        boolean swapped = false;
+        try {
+            writeLogHeader(target, newGeneration);
+            fresh = Index.create(compactIndex, newGeneration, Index.capacityFor(live));
+            long written = LOG_HEADER;
+            long position = LOG_HEADER;
+            while (position < snapshot) {
+                lock.readLock().lock();
+                try {
+                    ensureOpen();
+                    Record record = Record.read(source, position, snapshot);
+                    if (record == null)
+                        throw new IOException("The log is corrupt at " + position + "!");
+                    if (record.kind == PUT && isLatest(record, position)) {
+                        written = copy(record, target, written, fresh);
+                        fresh = fresh.growIfNeeded();
+                    }
+                    position += record.size;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                ensureOpen();
+                while (position < logLength) {
+                    Record record = Record.read(log, position, logLength);
+                    if (record == null)
+                        throw new IOException("The log is corrupt at " + position + "!");
+                    //A removal is only kept if the new log still has a record for it to hide
+                    if (record.kind == PUT ? isLatest(record, position) : probe(fresh, target, written, record.hash) != null) {
+                        written = copy(record, target, written, fresh);
+                        fresh = fresh.growIfNeeded();
+                    }
+                    position += record.size;
+                }
+                target.force(false);
+                fresh.indexedLength = written;
+                fresh.sync();
+                fresh.map.force();
+
+                move(compactIndex, file(INDEX_NAME));
+                move(compactLog, file(LOG_NAME));
+                log.close();
+                index.close();
+                log = target;
+                index = fresh;
+                logLength = written;
+                generation = newGeneration;
+                swapped = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (!swapped) {
+                target.close();
+                if (fresh != null)
+                    fresh.close();
+                Files.deleteIfExists(compactLog.toPath());
+                Files.deleteIfExists(compactIndex.toPath());
+            }
+        }
+    }
+
+    /**
+     * Check whether <b>record</b> at <b>position</b> is the latest record of its hash. A lock must be held.
+     */
+    private boolean isLatest(Record record, long position) throws IOException {
+        Record latest = probe(index, log, logLength, record.hash);
+        return latest != null && index.offset(latest.slot) == position;
+    }
+
+    private static long copy(Record record, FileChannel target, long offset, Index index) throws IOException {
+        writeFully(target, record.encode(), offset);
+        apply(index, target, record, offset);
+        return offset + record.size;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("The store is closed!");
+    }
+
+    private File file(String name) {
+        return new File(directory, name);
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read the generation of <b>log</b>, writing a new header if the log is empty. The table of a log has to have the
+     * same generation, which changes whenever the log is compacted.
+     */
+    private static long readLogHeader(FileChannel log) throws IOException {
+        if (log.size() == 0) {
+            long generation = ThreadLocalRandom.current().nextLong();
+            writeLogHeader(log, generation);
+            return generation;
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        if (!readFully(log, header, 0) || header.getInt(0) != LOG_MAGIC || header.getInt(4) != LOG_VERSION)
+            throw new IOException("The store directory holds a log that could not be read!");
+        return header.getLong(8);
+    }
+
+    private static void writeLogHeader(FileChannel log, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        header.putInt(LOG_MAGIC).putInt(LOG_VERSION).putLong(generation).flip();
+        writeFully(log, header, 0);
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1)
+                return false;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of <b>hash</b>. 0 marks an empty slot, so it is never returned.
+     */
+    static long fingerprint(String hash) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < hash.length(); i++) {
+            h ^= hash.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * A record of the log: its length, a CRC32 of the rest, its kind, what is known of the status, the hash and the JSON
+     * of the file
+     */
+    private static final class Record {
+        static final int HEADER = 8;
+
+        final byte kind;
+        final byte status;
+        final String hash;
+        final byte[] body;
+        final int size;
+        int slot;
+
+        Record(byte kind, byte status, String hash, byte[] body) {
+            this(kind, status, hash, body, HEADER + 4 + hash.getBytes(UTF_8).length + body.length);
+        }
+
+        private Record(byte kind, byte status, String hash, byte[] body, int size) {
+            this.kind = kind;
+            this.status = status;
+            this.hash = hash;
+            this.body = body;
+            this.size = size;
+        }
+
+        ByteBuffer encode() {
+            byte[] hashBytes = hash.getBytes(UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.position(HEADER);
+            buffer.put(kind).put(status).putShort((short) hashBytes.length).put(hashBytes).put(body);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER, size - HEADER);
+            buffer.putInt(0, size - HEADER).putInt(4, (int) crc.getValue());
+            buffer.rewind();
+            return buffer;
+        }
+
+        MediaCrushFile toFile() throws IOException {
+            return ModelBinding.readFile(new JsonReader(new StringReader(new String(body, UTF_8))), hash);
+        }
+
+        /**
+         * Read the record at <b>position</b>, or return null if it is torn or does not end before <b>limit</b>
+         */
+        static Record read(FileChannel log, long position, long limit) throws IOException {
+            if (position + HEADER > limit)
+                return null;
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            if (!readFully(log, header, position))
+                return null;
+            int length = header.getInt(0);
+            if (length < 4 || length > MAX_RECORD || position + HEADER + length > limit)
+                return null;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(log, payload, position + HEADER))
+                return null;
+            byte[] bytes = payload.array();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+            if ((int) crc.getValue() != header.getInt(4))
+                return null;
+            int hashLength = payload.getShort(2) & 0xFFFF;
+            if (4 + hashLength > length || (bytes[0] != PUT && bytes[0] != REMOVE))
+                return null;
+            String hash = new String(bytes, 4, hashLength, UTF_8);
+            byte[] body = new byte[length - 4 - hashLength];
+            System.arraycopy(bytes, 4 + hashLength, body, 0, body.length);
+            return new Record(bytes[0], bytes[1], hash, body, HEADER + length);
+        }
+    }
+
+    /**
+     * The memory-mapped table. A header is followed by open-addressed slots of a fingerprint and an offset in the log,
+     * which is -1 once the file was removed.
+     */
+    private static final class Index {
+        static final int MIN_CAPACITY = 1024;
+        static final int MAX_CAPACITY = 1 << 26;
+        static final double MAX_LOAD = 0.7;
+        static final int MAGIC = 0x4A43495A;
+        static final int VERSION = 1;
+        static final int HEADER = 64;
+        static final int SLOT = 16;
+
+        File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer map;
+        final int capacity;
+        final long generation;
+        int used;
+        int live;
+        long garbage;
+        long indexedLength;
+
+        private Index(File file, RandomAccessFile raf, MappedByteBuffer map, int capacity, long generation) {
+            this.file = file;
+            this.raf = raf;
+            this.map = map;
+            this.capacity = capacity;
+            this.generation = generation;
+        }
+
+        static Index create(File file, long generation, int capacity) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                raf.setLength(HEADER + (long) capacity * SLOT);
+                MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+                map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, capacity).putLong(16, generation);
+                Index index = new Index(file, raf, map, capacity, generation);
+                index.sync();
+                return index;
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Map the table in <b>file</b>, or return null if there is none for the log of <b>generation</b>
+         */
+        static Index open(File file, long generation) throws IOException {
+            if (!file.isFile() || file.length() < HEADER)
+                return null;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+                int capacity = map.getInt(8);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getLong(16) != generation
+                        || capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1
+                        || raf.length() != HEADER + (long) capacity * SLOT) {
+                    raf.close();
+                    return null;
+                }
+                Index index = new Index(file, raf, map, capacity, generation);
+                index.used = map.getInt(24);
+                index.live = map.getInt(28);
+                index.garbage = map.getLong(32);
+                index.indexedLength = map.getLong(40);
+                return index;
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * The smallest capacity that holds <b>entries</b> with room to grow
+         */
+        static int capacityFor(int entries) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < MAX_CAPACITY && entries * 2L > capacity) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+
+        int slotOf(long key) {
+            return (int) (key ^ (key >>> 32)) & (capacity - 1);
+        }
+
+        long key(int slot) {
+            return map.getLong(HEADER + slot * SLOT);
+        }
+
+        long offset(int slot) {
+            return map.getLong(HEADER + slot * SLOT + 8);
+        }
+
+        void setOffset(int slot, long offset) {
+            map.putLong(HEADER + slot * SLOT + 8, offset);
+        }
+
+        void insert(long key, long offset) {
+            int slot = slotOf(key);
+            while (key(slot) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            map.putLong(HEADER + slot * SLOT, key);
+            setOffset(slot, offset);
+            used++;
+            live++;
+        }
+
+        /**
+         * Write the counters to the header
+         */
+        void sync() {
+            map.putInt(24, used).putInt(28, live).putLong(32, garbage).putLong(40, indexedLength);
+        }
+
+        /**
+         * Return this table, or a larger copy of it without the removed slots once it is too full
+         */
+        Index growIfNeeded() throws IOException {
+            if (used < capacity * MAX_LOAD)
+                return this;
+            int newCapacity = capacityFor(live);
+            if (newCapacity == MAX_CAPACITY && live >= MAX_CAPACITY * MAX_LOAD)
+                throw new IOException("The store is full!");
+            File grown = new File(file.getPath() + ".grow");
+            Index index = create(grown, generation, newCapacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = offset(slot);
+                if (key(slot) != 0 && offset >= 0)
+                    index.insert(key(slot), offset);
+            }
+            index.garbage = garbage;
+            index.indexedLength = indexedLength;
+            index.sync();
+            move(grown, file);
+            close();
+            index.file = file;
+            return index;
+        }
+
+        void close() throws IOException {
+            sync();
+            raf.close();
+        }
+    }
+}
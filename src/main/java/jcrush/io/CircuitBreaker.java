@@ -0,0 +1,185 @@
+package jcrush.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejects a server that keeps failing and probes it to bring it back. <br></br>
+ * The breaker starts {@link State#CLOSED} and lets every request through. Once <b>failureThreshold</b> requests in a
+ * row failed, it {@link State#OPEN}s and lets no request through for the open time. After that it is
+ * {@link State#HALF_OPEN} and lets a single request through as a probe: if the probe succeeds the breaker closes,
+ * otherwise it opens again for another open time. The probe is the first request that asks for the server once the
+ * open time passed, or a probe sent without waiting for a request with {@link CircuitBreaker#tryAcquireProbe()},
+ * whichever comes first. <br></br>
+ * Only failures of the server count, such as a 503 or a timeout. A request the server answered, even with an error
+ * about the request, is a success. <br></br>
+ * This class is thread-safe.
+ */
+public class CircuitBreaker {
+    /**
+     * The default number of failed requests in a row that open the breaker
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    /**
+     * The default time in milliseconds the breaker stays open before a probe is let through
+     */
+    public static final long DEFAULT_OPEN_TIME = 10000;
+
+    /**
+     * The state of a breaker
+     */
+    public enum State {
+        /**
+         * Requests are let through
+         */
+        CLOSED,
+        /**
+         * No request is let through
+         */
+        OPEN,
+        /**
+         * A single probe is let through
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openTime;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Create a new breaker that opens after {@link CircuitBreaker#DEFAULT_FAILURE_THRESHOLD} failures in a row for
+     * {@link CircuitBreaker#DEFAULT_OPEN_TIME} milliseconds
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new breaker
+     * @param failureThreshold
+     *                        The number of failed requests in a row that open the breaker
+     * @param openTime
+     *                The time the breaker stays open before a probe is let through
+     * @param unit
+     *            The unit of <b>openTime</b>
+     */
+    public CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold must be at least 1!");
+        if (openTime < 0)
+            throw new IllegalArgumentException("openTime cannot be negative!");
+        this.failureThreshold = failureThreshold;
+        this.openTime = unit.toNanos(openTime);
+    }
+
+    /**
+     * Check whether a request may be sent, without taking the probe
+     * @return
+     *        true if the breaker is closed, or a probe could be sent
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED || (!probing && System.nanoTime() - openedAt >= openTime);
+    }
+
+    /**
+     * Ask to send a request. If the breaker lets a probe through, it is taken by the caller, which must report its
+     * outcome with {@link CircuitBreaker#onSuccess()}, {@link CircuitBreaker#onFailure()} or
+     * {@link CircuitBreaker#onAbandoned()}.
+     * @return
+     *        true if the request may be sent
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED || tryAcquireProbe())
+            return true;
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Take the probe if the breaker is open and its open time passed, so that a probe can be sent without waiting for
+     * a request. The caller must report its outcome as for {@link CircuitBreaker#tryAcquire()}.
+     * @return
+     *        true if the probe was taken
+     */
+    public synchronized boolean tryAcquireProbe() {
+        if (state == State.CLOSED || probing || System.nanoTime() - openedAt < openTime)
+            return false;
+        state = State.HALF_OPEN;
+        probing = true;
+        return true;
+    }
+
+    /**
+     * Report that a request was answered by the server
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Report that a request was let through but never reached the server, so it says nothing about the server. A probe
+     * is given back, so that the next request is the probe instead.
+     */
+    public synchronized void onAbandoned() {
+        probing = false;
+    }
+
+    /**
+     * Report that a request failed because of the server
+     */
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+            opened.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the state of this breaker. An open breaker whose open time passed is reported half-open, even if no probe
+     * was sent yet.
+     * @return
+     *        The state
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openTime)
+            return State.HALF_OPEN;
+        return state;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenTime(TimeUnit unit) {
+        return unit.convert(openTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of times this breaker opened
+     * @return
+     *        The number of times
+     */
+    public long getOpenCount() {
+        return opened.get();
+    }
+
+    /**
+     * Get the number of requests this breaker did not let through
+     * @return
+     *        The number of requests
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,189 @@
+package jcrush.io;
+
+import jcrush.system.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import static jcrush.system.Constants.DEFAULT_USER_AGENT;
+
+/**
+ * Bounds the number of connections that the {@link Requester}s created with it have open at once. <br></br>
+ * This class does not hold any socket. Sockets are kept alive and reused by the keep-alive cache of
+ * {@link HttpURLConnection}, which is configured with the <code>http.keepAlive</code> and
+ * <code>http.maxConnections</code> system properties and closes a socket once the server's keep-alive timeout has
+ * passed. A connection is only handed back to that cache once its response has been fully read and closed, which is
+ * what {@link Requester} does when it is given a pool instead of calling {@link HttpURLConnection#disconnect()}.
+ * A connection whose response could not be fully read is disconnected when it is released. <br></br>
+ * The pool does not evict idle connections itself: an idle socket lives as long as the keep-alive cache keeps it.
+ */
+public class ConnectionPool {
+    private final int maxConnections;
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    /**
+     * Create a new pool
+     * @param maxConnections
+     *                      The maximum number of connections that may be open at once
+     */
+    public ConnectionPool(int maxConnections) {
+        if (maxConnections <= 0)
+            throw new IllegalArgumentException("maxConnections must be greater than 0!");
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Wait until a connection may be opened.
+     * @throws InterruptedIOException
+     *                               If the thread was interrupted while waiting
+     */
+    void acquire() throws InterruptedIOException {
+        if (closed)
+            throw new IllegalStateException("This ConnectionPool is closed!");
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+    }
+
+    /**
+     * Give a connection back to the pool.
+     * @param connection
+     *                  The connection
+     * @param reusable
+     *                 Whether the response was fully read, so the keep-alive cache holds on to the socket
+     */
+    void release(HttpURLConnection connection, boolean reusable) {
+        try {
+            if (!reusable || closed)
+                connection.disconnect();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Open <b>count</b> connections to <b>url</b> at the same time and hand them to the keep-alive cache, so the first
+     * requests made do not have to wait for a TCP and TLS handshake. The cache keeps at most
+     * <code>http.maxConnections</code> of them for one server.
+     * @param url
+     *           The URL to connect to. A HEAD request is sent to it.
+     * @param count
+     *             The number of connections to open. This is capped at the size of the pool.
+     * @return
+     *        The number of connections that were opened
+     */
+    public int prewarm(final URL url, int count) {
+        count = Math.min(count, maxConnections);
+        final CountDownLatch connected = new CountDownLatch(count);
+        final int[] opened = new int[1];
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    HttpURLConnection connection = null;
+                    boolean reusable = false;
+                    try {
+                        acquire();
+                    } catch (InterruptedIOException e) {
+                        connected.countDown();
+                        return;
+                    }
+                    try {
+                        connection = (HttpURLConnection) url.openConnection();
+                        connection.setRequestMethod(ConnectionType.HEAD.type);
+                        connection.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
+                        connection.getResponseCode();
+                        connected.countDown();
+                        //Hold on to the socket until every connection is open so they are not shared
+                        connected.await();
+                        reusable = drain(connection);
+                        synchronized (opened) {
+                            opened[0]++;
+                        }
+                    } catch (IOException ignored) {
+                        connected.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (connection != null)
+                            release(connection, reusable);
+                        else
+                            permits.release();
+                    }
+                }
+            }, "JCrush-ConnectionPool-Prewarm-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized (opened) {
+            return opened[0];
+        }
+    }
+
+    /**
+     * Read whatever is left of a response and close it, so the socket is handed to the keep-alive cache.
+     * @return
+     *        true if the response could be fully read
+     */
+    static boolean drain(HttpURLConnection connection) {
+        InputStream in = connection.getErrorStream();
+        try {
+            if (in == null)
+                in = connection.getInputStream();
+            BufferPool pool = BufferPool.shared();
+            byte[] buf = pool.acquire(512);
+            try {
+                while (in.read(buf) != -1) { }
+            } finally {
+                pool.release(buf);
+            }
+            in.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Get the number of connections currently being used
+     * @return
+     *        The number of connections in use
+     */
+    public int getActiveCount() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    /**
+     * Stop handing out connections. Connections in use are disconnected when they are released.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,168 @@
+package jcrush.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests with the {@link HttpClient} of the JDK, which multiplexes concurrent requests over a few
+ * HTTP/2 connections with non-blocking I/O. A server that does not speak HTTP/2 is spoken to over HTTP/1.1. <br></br>
+ * A thread that sends a request still waits for its response, but it does not hold a socket while it waits, so a few
+ * connections carry thousands of concurrent lookups made on virtual threads. <br></br>
+ * The connect timeout and redirect policy are those of the {@link HttpClient}: the ones set on a {@link Requester} are
+ * not used. The read timeout of a {@link Requester} bounds the wait for the response headers. The connection cannot be
+ * watched, so the JFR events count connecting and sending as part of waiting for the server.
+ */
+public class HttpClientTransport implements Transport {
+    //Headers the HttpClient sets itself and refuses to be given
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private final HttpClient client;
+
+    /**
+     * Create a new transport that prefers HTTP/2 and does not follow redirects
+     */
+    public HttpClientTransport() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build());
+    }
+
+    /**
+     * Create a new transport that sends its requests with <b>client</b>
+     * @param client
+     *              The client
+     */
+    public HttpClientTransport(HttpClient client) {
+        if (client == null)
+            throw new IllegalArgumentException("client cannot be null!");
+        this.client = client;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request, Progress progress) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.getUrl().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("The URL " + request.getUrl() + " is not a valid URI!", e);
+        }
+        if (request.getReadTimeout() > 0)
+            builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT)))
+                builder.header(header.getKey(), header.getValue());
+        }
+        builder.method(request.getType().type, publisherOf(request));
+
+        progress.connected();
+        progress.sent();
+        try {
+            HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return new Response(response);
+        } catch (HttpTimeoutException e) {
+            //Retries and circuit breakers look for the exception HttpURLConnection throws
+            SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+            timeout.initCause(e);
+            throw timeout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getUrl());
+        }
+    }
+
+    private static HttpRequest.BodyPublisher publisherOf(TransportRequest request) {
+        if (!request.hasBody())
+            return HttpRequest.BodyPublishers.noBody();
+        if (request.getBody() != null)
+            return HttpRequest.BodyPublishers.ofByteArray(request.getBody());
+        final InputStream body = request.getBodyStream();
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+            @Override
+            public InputStream get() {
+                return body;
+            }
+        });
+        if (request.getBodyLength() < 0)
+            return publisher;
+        return HttpRequest.BodyPublishers.fromPublisher(publisher, request.getBodyLength());
+    }
+
+    private static class Response implements TransportResponse {
+        private final HttpResponse<InputStream> response;
+        private boolean released;
+
+        Response(HttpResponse<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatus() {
+            return response.statusCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return response.headers().map();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            int status = response.statusCode();
+            //Fail like HttpURLConnection#getInputStream(), which the Requester was written against
+            if (status == 404 || status == 410)
+                throw new FileNotFoundException(response.uri().toString());
+            if (status >= 400)
+                throw new IOException("Server returned HTTP response code: " + status + " for URL: " + response.uri());
+            return response.body();
+        }
+
+        @Override
+        public InputStream getErrorBody() {
+            return response.statusCode() >= 400 ? response.body() : null;
+        }
+
+        @Override
+        public void release(boolean reusable) {
+            if (released)
+                return;
+            released = true;
+            //Closing a body that was not fully read resets its stream instead of the whole connection
+            try {
+                response.body().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package jcrush.io;
+
+import jcrush.model.FileType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static jcrush.system.Constants.CONTENT_DIVIDER;
+
+/**
+ * The multipart/form-data framing used when uploading a file. The framing is only ever held as a small header and
+ * footer, the file data itself is streamed between them. <br></br>
+ * Everything but the file name is the same for every upload of a type, so those parts are encoded once and the header
+ * of a body is put together from them with a single array copy.
+ */
+public class MultipartBody {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=" + CONTENT_DIVIDER;
+    private static final byte[] HEADER_START = toAscii("\r\n--" + CONTENT_DIVIDER + "\r\n" +
+            "Content-Disposition: form-data; name=\"file\"; filename=\"");
+    private static final Map<FileType, byte[]> HEADER_ENDS = new EnumMap<FileType, byte[]>(FileType.class);
+    private static final byte[] FOOTER = toAscii("\r\n--" + CONTENT_DIVIDER + "--");
+
+    static {
+        for (FileType type : FileType.values()) {
+            HEADER_ENDS.put(type, toAscii("\"" + "\r\n" +
+                    "Content-Type: " + type.toString() + "\r\n" +
+                    "Content-Transfer-Encoding: binary\r\n" +
+                    "\r\n"));
+        }
+    }
+
+    private final byte[] header;
+
+    public MultipartBody(String fileName, FileType type) {
+        byte[] name = toAscii(fileName);
+        byte[] end = HEADER_ENDS.get(type);
+        header = new byte[HEADER_START.length + name.length + end.length];
+        System.arraycopy(HEADER_START, 0, header, 0, HEADER_START.length);
+        System.arraycopy(name, 0, header, HEADER_START.length, name.length);
+        System.arraycopy(end, 0, header, HEADER_START.length + name.length, end.length);
+    }
+
+    private static byte[] toAscii(String s) {
+        return s.getBytes(ASCII);
+    }
+
+    /**
+     * Get the value of the Content-Type header for this body
+     * @return
+     *        The content type, including the boundary
+     */
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    /**
+     * Get the total length of this body when the file data is <b>contentLength</b> bytes long
+     * @param contentLength
+     *                     The length of the file data, or -1 if it is not known
+     * @return
+     *        The length of the complete body, or -1 if it is not known
+     */
+    public long getLength(long contentLength) {
+        if (contentLength < 0)
+            return -1;
+        return header.length + contentLength + FOOTER.length;
+    }
+
+    /**
+     * Wrap the file data with the multipart header and footer. Nothing is read from <b>content</b> until the returned
+     * stream is read, and <b>content</b> is never closed by it.
+     * @param content
+     *               The file data
+     * @return
+     *        A stream that yields the header, the file data and the footer
+     */
+    public InputStream wrap(InputStream content) {
+        return new Framed(header, content);
+    }
+
+    /**
+     * Yields a header, the content and the footer one after the other
+     */
+    private static class Framed extends InputStream {
+        private final byte[] header;
+        private final InputStream content;
+        private final byte[] single = new byte[1];
+        private byte[] part;
+        private int position;
+        private boolean contentDone;
+
+        Framed(byte[] header, InputStream content) {
+            this.header = header;
+            this.content = content;
+            this.part = header;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            while (true) {
+                if (part != null) {
+                    if (position < part.length) {
+                        int count = Math.min(len, part.length - position);
+                        System.arraycopy(part, position, b, off, count);
+                        position += count;
+                        return count;
+                    }
+                    if (part == FOOTER)
+                        return -1;
+                    part = null;
+                    position = 0;
+                }
+                if (!contentDone) {
+                    int count = content.read(b, off, len);
+                    if (count != -1)
+                        return count;
+                    contentDone = true;
+                }
+                part = FOOTER;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (part == header)
+                return header.length - position;
+            if (part == FOOTER)
+                return FOOTER.length - position;
+            return content.available();
+        }
+
+        @Override
+        public void close() {
+            //The caller owns the content
+        }
+    }
+}
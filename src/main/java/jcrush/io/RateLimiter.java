@@ -0,0 +1,275 @@
+package jcrush.io;
+
+import jcrush.system.exceptions.RateLimitedException;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that paces the requests of a client and adapts its rate to the server's limit. <br></br>
+ * Every request takes a token. Tokens are added at the current rate, and up to <b>burst</b> of them can be saved up
+ * while the client is idle. The rate is adjusted additive-increase/multiplicative-decrease: each successful request
+ * raises it a little, so it grows by about the additive increase every second, and each 420 "Enhance your calm"
+ * response cuts it by the decrease factor and drops the saved up tokens. Requests that were already in flight when
+ * the rate was cut are likely to be answered 420 too, so the rate is cut at most once per cooldown. The rate then
+ * settles just under the server's real limit instead of alternating between a flood and a stall. <br></br>
+ * When no token is available, a request either waits its turn ({@link Mode#QUEUE}) or fails straight away with a
+ * {@link RateLimitedException} ({@link Mode#FAIL_FAST}). <br></br>
+ * This class is thread-safe.
+ */
+public class RateLimiter {
+    /**
+     * The default factor the rate is multiplied by when the server answers 420
+     */
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+    /**
+     * The default number of requests per second the rate grows by every second while no 420 is received
+     */
+    public static final double DEFAULT_ADDITIVE_INCREASE = 1;
+    /**
+     * The default minimum time in milliseconds between two cuts of the rate
+     */
+    public static final long DEFAULT_COOLDOWN = 1000;
+
+    /**
+     * What a request does when no token is available
+     */
+    public enum Mode {
+        /**
+         * Wait until a token is available
+         */
+        QUEUE,
+        /**
+         * Throw a {@link RateLimitedException}
+         */
+        FAIL_FAST
+    }
+
+    private final int burst;
+    private volatile Mode mode = Mode.QUEUE;
+    private double rate;
+    private double minRate;
+    private double maxRate;
+    private double decreaseFactor = DEFAULT_DECREASE_FACTOR;
+    private double additiveIncrease = DEFAULT_ADDITIVE_INCREASE;
+    private long cooldown = TimeUnit.MILLISECONDS.toNanos(DEFAULT_COOLDOWN);
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease;
+    private boolean decreased;
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * Create a new limiter that starts at <b>rate</b> and never goes above it
+     * @param rate
+     *            The number of requests per second
+     * @param burst
+     *             How many tokens may be saved up while the client is idle
+     */
+    public RateLimiter(double rate, int burst) {
+        this(rate, Math.min(rate, 0.1), rate, burst);
+    }
+
+    /**
+     * Create a new limiter
+     * @param rate
+     *            The number of requests per second to start at
+     * @param minRate
+     *               The rate is never cut below this
+     * @param maxRate
+     *               The rate never grows above this
+     * @param burst
+     *             How many tokens may be saved up while the client is idle
+     */
+    public RateLimiter(double rate, double minRate, double maxRate, int burst) {
+        if (minRate <= 0)
+            throw new IllegalArgumentException("minRate must be greater than 0!");
+        if (rate < minRate || rate > maxRate)
+            throw new IllegalArgumentException("rate must be between minRate and maxRate!");
+        if (burst < 1)
+            throw new IllegalArgumentException("burst must be at least 1!");
+        this.rate = rate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token for a request, waiting for one in {@link Mode#QUEUE} mode
+     * @throws RateLimitedException
+     *                              In {@link Mode#FAIL_FAST} mode, if no token is available
+     * @throws InterruptedIOException
+     *                               If the thread was interrupted while waiting
+     */
+    public void acquire() throws RateLimitedException, InterruptedIOException {
+        long wait = reserve(mode == Mode.FAIL_FAST);
+        if (wait < 0) {
+            rejected.incrementAndGet();
+            throw new RateLimitedException("No request may be sent yet, the rate limit is " + getRate() + " requests per second.");
+        }
+        if (wait == 0)
+            return;
+        queued.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    /**
+     * Take a token, going into debt if none is available so that queued requests are let through in order
+     * @return
+     *        How long to wait in nanoseconds before sending, or -1 if <b>failFast</b> and no token is available
+     */
+    private synchronized long reserve(boolean failFast) {
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        if (failFast)
+            return -1;
+        long wait = (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+        tokens -= 1;
+        return wait;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    /**
+     * Record a request that was not rate limited, growing the rate
+     */
+    public synchronized void onSuccess() {
+        refill(System.nanoTime());
+        //About rate successes arrive every second, so the rate grows by additiveIncrease every second
+        rate = Math.min(maxRate, rate + additiveIncrease / rate);
+    }
+
+    /**
+     * Record a 420 response, cutting the rate unless it was cut during the cooldown
+     */
+    public synchronized void onRateLimited() {
+        rateLimited.incrementAndGet();
+        long now = System.nanoTime();
+        refill(now);
+        if (decreased && now - lastDecrease < cooldown)
+            return;
+        decreased = true;
+        lastDecrease = now;
+        rate = Math.max(minRate, rate * decreaseFactor);
+        tokens = Math.min(tokens, 0);
+    }
+
+    public void setMode(Mode mode) {
+        if (mode == null)
+            throw new IllegalArgumentException("mode cannot be null!");
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the current rate
+     * @return
+     *        The number of requests per second currently allowed
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized double getMinRate() {
+        return minRate;
+    }
+
+    public synchronized double getMaxRate() {
+        return maxRate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Set the factor the rate is multiplied by when the server answers 420
+     * @param decreaseFactor
+     *                      The factor, between 0 and 1
+     */
+    public synchronized void setDecreaseFactor(double decreaseFactor) {
+        if (decreaseFactor <= 0 || decreaseFactor >= 1)
+            throw new IllegalArgumentException("decreaseFactor must be between 0 and 1!");
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    public synchronized double getDecreaseFactor() {
+        return decreaseFactor;
+    }
+
+    /**
+     * Set how many requests per second the rate grows by every second while no 420 is received
+     * @param additiveIncrease
+     *                        The increase, 0 to never grow the rate again once it was cut
+     */
+    public synchronized void setAdditiveIncrease(double additiveIncrease) {
+        if (additiveIncrease < 0)
+            throw new IllegalArgumentException("additiveIncrease cannot be negative!");
+        this.additiveIncrease = additiveIncrease;
+    }
+
+    public synchronized double getAdditiveIncrease() {
+        return additiveIncrease;
+    }
+
+    /**
+     * Set the minimum time between two cuts of the rate
+     * @param cooldown
+     *                The time, 0 to cut the rate on every 420
+     * @param unit
+     *            The unit of <b>cooldown</b>
+     */
+    public synchronized void setCooldown(long cooldown, TimeUnit unit) {
+        this.cooldown = unit.toNanos(cooldown);
+    }
+
+    public synchronized long getCooldown(TimeUnit unit) {
+        return unit.convert(cooldown, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of 420 responses recorded
+     * @return
+     *        The number of 420 responses
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    /**
+     * Get the number of requests that failed fast because no token was available
+     * @return
+     *        The number of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the number of requests that had to wait for a token
+     * @return
+     *        The number of queued requests
+     */
+    public long getQueuedCount() {
+        return queued.get();
+    }
+}
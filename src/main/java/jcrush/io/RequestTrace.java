@@ -0,0 +1,155 @@
+package jcrush.io;
+
+import jcrush.jfr.ConnectEvent;
+import jcrush.jfr.RequestEvent;
+import jcrush.jfr.RequestPhaseEvent;
+import jcrush.jfr.ResponseReadEvent;
+import jcrush.jfr.ServerWaitEvent;
+import jcrush.jfr.UploadEvent;
+import jcrush.metrics.Endpoint;
+
+import java.net.URL;
+
+/**
+ * The JFR events of one {@link Requester}. <br></br>
+ * Only events that are enabled in a running recording are created, and no trace is created at all if none are, so a
+ * request that is not recorded costs one check per event type. On a runtime image built without the jdk.jfr module no
+ * event class is ever loaded.
+ */
+final class RequestTrace {
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private final String endpoint;
+    private final String method;
+    private final int urlHash;
+    private final RequestEvent request;
+    private final ConnectEvent connect;
+    private final UploadEvent upload;
+    private final ServerWaitEvent serverWait;
+    private final ResponseReadEvent read;
+    private int phase;
+
+    private RequestTrace(Endpoint endpoint, ConnectionType type, URL url, RequestEvent request, ConnectEvent connect,
+                         UploadEvent upload, ServerWaitEvent serverWait, ResponseReadEvent read) {
+        this.endpoint = endpoint != null ? endpoint.name() : null;
+        this.method = type.type;
+        this.urlHash = url != null ? url.toString().hashCode() : 0;
+        this.request = request;
+        this.connect = connect;
+        this.upload = upload;
+        this.serverWait = serverWait;
+        this.read = read;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Start tracing a request, before it waits for a connection
+     * @return
+     *        The trace, or null if no event of a request is being recorded
+     */
+    static RequestTrace begin(Endpoint endpoint, ConnectionType type, URL url) {
+        if (!AVAILABLE)
+            return null;
+        RequestEvent request = enabled(new RequestEvent());
+        ConnectEvent connect = enabled(new ConnectEvent());
+        UploadEvent upload = enabled(new UploadEvent());
+        ServerWaitEvent serverWait = enabled(new ServerWaitEvent());
+        ResponseReadEvent read = enabled(new ResponseReadEvent());
+        if (request == null && connect == null && upload == null && serverWait == null && read == null)
+            return null;
+        RequestTrace trace = new RequestTrace(endpoint, type, url, request, connect, upload, serverWait, read);
+        if (request != null)
+            request.begin();
+        if (connect != null)
+            connect.begin();
+        return trace;
+    }
+
+    private static <E extends RequestPhaseEvent> E enabled(E event) {
+        return event.isEnabled() ? event : null;
+    }
+
+    /**
+     * The connection is open and the body, if any, is about to be sent. Every phase is only told once, and in order.
+     */
+    void connected() {
+        if (phase != 0)
+            return;
+        phase = 1;
+        commit(connect);
+        if (upload != null)
+            upload.begin();
+    }
+
+    /**
+     * The request was sent and its response is being waited for
+     */
+    void sent(long bytesSent) {
+        if (phase != 1)
+            return;
+        phase = 2;
+        if (upload != null) {
+            upload.bytesSent = bytesSent;
+            commit(upload);
+        }
+        if (serverWait != null)
+            serverWait.begin();
+    }
+
+    /**
+     * The status line and headers of the response arrived and the body is about to be read
+     */
+    void answered(int status) {
+        if (phase != 2)
+            return;
+        phase = 3;
+        if (serverWait != null) {
+            serverWait.status = status;
+            commit(serverWait);
+        }
+        if (read != null)
+            read.begin();
+    }
+
+    /**
+     * The request is done, successfully or not
+     */
+    void end(int status, long bytesSent, long bytesReceived, Throwable error) {
+        if (read != null && phase == 3) {
+            read.bytesReceived = bytesReceived;
+            commit(read);
+        }
+        if (request != null) {
+            request.status = status;
+            request.bytesSent = bytesSent;
+            request.bytesReceived = bytesReceived;
+            request.error = error != null ? error.toString() : null;
+            commit(request);
+        }
+    }
+
+    /**
+     * End <b>event</b> and commit it if it is slow enough to be recorded
+     */
+    private void commit(RequestPhaseEvent event) {
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = endpoint;
+            event.method = method;
+            event.urlHash = urlHash;
+            event.commit();
+        }
+    }
+}
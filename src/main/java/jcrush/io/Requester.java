@@ -1,29 +1,98 @@
 package jcrush.io;
 
 import static jcrush.system.Constants.DEFAULT_USER_AGENT;
+import static jcrush.system.Constants.STREAM_BUFFER_SIZE;
+import static jcrush.system.Utils.copy;
+
+import jcrush.metrics.Endpoint;
+import jcrush.metrics.EndpointMetrics;
+import jcrush.system.BufferPool;
+import jcrush.system.exceptions.ServerUnavailableException;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class Requester {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Transport UNPOOLED = new UrlConnectionTransport();
+    private static final Transport.Progress NO_PROGRESS = new Transport.Progress() {
+        @Override
+        public void connected() { }
+
+        @Override
+        public void sent() { }
+    };
+
     private boolean ignoreResponse;
     private int code;
     private URL url;
     private HashMap<String, String> property = new HashMap<String, String>();
-    HttpURLConnection connection;
+    private final Transport transport;
+    private TransportResponse exchange;
     private boolean isconnected;
     private boolean output;
     private boolean input;
+    private boolean streamResponse;
     private String response;
+    private InputStream responseStream;
     private byte[] post;
+    private InputStream postStream;
+    private long postLength = -1;
     private boolean autoredirect;
     private ConnectionType type;
+    private byte[] errorBody;
+    private int connectTimeout;
+    private int readTimeout;
+    private boolean acceptCompression;
+    private TransferStats stats;
+    private Endpoint endpoint;
+    private EndpointMetrics metrics;
+    private RequestTrace trace;
+    private long started;
+    private long sent;
+    private AtomicLong sentCounter;
+    private AtomicLong received;
 
     public Requester(ConnectionType type, URL url) {
+        this(type, url, UNPOOLED);
+    }
+
+    /**
+     * Create a new Requester whose connection is taken from <b>pool</b>. The connection is handed back to the pool
+     * and kept alive when {@link Requester#disconnect()} is invoked.
+     * @param type
+     *            The request method
+     * @param url
+     *           The URL to connect to
+     * @param pool
+     *            The pool to take the connection from
+     */
+    public Requester(ConnectionType type, URL url, ConnectionPool pool) {
+        this(type, url, new UrlConnectionTransport(pool));
+    }
+
+    /**
+     * Create a new Requester that is sent with <b>transport</b>
+     * @param type
+     *            The request method
+     * @param url
+     *           The URL to connect to
+     * @param transport
+     *                 The transport to send the request with
+     */
+    public Requester(ConnectionType type, URL url, Transport transport) {
+        if (transport == null)
+            throw new IllegalArgumentException("transport cannot be null!");
+        this.transport = transport;
         this.setType(type);
         this.setUrl(url);
     }
@@ -57,9 +126,26 @@ public class Requester {
 
     public void setPostData(byte[] data) {
         this.post = data;
+        this.postStream = null;
         output = post.length != 0;
     }
 
+    /**
+     * Stream the post data from <b>data</b> instead of holding it in memory. When <b>length</b> is known the
+     * request is sent in fixed-length streaming mode, otherwise chunked transfer encoding is used. <br></br>
+     * The stream is not closed once it has been sent.
+     * @param data
+     *            The data to send
+     * @param length
+     *              The exact number of bytes in <b>data</b>, or -1 if it is not known
+     */
+    public void setPostData(InputStream data, long length) {
+        this.postStream = data;
+        this.postLength = length;
+        this.post = null;
+        output = true;
+    }
+
     public byte[] getPostData() {
         return post;
     }
@@ -76,6 +162,20 @@ public class Requester {
         return input;
     }
 
+    /**
+     * Set whether the response is left on the connection for {@link Requester#getResponseStream()} instead of being
+     * read into {@link Requester#getResponse()} by {@link Requester#connect()}
+     * @param streamResponse
+     *                      Whether to stream the response
+     */
+    public void setStreamResponse(boolean streamResponse) {
+        this.streamResponse = streamResponse;
+    }
+
+    public boolean isStreamingResponse() {
+        return streamResponse;
+    }
+
     public String getResponse() {
         if (!isConnected())
             throw new IllegalStateException(
@@ -83,9 +183,100 @@ public class Requester {
         if (!input)
             throw new IllegalStateException(
                     "This Requester is not set to recieve input!");
+        if (streamResponse)
+            throw new IllegalStateException(
+                    "This Requester is streaming its response!");
         return response;
     }
 
+    /**
+     * Get the body of the response as it arrives, buffered according to its Content-Length. The stream is closed by
+     * {@link Requester#disconnect()} if it was not closed before.
+     * @return
+     *        The body of the response
+     * @throws IOException
+     *                    If the body could not be opened
+     */
+    public InputStream getResponseStream() throws IOException {
+        if (!isConnected())
+            throw new IllegalStateException(
+                    "This Requester is not connected!");
+        if (!streamResponse)
+            throw new IllegalStateException(
+                    "This Requester is not set to stream its response!");
+        if (responseStream == null) {
+            long length = exchange.getContentLength();
+            int size = length > 0 ? (int) Math.min(length, STREAM_BUFFER_SIZE) : STREAM_BUFFER_SIZE;
+            responseStream = new BufferedInputStream(openBody(exchange, exchange.getBody()), size);
+        }
+        return responseStream;
+    }
+
+    /**
+     * Get the body of the response as it arrives, decoded as UTF-8
+     * @return
+     *        The body of the response
+     * @throws IOException
+     *                    If the body could not be opened
+     * @see Requester#getResponseStream()
+     */
+    public Reader getResponseReader() throws IOException {
+        return new InputStreamReader(getResponseStream(), UTF_8);
+    }
+
+    /**
+     * Set whether the server may compress the response. When it does, the body is decompressed as it is read.
+     * @param acceptCompression
+     *                         Whether to send Accept-Encoding: gzip, deflate
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public boolean isAcceptingCompression() {
+        return acceptCompression;
+    }
+
+    /**
+     * Set the stats the bytes of the response are counted in
+     * @param stats
+     *             The stats, or null to not count them
+     */
+    public void setTransferStats(TransferStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Set the metrics this request is recorded in. A streamed response is recorded once it was read and
+     * {@link Requester#disconnect()} was invoked, every other request once {@link Requester#connect()} returns.
+     * @param metrics
+     *               The metrics, or null to not record this request
+     */
+    public void setMetrics(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the API endpoint this request is sent to, which the JFR events of the request carry
+     * @param endpoint
+     *                The endpoint, or null
+     */
+    public void setEndpoint(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
     public ConnectionType getType() {
         return type;
     }
@@ -99,67 +290,258 @@ public class Requester {
     }
 
     public void setUrl(URL url) {
-        this.url = url;
         if (isConnected()) disconnect();
-        connection = null;
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-        }
+        this.url = url;
+    }
+
+    public Transport getTransport() {
+        return transport;
     }
 
     public boolean isConnected() {
-        return connection != null && isconnected;
+        return isconnected;
     }
 
     public void connect() throws IOException {
-        if (connection == null) {
-            if (url != null) connection = (HttpURLConnection) url
-                    .openConnection();
-            else
-                throw new IllegalStateException("No URL to connect to!");
-        }
-        connection.setInstanceFollowRedirects(autoredirect);
-        connection.setDoInput(input);
-        connection.setDoOutput(output);
-        connection.setRequestMethod(type.type);
-        connection.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
+        if (url == null)
+            throw new IllegalStateException("No URL to connect to!");
+        trace = RequestTrace.begin(endpoint, type, url);
+        if (metrics != null || trace != null)
+            received = new AtomicLong();
+        if (metrics != null) {
+            started = System.nanoTime();
+            metrics.begin();
+        }
+        try {
+            send();
+        } catch (IOException e) {
+            releaseAfterFailure();
+            record(e);
+            throw e;
+        } catch (RuntimeException e) {
+            releaseAfterFailure();
+            record(e);
+            throw e;
+        }
+        isconnected = true;
+        if (!streamResponse)
+            record(null);
+    }
+
+    /**
+     * Record this request in its metrics and JFR events, once
+     */
+    private void record(Throwable error) {
+        if (received == null)
+            return;
+        int status = code > 0 ? code : -1;
+        long bytesReceived = received.get();
+        received = null;
+        if (metrics != null)
+            metrics.end(status, System.nanoTime() - started, sent, bytesReceived, error);
+        if (trace != null)
+            trace.end(status, sent, bytesReceived, error);
+    }
+
+    private void send() throws IOException {
+        TransportRequest request = new TransportRequest(type, url);
+        request.setTimeouts(connectTimeout, readTimeout);
+        request.setFollowingRedirects(autoredirect);
+        request.setReceiving(input);
+        request.setHeader("User-Agent", DEFAULT_USER_AGENT);
+        if (acceptCompression && input && !property.containsKey("Accept-Encoding"))
+            request.setHeader("Accept-Encoding", "gzip, deflate");
         for (String key : property.keySet()) {
-            connection.addRequestProperty(key, property.get(key));
+            request.setHeader(key, property.get(key));
         }
-        if (output) connection.getOutputStream().write(post);
+        if (output) {
+            if (postStream == null) {
+                request.setBody(post);
+                sent = post.length;
+            } else if (received != null) {
+                sentCounter = new AtomicLong();
+                request.setBody(new CountingInputStream(postStream, sentCounter), postLength);
+            } else {
+                request.setBody(postStream, postLength);
+            }
+            postStream = null;
+        }
+        Transport.Progress progress = received != null ? new Progress() : NO_PROGRESS;
+        exchange = transport.send(request, progress);
+        //Not every transport can tell when it connected and when the request was sent
+        progress.connected();
+        progress.sent();
         if (input) {
-            code  = connection.getResponseCode();
+            code = exchange.getStatus();
+            if (trace != null)
+                trace.answered(code);
             if (!ignoreResponse && code == HttpURLConnection.HTTP_UNAVAILABLE) {
-                throw new IOException("The server is unavailable!");
+                throw new ServerUnavailableException("The server is unavailable!", code);
+            } else if (!ignoreResponse && (code == HttpURLConnection.HTTP_BAD_GATEWAY || code == HttpURLConnection.HTTP_GATEWAY_TIMEOUT)) {
+                throw new ServerUnavailableException("The server is unavailable! (" + code + ")", code);
             } else if (!ignoreResponse && code == HttpURLConnection.HTTP_FORBIDDEN) {
-                BufferedReader read = new BufferedReader(new InputStreamReader(
-                        connection.getErrorStream()));
-                StringBuilder builder = new StringBuilder(100);
-                String line;
-                while ((line = read.readLine()) != null)
-                    builder.append(line);
-                read.close();
-                String reason = builder.toString();
+                String reason = readString(openBody(exchange, exchange.getErrorBody()), bodyLength());
                 throw new IOException("ERROR 403: The server responded with \""
                         + reason + "\"");
             }
-            BufferedReader read = new BufferedReader(new InputStreamReader(
-                    connection.getInputStream()));
-            StringBuilder builder = new StringBuilder(100);
-            String line;
-            while ((line = read.readLine()) != null)
-                builder.append(line);
-            read.close();
-            response = builder.toString();
+            //The Content-Length of a HEAD response describes a body that is never sent
+            if (type == ConnectionType.HEAD)
+                response = readString(exchange.getBody(), 0);
+            else if (!streamResponse)
+                response = readString(openBody(exchange, exchange.getBody()), bodyLength());
+        }
+    }
+
+    /**
+     * Tells the trace of this request how far the transport got
+     */
+    private class Progress implements Transport.Progress {
+        @Override
+        public void connected() {
+            if (trace != null)
+                trace.connected();
+        }
+
+        @Override
+        public void sent() {
+            if (sentCounter != null)
+                sent = sentCounter.get();
+            if (trace != null)
+                trace.sent(sent);
+        }
+    }
+
+    /**
+     * Get the length of the decoded body, or -1 if it is not known. The Content-Length of a compressed response is
+     * the length of the compressed body.
+     */
+    private long bodyLength() {
+        return exchange.getHeader("Content-Encoding") != null ? -1 : exchange.getContentLength();
+    }
+
+    /**
+     * Wrap the body <b>raw</b> of the response so that it is decompressed and counted as it is read
+     */
+    private InputStream openBody(TransportResponse exchange, InputStream raw) throws IOException {
+        if (raw == null)
+            return null;
+        String encoding = exchange.getHeader("Content-Encoding");
+        boolean gzip = "gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding);
+        boolean deflate = "deflate".equalsIgnoreCase(encoding);
+        if (received != null)
+            raw = new CountingInputStream(raw, received);
+        TransferStats stats = this.stats;
+        if (stats != null) {
+            stats.addResponse(gzip || deflate);
+            raw = new CountingInputStream(raw, stats.receivedCounter());
+        }
+        InputStream body = raw;
+        if (exchange.getContentLength() != 0) {
+            if (gzip)
+                body = new GZIPInputStream(raw, STREAM_BUFFER_SIZE);
+            else if (deflate)
+                body = inflate(raw);
+        }
+        if (stats != null)
+            body = new CountingInputStream(body, stats.decodedCounter());
+        return body;
+    }
+
+    /**
+     * Decompress a deflate body. Servers disagree on whether deflate means a zlib stream or raw deflate data, so the
+     * zlib header is looked for.
+     */
+    private static InputStream inflate(InputStream raw) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(raw, 2);
+        int cmf = in.read();
+        int flg = cmf == -1 ? -1 : in.read();
+        if (flg != -1)
+            in.unread(flg);
+        if (cmf != -1)
+            in.unread(cmf);
+        boolean zlib = cmf != -1 && flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(in, inflater, STREAM_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Read and close <b>in</b>, decoded as UTF-8. The body is read into a buffer from the shared {@link BufferPool},
+     * which is swapped for one twice the size whenever it fills up while the length is not known, so the only array
+     * left behind is the string itself.
+     */
+    private static String readString(InputStream in, long length) throws IOException {
+        if (in == null)
+            return "";
+        if (length == 0) {
+            in.close();
+            return "";
+        }
+        if (length > Integer.MAX_VALUE)
+            length = -1;
+        BufferPool pool = BufferPool.shared();
+        byte[] buf = pool.acquire(length > 0 ? (int) length : STREAM_BUFFER_SIZE);
+        try {
+            int limit = length > 0 ? (int) length : Integer.MAX_VALUE;
+            int read = 0;
+            while (read < limit) {
+                if (read == buf.length) {
+                    byte[] bigger = pool.acquire(buf.length * 2);
+                    System.arraycopy(buf, 0, bigger, 0, read);
+                    pool.release(buf);
+                    buf = bigger;
+                }
+                int count = in.read(buf, read, Math.min(buf.length, limit) - read);
+                if (count == -1) {
+                    if (length > 0)
+                        throw new EOFException("The response ended after " + read + " of " + length + " bytes");
+                    break;
+                }
+                read += count;
+            }
+            return new String(buf, 0, read, UTF_8);
+        } finally {
+            pool.release(buf);
+            in.close();
+        }
+    }
+
+    /**
+     * Read the error body of a failed request so its connection can be kept alive, then give the connection back to
+     * the transport.
+     */
+    private void releaseAfterFailure() {
+        TransportResponse exchange = this.exchange;
+        if (exchange == null) return;
+        this.exchange = null;
+        boolean reusable = false;
+        try {
+            InputStream in = openBody(exchange, exchange.getErrorBody());
+            if (in != null) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                copy(in, body, 512);
+                in.close();
+                errorBody = body.toByteArray();
+                reusable = true;
+            }
+        } catch (IOException ignored) {
+        } finally {
+            exchange.release(reusable);
         }
-        isconnected = true;
     }
 
     public InputStream getErrorStream() {
-        return connection.getErrorStream();
+        if (errorBody != null)
+            return new ByteArrayInputStream(errorBody);
+        return exchange != null ? exchange.getErrorBody() : null;
     }
 
     public int getResponseCode() {
@@ -174,17 +556,66 @@ public class Requester {
         if (!isConnected())
             throw new IllegalStateException(
                     "This Requester is not connected!");
-        return connection.getHeaderFields();
+        return exchange.getHeaders();
     }
 
     public void disconnect() {
-        if (!isConnected()) return;
-        connection.disconnect();
+        if (responseStream != null) {
+            try {
+                responseStream.close();
+            } catch (IOException ignored) { }
+            responseStream = null;
+        }
+        record(null);
+        if (exchange != null) {
+            TransportResponse exchange = this.exchange;
+            this.exchange = null;
+            exchange.release(isConnected() && input);
+        }
         isconnected = false;
     }
 
+    /**
+     * Adds the bytes read through it to a counter
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0)
+                counter.addAndGet(count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0)
+                counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+
+    //Gives the connection of a Requester that was never disconnected back to its pool
+    @Override
+    @SuppressWarnings("deprecation")
     protected void finalize() throws Throwable {
         super.finalize();
-        if (isConnected()) disconnect();
+        if (isConnected() || exchange != null) disconnect();
     }
 }
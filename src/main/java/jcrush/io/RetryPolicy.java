@@ -0,0 +1,391 @@
+package jcrush.io;
+
+import jcrush.system.AsyncExecutors;
+import jcrush.system.exceptions.ServerUnavailableException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries and hedges idempotent requests. <br></br>
+ * A request that failed because the server was unavailable (502, 503 or 504), timed out or dropped the connection is
+ * sent again after an exponential backoff with full jitter, up to the maximum number of attempts. Every other failure,
+ * such as a 404, is thrown straight away. <br></br>
+ * Retries are paid for from a budget: every request adds the budget ratio to it and every retry takes one from it, so
+ * retries can add at most that ratio of extra load to a server that is failing everything, instead of multiplying its
+ * load by the number of attempts. <br></br>
+ * Hedging is disabled by default. Once enabled, a request that has not been answered by the given percentile of recent
+ * latencies is sent a second time, and whichever attempt answers first is used. Hedges are paid for from the same
+ * budget. <br></br>
+ * This class is thread-safe.
+ */
+public class RetryPolicy {
+    /**
+     * The default maximum number of attempts of a request, counting the first one
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * The default backoff in milliseconds before the first retry
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 100;
+    /**
+     * The default maximum backoff in milliseconds between two attempts
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 2000;
+    /**
+     * The default fraction of requests that may be retried or hedged
+     */
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    /**
+     * The default number of retries the budget can save up
+     */
+    public static final double DEFAULT_MAX_BUDGET = 10;
+    /**
+     * How many recent latencies the hedging percentile is computed from
+     */
+    public static final int LATENCY_SAMPLES = 256;
+    /**
+     * How many latencies must have been recorded before requests are hedged
+     */
+    public static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final int maxAttempts;
+    private volatile long initialBackoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF);
+    private volatile long maxBackoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF);
+    private volatile double budgetRatio = DEFAULT_BUDGET_RATIO;
+    private volatile double maxBudget = DEFAULT_MAX_BUDGET;
+    private double budget = DEFAULT_MAX_BUDGET;
+    private volatile double hedgePercentile;
+    private volatile long minHedgeDelay;
+    private volatile Executor hedgeExecutor = AsyncExecutors.defaultExecutor();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private volatile long hedgeDelay = -1;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    /**
+     * Create a new policy that makes up to {@link RetryPolicy#DEFAULT_MAX_ATTEMPTS} attempts
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Create a new policy
+     * @param maxAttempts
+     *                   The maximum number of attempts of a request, counting the first one. 1 never retries.
+     */
+    public RetryPolicy(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be at least 1!");
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Make <b>attempt</b>, retrying it and hedging it as this policy allows. <b>attempt</b> must be idempotent and send
+     * a new request every time it is called.
+     * @param attempt
+     *               The request
+     * @param hedge
+     *              Whether the request may be hedged. Requests whose response is read after they returned cannot be.
+     * @return
+     *        The result of the first attempt that succeeded
+     * @throws IOException
+     *                    The exception of the last attempt, if none succeeded
+     */
+    public <T> T execute(Callable<T> attempt, boolean hedge) throws IOException {
+        deposit();
+        for (int i = 1; ; i++) {
+            try {
+                return hedge && hedgePercentile > 0 ? hedged(attempt) : timed(attempt);
+            } catch (IOException e) {
+                if (i >= maxAttempts || !isRetryable(e))
+                    throw e;
+                if (!withdraw()) {
+                    budgetExhausted.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                sleep(backoff(i));
+            }
+        }
+    }
+
+    /**
+     * Check whether a request that failed with <b>e</b> may be sent again
+     * @param e
+     *          The exception
+     * @return
+     *        true if the server was unavailable, or the connection timed out or was dropped
+     */
+    public boolean isRetryable(IOException e) {
+        return e instanceof ServerUnavailableException || e instanceof SocketTimeoutException || e instanceof SocketException;
+    }
+
+    private <T> T timed(Callable<T> attempt) throws IOException {
+        long start = System.nanoTime();
+        T result = call(attempt);
+        recordLatency(System.nanoTime() - start);
+        return result;
+    }
+
+    private <T> T hedged(final Callable<T> attempt) throws IOException {
+        long delay = hedgeDelay;
+        if (delay < 0)
+            return timed(attempt);
+
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final AtomicInteger launched = new AtomicInteger(1);
+        final AtomicInteger failed = new AtomicInteger();
+        hedgeExecutor.execute(newAttempt(attempt, result, launched, failed, false));
+        try {
+            return result.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (withdraw()) {
+                hedges.incrementAndGet();
+                launched.incrementAndGet();
+                hedgeExecutor.execute(newAttempt(attempt, result, launched, failed, true));
+            } else {
+                budgetExhausted.incrementAndGet();
+            }
+            return get(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private <T> Runnable newAttempt(final Callable<T> attempt, final CompletableFuture<T> result,
+                                    final AtomicInteger launched, final AtomicInteger failed, final boolean hedge) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    T value = call(attempt);
+                    recordLatency(System.nanoTime() - start);
+                    if (!hedge) {
+                        result.complete(value);
+                    } else {
+                        //Counted before completing, so the caller sees the win as soon as it has the result
+                        hedgeWins.incrementAndGet();
+                        if (!result.complete(value))
+                            hedgeWins.decrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    //The request only fails once every attempt that was sent failed
+                    if (failed.incrementAndGet() >= launched.get())
+                        result.completeExceptionally(t);
+                }
+            }
+        };
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static <T> T call(Callable<T> attempt) throws IOException {
+        try {
+            return attempt.call();
+        } catch (Exception e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(Throwable t) {
+        if (t instanceof IOException)
+            return (IOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new IOException(t);
+    }
+
+    private synchronized void recordLatency(long latency) {
+        latencies[latencyCount % LATENCY_SAMPLES] = latency;
+        latencyCount++;
+        //Sorting the samples on every request would cost more than it saves, so the delay is refreshed periodically
+        if (latencyCount >= MIN_LATENCY_SAMPLES && (latencyCount < LATENCY_SAMPLES || latencyCount % 32 == 0))
+            updateHedgeDelay();
+    }
+
+    private void updateHedgeDelay() {
+        double percentile = hedgePercentile;
+        if (percentile <= 0 || latencyCount < MIN_LATENCY_SAMPLES) {
+            hedgeDelay = -1;
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        hedgeDelay = Math.max(minHedgeDelay, sorted[Math.max(0, index)]);
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(maxBudget, budget + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1)
+            return false;
+        budget -= 1;
+        return true;
+    }
+
+    private long backoff(int attempt) {
+        double ceiling = Math.min(maxBackoff, initialBackoff * Math.pow(2, attempt - 1));
+        return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Set the backoff before the first retry. It doubles with every retry, up to the maximum backoff, and the actual
+     * wait is picked at random below it.
+     * @param backoff
+     *               The backoff
+     * @param unit
+     *            The unit of <b>backoff</b>
+     */
+    public void setInitialBackoff(long backoff, TimeUnit unit) {
+        this.initialBackoff = unit.toNanos(backoff);
+    }
+
+    public long getInitialBackoff(TimeUnit unit) {
+        return unit.convert(initialBackoff, TimeUnit.NANOSECONDS);
+    }
+
+    public void setMaxBackoff(long backoff, TimeUnit unit) {
+        this.maxBackoff = unit.toNanos(backoff);
+    }
+
+    public long getMaxBackoff(TimeUnit unit) {
+        return unit.convert(maxBackoff, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the retry budget
+     * @param ratio
+     *             The fraction of requests that may be retried or hedged
+     * @param max
+     *           The number of retries the budget can save up, which is also what it starts with
+     */
+    public synchronized void setBudget(double ratio, double max) {
+        if (ratio < 0 || max < 0)
+            throw new IllegalArgumentException("The budget cannot be negative!");
+        this.budgetRatio = ratio;
+        this.maxBudget = max;
+        this.budget = max;
+    }
+
+    public synchronized double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Hedge requests that have not been answered by <b>percentile</b> of recent latencies
+     * @param percentile
+     *                  The percentile between 0 and 1, such as 0.95, or 0 to disable hedging
+     * @param minDelay
+     *                The minimum time to wait before hedging
+     * @param unit
+     *            The unit of <b>minDelay</b>
+     */
+    public synchronized void setHedging(double percentile, long minDelay, TimeUnit unit) {
+        if (percentile < 0 || percentile >= 1)
+            throw new IllegalArgumentException("percentile must be at least 0 and less than 1!");
+        this.hedgePercentile = percentile;
+        this.minHedgeDelay = unit.toNanos(minDelay);
+        updateHedgeDelay();
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Get the time a request currently waits for before it is hedged
+     * @param unit
+     *            The unit to return the delay in
+     * @return
+     *        The delay, or -1 if requests are not hedged yet
+     */
+    public long getHedgeDelay(TimeUnit unit) {
+        long delay = hedgeDelay;
+        return delay < 0 ? -1 : unit.convert(delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the executor hedged attempts run on. By default this is {@link AsyncExecutors#defaultExecutor()}.
+     * @param hedgeExecutor
+     *                     The executor
+     */
+    public void setHedgeExecutor(Executor hedgeExecutor) {
+        if (hedgeExecutor == null)
+            throw new IllegalArgumentException("hedgeExecutor cannot be null!");
+        this.hedgeExecutor = hedgeExecutor;
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Get the number of hedges that answered before the attempt they hedged
+     * @return
+     *        The number of hedges that won
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Get the number of retries and hedges that were not sent because the budget was spent
+     * @return
+     *        The number of retries and hedges denied
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+}
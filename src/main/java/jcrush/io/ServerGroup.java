@@ -0,0 +1,318 @@
+package jcrush.io;
+
+import jcrush.system.exceptions.ServerUnavailableException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jcrush.system.Utils.newContentDigest;
+
+/**
+ * A set of MediaCrush-compatible servers that share the load of a client. <br></br>
+ * Requests about one file are routed by consistent hashing on the hash of the file, so every file is always asked
+ * of the same server and that server keeps it in its cache. Every server is placed on the hash ring
+ * {@link ServerGroup#VIRTUAL_NODES} times so that the files spread evenly, and adding or removing a server only moves
+ * the files of that server. Requests that are not about one file, such as uploads, go to the server with the fewest
+ * requests outstanding. <br></br>
+ * Every server has a {@link CircuitBreaker}. A server that keeps failing is ejected: its files move to the next server
+ * on the ring and it gets no uploads, until the breaker lets a probe through and the probe succeeds. A client using
+ * the group probes every ejected server in the background, with a HEAD request to its API root once its open time
+ * passed, so a server comes back even while there is no traffic for it. A request routed to the server after its
+ * open time may be the probe as well, whichever comes first. If every server is ejected, requests fail with a
+ * {@link ServerUnavailableException}. <br></br>
+ * This class is thread-safe.
+ */
+public class ServerGroup {
+    /**
+     * The number of points every server has on the hash ring
+     */
+    public static final int VIRTUAL_NODES = 160;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * One server of a group
+     */
+    public static class Server {
+        private final String apiUrl;
+        private final int index;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+
+        Server(String apiUrl, int index, CircuitBreaker breaker) {
+            this.apiUrl = apiUrl;
+            this.index = index;
+            this.breaker = breaker;
+        }
+
+        /**
+         * Report that a request sent to this server by {@link ServerGroup#select(String)} or
+         * {@link ServerGroup#selectLeastOutstanding()} is done. A request that failed before the server answered, for
+         * a reason that is not a failure of the server, gives the breaker no verdict.
+         * @param failure
+         *               The exception the request failed with, or null if it did not fail
+         * @param answered
+         *                Whether the server answered the request
+         */
+        public void release(IOException failure, boolean answered) {
+            outstanding.decrementAndGet();
+            if (failure != null && isServerFailure(failure))
+                breaker.onFailure();
+            else if (answered)
+                breaker.onSuccess();
+            else
+                breaker.onAbandoned();
+        }
+
+        public String getApiUrl() {
+            return apiUrl;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return breaker;
+        }
+
+        /**
+         * Get the number of requests sent to this server that are not done yet
+         * @return
+         *        The number of requests
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * Get the number of requests sent to this server
+         * @return
+         *        The number of requests
+         */
+        public long getRequestCount() {
+            return requests.get();
+        }
+
+        @Override
+        public String toString() {
+            return apiUrl + " (" + breaker.getState() + ", " + outstanding.get() + " outstanding)";
+        }
+    }
+
+    private final List<Server> servers;
+    private final long[] points;
+    private final Server[] owners;
+
+    /**
+     * Create a new group whose servers have breakers with the default settings
+     * @param apiUrls
+     *               The URLs where the APIs of the servers wait for connections
+     */
+    public ServerGroup(String... apiUrls) {
+        this(Arrays.asList(apiUrls), CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_OPEN_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new group
+     * @param apiUrls
+     *               The URLs where the APIs of the servers wait for connections
+     * @param failureThreshold
+     *                        The number of failed requests in a row that eject a server
+     * @param openTime
+     *                The time an ejected server gets no requests before it is probed
+     * @param unit
+     *            The unit of <b>openTime</b>
+     * @throws IllegalArgumentException
+     *                                  If a URL is malformed
+     */
+    public ServerGroup(Collection<String> apiUrls, int failureThreshold, long openTime, TimeUnit unit) {
+        if (apiUrls.isEmpty())
+            throw new IllegalArgumentException("A group needs at least one server!");
+        List<Server> servers = new ArrayList<Server>(apiUrls.size());
+        for (String apiUrl : apiUrls) {
+            if (apiUrl == null)
+                throw new IllegalArgumentException("apiUrls cannot contain null!");
+            try {
+                new URL(apiUrl);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("The API URL " + apiUrl + " is malformed!", e);
+            }
+            servers.add(new Server(apiUrl, servers.size(), new CircuitBreaker(failureThreshold, openTime, unit)));
+        }
+        this.servers = Collections.unmodifiableList(servers);
+
+        //Build the ring as a sorted array of points and the server owning each point
+        MessageDigest digest = newContentDigest();
+        long[][] ring = new long[servers.size() * VIRTUAL_NODES][];
+        int n = 0;
+        for (Server server : servers) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring[n++] = new long[] { hash(digest, server.apiUrl + "#" + i), server.index };
+            }
+        }
+        Arrays.sort(ring, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : (int) (a[1] - b[1]);
+            }
+        });
+        points = new long[ring.length];
+        owners = new Server[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = servers.get((int) ring[i][1]);
+        }
+    }
+
+    /**
+     * Get the server that owns <b>hash</b> on the ring while every server is available
+     * @param hash
+     *            The hash of a file
+     * @return
+     *        The server
+     */
+    public Server getOwner(String hash) {
+        return owners[pointOf(hash)];
+    }
+
+    /**
+     * Take the first available server for <b>hash</b> on the ring. The server counts the request as outstanding until
+     * {@link Server#release(IOException, boolean)} is invoked.
+     * @param hash
+     *            The hash of the file the request is about
+     * @return
+     *        The server
+     * @throws ServerUnavailableException
+     *                                   If every server is ejected
+     */
+    public Server select(String hash) throws ServerUnavailableException {
+        boolean[] tried = new boolean[servers.size()];
+        int remaining = tried.length;
+        for (int i = pointOf(hash), n = 0; n < owners.length && remaining > 0; i = (i + 1) % owners.length, n++) {
+            Server server = owners[i];
+            if (tried[server.index])
+                continue;
+            tried[server.index] = true;
+            remaining--;
+            if (server.breaker.tryAcquire())
+                return take(server);
+        }
+        throw unavailable();
+    }
+
+    /**
+     * Take the available server with the fewest requests outstanding, breaking ties at random. The server counts the
+     * request as outstanding until {@link Server#release(IOException, boolean)} is invoked.
+     * @return
+     *        The server
+     * @throws ServerUnavailableException
+     *                                   If every server is ejected
+     */
+    public Server selectLeastOutstanding() throws ServerUnavailableException {
+        int count = servers.size();
+        boolean[] tried = new boolean[count];
+        for (int attempt = 0; attempt < count; attempt++) {
+            int start = ThreadLocalRandom.current().nextInt(count);
+            Server best = null;
+            for (int i = 0; i < count; i++) {
+                Server server = servers.get((start + i) % count);
+                if (tried[server.index] || !server.breaker.isAvailable())
+                    continue;
+                if (best == null || server.outstanding.get() < best.outstanding.get())
+                    best = server;
+            }
+            if (best == null)
+                break;
+            tried[best.index] = true;
+            if (best.breaker.tryAcquire())
+                return take(best);
+        }
+        throw unavailable();
+    }
+
+    /**
+     * Take the probe of every ejected server whose open time passed. Every server returned counts the probe as
+     * outstanding until {@link Server#release(IOException, boolean)} is invoked.
+     * @return
+     *        The servers to probe, which is empty if none is due
+     */
+    public List<Server> takeProbes() {
+        List<Server> due = new ArrayList<Server>();
+        for (Server server : servers) {
+            if (server.breaker.tryAcquireProbe())
+                due.add(take(server));
+        }
+        return due;
+    }
+
+    /**
+     * Get the shortest time a server of this group stays ejected before it is probed
+     * @param unit
+     *            The unit of the time
+     * @return
+     *        The time
+     */
+    public long getMinOpenTime(TimeUnit unit) {
+        long min = Long.MAX_VALUE;
+        for (Server server : servers) {
+            min = Math.min(min, server.breaker.getOpenTime(unit));
+        }
+        return min;
+    }
+
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    /**
+     * Check whether <b>e</b> means that the server failed, rather than the request
+     * @param e
+     *         The exception a request failed with
+     * @return
+     *        true if the server was unavailable, timed out or dropped the connection
+     */
+    public static boolean isServerFailure(IOException e) {
+        return e instanceof ServerUnavailableException || e instanceof SocketTimeoutException || e instanceof SocketException;
+    }
+
+    private static Server take(Server server) {
+        server.outstanding.incrementAndGet();
+        server.requests.incrementAndGet();
+        return server;
+    }
+
+    private ServerUnavailableException unavailable() {
+        return new ServerUnavailableException("Every server of the group is unavailable!", -1);
+    }
+
+    /**
+     * Get the index of the first point at or after the position of <b>key</b>, wrapping around the ring
+     */
+    private int pointOf(String key) {
+        int i = Arrays.binarySearch(points, hash(newContentDigest(), key));
+        if (i < 0)
+            i = -i - 1;
+        return i == points.length ? 0 : i;
+    }
+
+    private static long hash(MessageDigest digest, String key) {
+        byte[] md5 = digest.digest(key.getBytes(UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (md5[i] & 0xFF);
+        }
+        return hash;
+    }
+}
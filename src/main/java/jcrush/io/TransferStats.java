@@ -0,0 +1,76 @@
+package jcrush.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of the responses read by every {@link Requester} given these stats. <br></br>
+ * Received bytes are counted as they come off the connection, and decoded bytes once any Content-Encoding was undone,
+ * so the two only differ for compressed responses. <br></br>
+ * This class is thread-safe.
+ */
+public class TransferStats {
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+
+    /**
+     * Get the number of body bytes received from the server
+     * @return
+     *        The number of bytes, compressed where the server compressed them
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Get the number of body bytes after decompression
+     * @return
+     *        The number of bytes
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /**
+     * Get the number of responses whose body was read
+     * @return
+     *        The number of responses
+     */
+    public long getResponseCount() {
+        return responses.get();
+    }
+
+    /**
+     * Get the number of responses the server compressed
+     * @return
+     *        The number of responses
+     */
+    public long getCompressedResponseCount() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * Get how many times smaller the responses were on the wire
+     * @return
+     *        The decoded bytes divided by the received bytes, or 1 if nothing was received
+     */
+    public double getCompressionRatio() {
+        long received = receivedBytes.get();
+        return received == 0 ? 1 : (double) decodedBytes.get() / received;
+    }
+
+    void addResponse(boolean compressed) {
+        responses.incrementAndGet();
+        if (compressed)
+            compressedResponses.incrementAndGet();
+    }
+
+    AtomicLong receivedCounter() {
+        return receivedBytes;
+    }
+
+    AtomicLong decodedCounter() {
+        return decodedBytes;
+    }
+}
@@ -0,0 +1,44 @@
+package jcrush.io;
+
+import java.io.IOException;
+
+/**
+ * Sends the requests of a {@link Requester} over the network. <br></br>
+ * A {@link Requester} builds a {@link TransportRequest}, and the transport sends it and waits for the status line and
+ * headers of the response. Reading the body, decompressing it, and turning status codes into exceptions stay in the
+ * {@link Requester}, so every transport behaves the same to the client. <br></br>
+ * {@link UrlConnectionTransport} is the default. {@link HttpClientTransport} multiplexes many requests over few
+ * HTTP/2 connections. <br></br>
+ * Implementations must be thread-safe.
+ */
+public interface Transport {
+    /**
+     * Told how far a request got, so that the time of each phase can be recorded
+     */
+    interface Progress {
+        /**
+         * The connection is open, and the body, if any, is about to be sent
+         */
+        void connected();
+
+        /**
+         * The request was sent and its response is being waited for
+         */
+        void sent();
+    }
+
+    /**
+     * Send <b>request</b> and wait for the status line and headers of its response. If the request does not
+     * {@link TransportRequest#isReceiving() receive} a response, this returns once it was sent.
+     * @param request
+     *               The request
+     * @param progress
+     *                Told when the connection is open and when the request was sent. A transport that cannot tell
+     *                these apart may tell both at once.
+     * @return
+     *        The response, which must be {@link TransportResponse#release(boolean) released}
+     * @throws IOException
+     *                    If the request could not be sent or no response was received
+     */
+    TransportResponse send(TransportRequest request, Progress progress) throws IOException;
+}
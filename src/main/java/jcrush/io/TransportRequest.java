@@ -0,0 +1,142 @@
+package jcrush.io;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A request for a {@link Transport} to send, as built by a {@link Requester}
+ */
+public class TransportRequest {
+    private final ConnectionType type;
+    private final URL url;
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private byte[] body;
+    private InputStream bodyStream;
+    private long bodyLength = -1;
+    private boolean receiving;
+    private boolean followingRedirects;
+    private int connectTimeout;
+    private int readTimeout;
+
+    TransportRequest(ConnectionType type, URL url) {
+        this.type = type;
+        this.url = url;
+    }
+
+    void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    void setBody(byte[] body) {
+        this.body = body;
+        this.bodyStream = null;
+        this.bodyLength = body.length;
+    }
+
+    void setBody(InputStream body, long length) {
+        this.bodyStream = body;
+        this.body = null;
+        this.bodyLength = length;
+    }
+
+    void setReceiving(boolean receiving) {
+        this.receiving = receiving;
+    }
+
+    void setFollowingRedirects(boolean followingRedirects) {
+        this.followingRedirects = followingRedirects;
+    }
+
+    void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public ConnectionType getType() {
+        return type;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the headers to send, in the order they were added
+     * @return
+     *        The headers, keyed by name
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Check whether this request has a body, which is either {@link TransportRequest#getBody()} or
+     * {@link TransportRequest#getBodyStream()}
+     * @return
+     *        true if there is a body
+     */
+    public boolean hasBody() {
+        return body != null ? body.length != 0 : bodyStream != null;
+    }
+
+    /**
+     * Get the body held in memory
+     * @return
+     *        The body, or null if it is streamed or there is none
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Get the body to stream. The stream must not be closed once it was sent.
+     * @return
+     *        The body, or null if it is held in memory or there is none
+     */
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * Get the length of the body
+     * @return
+     *        The number of bytes, or -1 if a streamed body has no known length
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Check whether the response is waited for
+     * @return
+     *        true if the response is received
+     */
+    public boolean isReceiving() {
+        return receiving;
+    }
+
+    public boolean isFollowingRedirects() {
+        return followingRedirects;
+    }
+
+    /**
+     * Get the connect timeout
+     * @return
+     *        The timeout in milliseconds, or 0 for the default of the transport
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Get the read timeout
+     * @return
+     *        The timeout in milliseconds, or 0 for the default of the transport
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+}
@@ -0,0 +1,68 @@
+package jcrush.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response to a {@link TransportRequest}, whose status line and headers arrived and whose body is still on the
+ * connection. <br></br>
+ * The body is returned as it came off the wire: a compressed body is decompressed by the {@link Requester}.
+ */
+public interface TransportResponse {
+    /**
+     * Get the status code
+     * @return
+     *        The status code, or 0 if the request does not receive a response
+     */
+    int getStatus();
+
+    /**
+     * Get the headers of the response
+     * @return
+     *        The headers, keyed by name. The status line may be included with a null name.
+     */
+    Map<String, List<String>> getHeaders();
+
+    /**
+     * Get the first value of a header
+     * @param name
+     *            The name of the header, in any case
+     * @return
+     *        The value, or null if the response has no such header
+     */
+    String getHeader(String name);
+
+    /**
+     * Get the Content-Length of the response
+     * @return
+     *        The length, or -1 if it is not known
+     */
+    long getContentLength();
+
+    /**
+     * Get the body of a successful response
+     * @return
+     *        The body
+     * @throws java.io.FileNotFoundException
+     *                                      If the status is 404 or 410
+     * @throws IOException
+     *                    If the status is 400 or above, or the body could not be read
+     */
+    InputStream getBody() throws IOException;
+
+    /**
+     * Get the body of a failed response
+     * @return
+     *        The body, or null if the status is below 400 or there is no body
+     */
+    InputStream getErrorBody();
+
+    /**
+     * Give the connection back. This must be invoked once for every response.
+     * @param reusable
+     *                Whether the body was fully read, so the connection can be kept alive
+     */
+    void release(boolean reusable);
+}
@@ -0,0 +1,141 @@
+package jcrush.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+import static jcrush.system.Constants.STREAM_BUFFER_SIZE;
+import static jcrush.system.Utils.copy;
+
+/**
+ * Sends requests with {@link HttpURLConnection}, one request at a time per HTTP/1.1 connection. This is the default
+ * transport. <br></br>
+ * Given a {@link ConnectionPool}, the number of connections open at once is bounded by the pool and finished
+ * connections are handed to the keep-alive cache of {@link HttpURLConnection} for the next request. Without one, every
+ * connection is closed once its response was read.
+ */
+public class UrlConnectionTransport implements Transport {
+    private final ConnectionPool pool;
+
+    /**
+     * Create a new transport that closes every connection once its response was read
+     */
+    public UrlConnectionTransport() {
+        this(null);
+    }
+
+    /**
+     * Create a new transport that takes its connections from <b>pool</b>
+     * @param pool
+     *            The pool, or null to close every connection once its response was read
+     */
+    public UrlConnectionTransport(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request, Progress progress) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) request.getUrl().openConnection();
+        if (pool != null)
+            pool.acquire();
+        Response response = new Response(connection, pool);
+        try {
+            if (request.getConnectTimeout() > 0) connection.setConnectTimeout(request.getConnectTimeout());
+            if (request.getReadTimeout() > 0) connection.setReadTimeout(request.getReadTimeout());
+            connection.setInstanceFollowRedirects(request.isFollowingRedirects());
+            connection.setDoInput(request.isReceiving());
+            boolean output = request.hasBody();
+            connection.setDoOutput(output);
+            if (output) {
+                if (request.getBodyLength() >= 0)
+                    connection.setFixedLengthStreamingMode(request.getBodyLength());
+                else
+                    connection.setChunkedStreamingMode(STREAM_BUFFER_SIZE);
+            }
+            connection.setRequestMethod(request.getType().type);
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.connect();
+            progress.connected();
+            if (output) {
+                OutputStream out = connection.getOutputStream();
+                if (request.getBody() != null)
+                    out.write(request.getBody());
+                else
+                    copy(request.getBodyStream(), out, STREAM_BUFFER_SIZE);
+                out.close();
+            }
+            progress.sent();
+            if (request.isReceiving())
+                response.status = connection.getResponseCode();
+            return response;
+        } catch (IOException e) {
+            response.release(false);
+            throw e;
+        } catch (RuntimeException e) {
+            response.release(false);
+            throw e;
+        }
+    }
+
+    private static class Response implements TransportResponse {
+        private final HttpURLConnection connection;
+        private final ConnectionPool pool;
+        private int status;
+        private boolean released;
+
+        Response(HttpURLConnection connection, ConnectionPool pool) {
+            this.connection = connection;
+            this.pool = pool;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return connection.getHeaderFields();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return connection.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorBody() {
+            return connection.getErrorStream();
+        }
+
+        @Override
+        public void release(boolean reusable) {
+            if (released)
+                return;
+            released = true;
+            if (pool != null)
+                pool.release(connection, reusable);
+            else
+                connection.disconnect();
+        }
+    }
+}
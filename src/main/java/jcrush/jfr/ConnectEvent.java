@@ -0,0 +1,18 @@
+package jcrush.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Waiting for a connection from the pool and opening it, or taking a kept-alive one. Disabled by default.
+ */
+@Name("jcrush.Connect")
+@Label("Connect")
+@Description("Waiting for a pooled connection and opening it")
+@Category({"JCrush", "Request", "Phase"})
+@Enabled(false)
+public class ConnectEvent extends RequestPhaseEvent {
+}
@@ -0,0 +1,32 @@
+package jcrush.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A whole request, from asking the pool for a connection to reading the last byte of the response. It is recorded
+ * for requests slower than 20 ms by default.
+ */
+@Name("jcrush.Request")
+@Label("Request")
+@Description("A request to the MediaCrush API")
+@Threshold("20 ms")
+public class RequestEvent extends RequestPhaseEvent {
+    @Label("Status Code")
+    @Description("The HTTP status code, or -1 if no response was received")
+    public int status;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    public long bytesSent;
+
+    @Label("Bytes Received")
+    @DataAmount
+    public long bytesReceived;
+
+    @Label("Error")
+    public String error;
+}
@@ -0,0 +1,25 @@
+package jcrush.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields every JFR event of a request carries
+ */
+@Category({"JCrush", "Request"})
+@StackTrace(false)
+public abstract class RequestPhaseEvent extends Event {
+    @Label("Endpoint")
+    @Description("The API endpoint, or null if the request was not sent to one")
+    public String endpoint;
+
+    @Label("Method")
+    public String method;
+
+    @Label("URL Hash")
+    @Description("A hash of the URL, so that requests to the same URL can be told apart without recording the URL")
+    public int urlHash;
+}
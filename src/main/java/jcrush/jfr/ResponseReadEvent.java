@@ -0,0 +1,23 @@
+package jcrush.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading the body of a response. For a streamed response this lasts until it is disconnected, so it includes the
+ * time the caller spent between reads. Disabled by default.
+ */
+@Name("jcrush.ResponseRead")
+@Label("Response Read")
+@Description("Reading the body of a response")
+@Category({"JCrush", "Request", "Phase"})
+@Enabled(false)
+public class ResponseReadEvent extends RequestPhaseEvent {
+    @Label("Bytes Received")
+    @DataAmount
+    public long bytesReceived;
+}
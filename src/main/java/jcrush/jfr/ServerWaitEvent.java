@@ -0,0 +1,21 @@
+package jcrush.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Waiting for the status line and headers of the response once the request was sent, which is mostly the time the
+ * server spent on it. Disabled by default.
+ */
+@Name("jcrush.ServerWait")
+@Label("Server Wait")
+@Description("Waiting for the server to answer a sent request")
+@Category({"JCrush", "Request", "Phase"})
+@Enabled(false)
+public class ServerWaitEvent extends RequestPhaseEvent {
+    @Label("Status Code")
+    public int status;
+}
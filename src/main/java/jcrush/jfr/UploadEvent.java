@@ -0,0 +1,22 @@
+package jcrush.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Sending the body of a request. Disabled by default.
+ */
+@Name("jcrush.Upload")
+@Label("Upload")
+@Description("Sending the body of a request")
+@Category({"JCrush", "Request", "Phase"})
+@Enabled(false)
+public class UploadEvent extends RequestPhaseEvent {
+    @Label("Bytes Sent")
+    @DataAmount
+    public long bytesSent;
+}
@@ -0,0 +1,39 @@
+package jcrush.metrics;
+
+/**
+ * The API endpoints a {@link jcrush.JCrushClient} sends requests to
+ */
+public enum Endpoint {
+    /**
+     * GET /api/{hash}
+     */
+    INFO,
+    /**
+     * GET /api/info?list=
+     */
+    INFO_LIST,
+    /**
+     * GET /api/{hash}/status
+     */
+    STATUS,
+    /**
+     * HEAD /api/{hash}/exists
+     */
+    EXISTS,
+    /**
+     * POST /api/upload/file
+     */
+    UPLOAD_FILE,
+    /**
+     * POST /api/upload/url
+     */
+    UPLOAD_URL,
+    /**
+     * GET /api/{hash}/delete
+     */
+    DELETE,
+    /**
+     * HEAD /api/, sent to probe an ejected server
+     */
+    PROBE
+}
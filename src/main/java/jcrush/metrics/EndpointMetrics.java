@@ -0,0 +1,169 @@
+package jcrush.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The metrics of the requests sent to one {@link Endpoint}. <br></br>
+ * A request is counted as an error if it failed with an exception or was answered with a status code of 400 or above.
+ * Status codes outside 100-599 are counted as 0. <br></br>
+ * This class is thread-safe.
+ */
+public class EndpointMetrics implements EndpointMetricsMXBean {
+    private static final int STATUS_CODES = 600;
+
+    private final Endpoint endpoint;
+    private final MetricsRegistry registry;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(STATUS_CODES);
+
+    EndpointMetrics(Endpoint endpoint, MetricsRegistry registry) {
+        this.endpoint = endpoint;
+        this.registry = registry;
+    }
+
+    /**
+     * Count a request that was just sent as in flight
+     */
+    public void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record a request that was counted by {@link EndpointMetrics#begin()} once it is done
+     * @param status
+     *              The HTTP status code, or -1 if no response was received
+     * @param latency
+     *               The time from sending the request to reading its response, in nanoseconds
+     * @param sent
+     *            The number of body bytes sent
+     * @param received
+     *                The number of body bytes received
+     * @param error
+     *             The exception the request failed with, or null
+     */
+    public void end(int status, long latency, long sent, long received, Throwable error) {
+        inFlight.decrementAndGet();
+        calls.incrementAndGet();
+        if (error != null || status >= 400)
+            errors.incrementAndGet();
+        if (status >= 0)
+            statusCodes.incrementAndGet(status >= 100 && status < STATUS_CODES ? status : 0);
+        this.latency.record(latency);
+        bytesSent.addAndGet(sent);
+        bytesReceived.addAndGet(received);
+        registry.fire(endpoint, status, latency, sent, received, error);
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return latency.getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getPercentile(0.5, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getPercentile(0.99, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.getPercentile(0.999, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMax(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> codes = new TreeMap<String, Long>();
+        for (int i = 0; i < STATUS_CODES; i++) {
+            long count = statusCodes.get(i);
+            if (count > 0)
+                codes.put(String.valueOf(i), count);
+        }
+        return codes;
+    }
+
+    /**
+     * Get the number of responses with status code <b>status</b>
+     * @param status
+     *              The status code
+     * @return
+     *        The number of responses
+     */
+    public long getStatusCount(int status) {
+        return status >= 0 && status < STATUS_CODES ? statusCodes.get(status) : 0;
+    }
+
+    /**
+     * Forget every recorded request. Requests in flight are still counted as in flight.
+     */
+    @Override
+    public void reset() {
+        calls.set(0);
+        errors.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        for (int i = 0; i < STATUS_CODES; i++) {
+            statusCodes.set(i, 0);
+        }
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %d calls, %d errors, %d in flight, p50 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms",
+                endpoint, getCallCount(), getErrorCount(), getInFlight(), getLatencyP50Millis(), getLatencyP99Millis(),
+                getLatencyP999Millis(), getLatencyMaxMillis());
+    }
+}
@@ -0,0 +1,37 @@
+package jcrush.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of one endpoint, as exposed over JMX
+ */
+public interface EndpointMetricsMXBean {
+    long getCallCount();
+
+    long getErrorCount();
+
+    int getInFlight();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    /**
+     * Get the number of responses with each HTTP status code
+     * @return
+     *        The counts, keyed by status code
+     */
+    Map<String, Long> getStatusCodes();
+
+    void reset();
+}
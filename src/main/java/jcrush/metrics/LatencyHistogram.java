@@ -0,0 +1,115 @@
+package jcrush.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with log-linear buckets, like an HDR histogram. <br></br>
+ * Latencies are recorded in microseconds. Below {@link LatencyHistogram#SUB_BUCKETS} microseconds every value has a
+ * bucket of its own; above, every power of two is split into {@link LatencyHistogram#SUB_BUCKETS} / 2 buckets, so a
+ * percentile is off by at most about 3% whatever its magnitude. Latencies longer than about 19 hours are counted in the
+ * last bucket. Recording never locks or allocates. <br></br>
+ * This class is thread-safe.
+ */
+public class LatencyHistogram {
+    /**
+     * The number of buckets the first power of two is split into, which sets the precision
+     */
+    public static final int SUB_BUCKETS = 64;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int MAX_SHIFT = 31;
+    private static final int BUCKETS = SUB_BUCKETS + MAX_SHIFT * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency
+     * @param latency
+     *               The latency in nanoseconds
+     */
+    public void record(long latency) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(latency));
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) { }
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - (SUB_BITS - 1);
+        if (shift > MAX_SHIFT)
+            return BUCKETS - 1;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((micros >> shift) - HALF);
+    }
+
+    /**
+     * Get the highest value that falls into bucket <b>index</b>
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Get the latency below which <b>percentile</b> of the recorded latencies fall
+     * @param percentile
+     *                  The percentile between 0 and 1, such as 0.99
+     * @param unit
+     *            The unit to return the latency in
+     * @return
+     *        The latency, or 0 if nothing was recorded
+     */
+    public double getPercentile(double percentile, TimeUnit unit) {
+        long recorded = count.get();
+        if (recorded == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return toUnit(Math.min(highestValueOf(i), max.get()), unit);
+        }
+        return toUnit(max.get(), unit);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean(TimeUnit unit) {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : toUnit(total.get(), unit) / recorded;
+    }
+
+    public double getMax(TimeUnit unit) {
+        return toUnit(max.get(), unit);
+    }
+
+    /**
+     * Forget every recorded latency
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    private static double toUnit(long micros, TimeUnit unit) {
+        return micros * 1000.0 / unit.toNanos(1);
+    }
+}
@@ -0,0 +1,24 @@
+package jcrush.metrics;
+
+/**
+ * Receives every request recorded by a {@link MetricsRegistry}. It is called on the thread that made the request, so
+ * it must be thread-safe and should return quickly.
+ */
+public interface MetricsListener {
+    /**
+     * Called once a request is done
+     * @param endpoint
+     *                The endpoint of the request
+     * @param status
+     *              The HTTP status code, or -1 if no response was received
+     * @param latency
+     *               The time from sending the request to reading its response, in nanoseconds
+     * @param bytesSent
+     *                 The number of body bytes sent
+     * @param bytesReceived
+     *                     The number of body bytes received, as they came off the wire
+     * @param error
+     *             The exception the request failed with, or null
+     */
+    void onRequest(Endpoint endpoint, int status, long latency, long bytesSent, long bytesReceived, Throwable error);
+}
@@ -0,0 +1,145 @@
+package jcrush.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The metrics of every {@link Endpoint} of a {@link jcrush.JCrushClient}. <br></br>
+ * Metrics are off by default. While they are off no request is timed or counted, so they cost a single volatile read
+ * per request. Once on, every request records its call, latency, bytes, status code and whether it is in flight
+ * without locking. <br></br>
+ * The metrics can be read directly, registered as MXBeans so that any JMX console can read them, or pushed to
+ * {@link MetricsListener}s as every request is done. <br></br>
+ * This class is thread-safe.
+ */
+public class MetricsRegistry {
+    /**
+     * The JMX domain the MXBeans are registered under
+     */
+    public static final String JMX_DOMAIN = "jcrush";
+
+    private final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<Endpoint, EndpointMetrics>(Endpoint.class);
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private volatile boolean enabled;
+
+    public MetricsRegistry() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoints.put(endpoint, new EndpointMetrics(endpoint, this));
+        }
+    }
+
+    /**
+     * Set whether requests are recorded
+     * @param enabled
+     *               Whether to record requests
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the metrics of <b>endpoint</b>
+     * @param endpoint
+     *                The endpoint
+     * @return
+     *        The metrics, which are kept even while metrics are off
+     */
+    public EndpointMetrics get(Endpoint endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * Get the metrics a request to <b>endpoint</b> should record into
+     * @param endpoint
+     *                The endpoint
+     * @return
+     *        The metrics, or null if metrics are off
+     */
+    public EndpointMetrics forRequest(Endpoint endpoint) {
+        return enabled ? endpoints.get(endpoint) : null;
+    }
+
+    public void addListener(MetricsListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("listener cannot be null!");
+        listeners.add(listener);
+    }
+
+    public void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    void fire(Endpoint endpoint, int status, long latency, long sent, long received, Throwable error) {
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onRequest(endpoint, status, latency, sent, received, error);
+            } catch (RuntimeException ignored) {
+                //A broken listener must not fail the request
+            }
+        }
+    }
+
+    /**
+     * Register the metrics of every endpoint with the platform MBean server as
+     * jcrush:type=Endpoint,client=<b>client</b>,endpoint=<i>ENDPOINT</i>. Any MXBeans registered before are
+     * unregistered first.
+     * @param client
+     *              The name that tells this client apart from other clients in the same JVM
+     * @throws IllegalStateException
+     *                              If another client already registered under <b>client</b>
+     */
+    public synchronized void registerMBeans(String client) {
+        unregisterMBeans();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (EndpointMetrics metrics : endpoints.values()) {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Endpoint,client=" + ObjectName.quote(client)
+                        + ",endpoint=" + metrics.getEndpoint());
+                server.registerMBean(metrics, name);
+                registered.add(name);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            unregisterMBeans();
+            throw new IllegalStateException("The metrics of a client named " + client + " are already registered!", e);
+        } catch (JMException e) {
+            unregisterMBeans();
+            throw new IllegalStateException("The metrics could not be registered!", e);
+        }
+    }
+
+    /**
+     * Unregister the MXBeans registered by {@link MetricsRegistry#registerMBeans(String)}
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignored) {
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Forget every recorded request of every endpoint
+     */
+    public void reset() {
+        for (EndpointMetrics metrics : endpoints.values()) {
+            metrics.reset();
+        }
+    }
+}
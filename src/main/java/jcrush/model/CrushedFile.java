@@ -17,6 +17,11 @@ public class CrushedFile {
         this.fileType = FileType.toFileType(type);
     }
 
+    CrushedFile(String file, String type, String url) {
+        this(file, type);
+        this.url = url;
+    }
+
     public String getFile() {
         return file;
     }
@@ -30,6 +35,10 @@ public class CrushedFile {
         return null;
     }
 
+    String getType() {
+        return type;
+    }
+
     public String getURLAsString() {
         return url;
     }
@@ -1,33 +1,47 @@
 package jcrush.model;
 
+import com.google.gson.annotations.SerializedName;
+
+import java.util.HashMap;
+import java.util.Map;
+
 public enum FileStatus {
     /**
      * The file has been processed.
      */
+    @SerializedName("done")
     DONE("done"),
     /**
      * The file is being processed or in the processing queue.
      */
+    @SerializedName("processing")
     PROCESSING("processing"),
     /**
      * The processing step finished early with an abnormal return code.
      */
+    @SerializedName("error")
     ERROR("error"),
     /**
      * The file took too long to process.
      */
+    @SerializedName("timeout")
     TIMEOUT("timeout");
 
-    String type;
-    FileStatus(String type) { this.type = type; }
+    //values() copies the array on every call, so lookups go through a map built once
+    private static final Map<String, FileStatus> BY_TYPE = new HashMap<String, FileStatus>();
 
-    public static FileStatus toFileStatus(String type) {
+    static {
         for (FileStatus f : values()) {
-            if (f.type.equals(type))
-                return f;
+            BY_TYPE.put(f.type, f);
         }
+    }
 
-        return ERROR;
+    String type;
+    FileStatus(String type) { this.type = type; }
+
+    public static FileStatus toFileStatus(String type) {
+        FileStatus f = BY_TYPE.get(type);
+        return f != null ? f : ERROR;
     }
 
     public String toString() {
@@ -1,5 +1,8 @@
 package jcrush.model;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum FileType {
     UNKNOWN("???", ".dat"),
     MP4("video/mp4", "mp4"),
@@ -10,18 +13,26 @@ public enum FileType {
     JPG("image/jpg", "jpg"),
     MP3("audio/mp3", "mp3"),
     OGG("audio/ogg", "ogg"),
-    WEBM("video/webm", "");
+    WEBM("video/webm", "webm");
+
+    //values() copies the array on every call, so lookups go through a map built once
+    private static final Map<String, FileType> BY_TYPE = new HashMap<String, FileType>();
+
+    static {
+        for (FileType t : values()) {
+            //JPEG and JPG share a content type, the first one wins
+            if (!BY_TYPE.containsKey(t.type))
+                BY_TYPE.put(t.type, t);
+        }
+    }
 
     String type;
     String ext;
     FileType(String type, String ext) { this.type = type; this.ext = ext; }
 
     public static FileType toFileType(String type) {
-        for (FileType t : values()) {
-            if (t.type.equals(type))
-                return t;
-        }
-        return UNKNOWN;
+        FileType t = BY_TYPE.get(type);
+        return t != null ? t : UNKNOWN;
     }
 
     public String getFileExtension() {
@@ -12,6 +12,15 @@ public class MediaCrushFile {
 
     private MediaCrushFile() { }
 
+    MediaCrushFile(String hash, FileStatus status, double compression, String original, String type, CrushedFile[] files) {
+        this.hash = hash;
+        this.status = status;
+        this.compression = compression;
+        this.original = original;
+        this.type = type;
+        this.files = files;
+    }
+
     public double getCompression() {
         return compression;
     }
@@ -24,6 +33,14 @@ public class MediaCrushFile {
         return orginalFile;
     }
 
+    String getOriginal() {
+        return original;
+    }
+
+    String getType() {
+        return type;
+    }
+
     public CrushedFile[] getFiles() {
         return files;
     }
@@ -32,10 +49,28 @@ public class MediaCrushFile {
         return hash;
     }
 
+    void setHash(String hash) {
+        this.hash = hash;
+    }
+
     public FileStatus getStatus() {
         return status == null ? FileStatus.DONE : status;
     }
 
+    /**
+     * Whether the server sent the status of this file. When it did not, {@link MediaCrushFile#getStatus()} assumes
+     * {@link FileStatus#DONE}
+     * @return
+     *        true if the status is known
+     */
+    public boolean isStatusKnown() {
+        return status != null;
+    }
+
+    void setStatus(FileStatus status) {
+        this.status = status;
+    }
+
     @Override
     public int hashCode() {
         return hash.hashCode();
@@ -0,0 +1,329 @@
+package jcrush.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binds the JSON the API returns to the model classes. <br></br>
+ * Every model class has a {@link TypeAdapter} that reads it in a single pass straight from a {@link JsonReader} and
+ * builds it through its constructor, so no reflection is used and no intermediate map is built. Unknown keys are
+ * skipped. <br></br>
+ * The adapters are registered on {@link ModelBinding#GSON}, which is what the client decodes every response with.
+ */
+public final class ModelBinding {
+    public static final TypeAdapter<FileStatus> FILE_STATUS_ADAPTER = new TypeAdapter<FileStatus>() {
+        @Override
+        public void write(JsonWriter out, FileStatus value) throws IOException {
+            if (value == null)
+                out.nullValue();
+            else
+                out.value(value.type);
+        }
+
+        @Override
+        public FileStatus read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return FileStatus.toFileStatus(in.nextString());
+        }
+    };
+
+    public static final TypeAdapter<FileType> FILE_TYPE_ADAPTER = new TypeAdapter<FileType>() {
+        @Override
+        public void write(JsonWriter out, FileType value) throws IOException {
+            if (value == null)
+                out.nullValue();
+            else
+                out.value(value.type);
+        }
+
+        @Override
+        public FileType read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return FileType.toFileType(in.nextString());
+        }
+    };
+
+    public static final TypeAdapter<CrushedFile> CRUSHED_FILE_ADAPTER = new TypeAdapter<CrushedFile>() {
+        @Override
+        public void write(JsonWriter out, CrushedFile value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("file").value(value.getFile());
+            out.name("type").value(value.getType());
+            if (value.getURLAsString() != null)
+                out.name("url").value(value.getURLAsString());
+            out.endObject();
+        }
+
+        @Override
+        public CrushedFile read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String file = null, type = null, url = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("file"))
+                    file = nextString(in);
+                else if (name.equals("type"))
+                    type = nextString(in);
+                else if (name.equals("url"))
+                    url = nextString(in);
+                else
+                    in.skipValue();
+            }
+            in.endObject();
+            return new CrushedFile(file, type, url);
+        }
+    };
+
+    public static final TypeAdapter<MediaCrushFile> MEDIA_CRUSH_FILE_ADAPTER = new TypeAdapter<MediaCrushFile>() {
+        @Override
+        public void write(JsonWriter out, MediaCrushFile value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (value.getHash() != null)
+                out.name("hash").value(value.getHash());
+            if (value.isStatusKnown()) {
+                out.name("status");
+                FILE_STATUS_ADAPTER.write(out, value.getStatus());
+            }
+            out.name("compression").value(value.getCompression());
+            out.name("original").value(value.getOriginal());
+            out.name("type").value(value.getType());
+            out.name("files");
+            out.beginArray();
+            if (value.getFiles() != null) {
+                for (CrushedFile file : value.getFiles()) {
+                    CRUSHED_FILE_ADAPTER.write(out, file);
+                }
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public MediaCrushFile read(JsonReader in) throws IOException {
+            return readFile(in, null);
+        }
+    };
+
+    /**
+     * A {@link Gson} with every model adapter registered
+     */
+    public static final Gson GSON = register(new GsonBuilder()).create();
+
+    private ModelBinding() { }
+
+    /**
+     * Register the adapters of every model class on <b>builder</b>
+     * @param builder
+     *               The builder to register the adapters on
+     * @return
+     *        <b>builder</b>
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder.registerTypeAdapter(FileStatus.class, FILE_STATUS_ADAPTER)
+                .registerTypeAdapter(FileType.class, FILE_TYPE_ADAPTER)
+                .registerTypeAdapter(CrushedFile.class, CRUSHED_FILE_ADAPTER)
+                .registerTypeAdapter(MediaCrushFile.class, MEDIA_CRUSH_FILE_ADAPTER);
+    }
+
+    /**
+     * Read a file object from <b>in</b>
+     * @param in
+     *          The reader, positioned before the file object
+     * @param hash
+     *            The hash of the file, which the API sends as the key of the object rather than inside it. If null, the
+     *            hash is taken from the object if it has one.
+     * @return
+     *        The file, or null if the JSON value was null
+     * @throws IOException
+     *                    If the JSON could not be read
+     */
+    public static MediaCrushFile readFile(JsonReader in, String hash) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        FileStatus status = null;
+        double compression = 0;
+        String original = null, type = null;
+        CrushedFile[] files = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("compression")) {
+                if (in.peek() == JsonToken.NULL)
+                    in.nextNull();
+                else
+                    compression = in.nextDouble();
+            } else if (name.equals("original")) {
+                original = nextString(in);
+            } else if (name.equals("type")) {
+                type = nextString(in);
+            } else if (name.equals("status")) {
+                status = FILE_STATUS_ADAPTER.read(in);
+            } else if (name.equals("hash") && hash == null && in.peek() == JsonToken.STRING) {
+                hash = in.nextString();
+            } else if (name.equals("files") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                List<CrushedFile> list = new ArrayList<CrushedFile>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(CRUSHED_FILE_ADAPTER.read(in));
+                }
+                in.endArray();
+                files = list.toArray(new CrushedFile[list.size()]);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new MediaCrushFile(hash, status, compression, original, type, files);
+    }
+
+    /**
+     * Read the next file of an info list from <b>in</b>. Hashes that do not exist are skipped.
+     * @param in
+     *          The reader, inside the list object
+     * @return
+     *        The next file, or null once the end of the list object is reached, which is left for the caller to consume
+     * @throws IOException
+     *                    If the JSON could not be read, a file is invalid or the server returned 404
+     */
+    public static MediaCrushFile readListedFile(JsonReader in) throws IOException {
+        while (in.hasNext()) {
+            String hash = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            if (hash.equals("error")) {
+                String error = in.peek() == JsonToken.NUMBER || in.peek() == JsonToken.STRING ? in.nextString() : null;
+                if ("404".equals(error))
+                    throw new IOException("The server returned 404!");
+                if (error == null)
+                    in.skipValue();
+                continue;
+            }
+            try {
+                return readFile(in, hash);
+            } catch (IllegalStateException e) {
+                throw new IOException("The server returned an invalid file for \"" + hash + "\"", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the response of a status lookup from <b>in</b>. The status is sent next to the file, which is keyed by its
+     * hash.
+     * @param in
+     *          The reader, positioned before the response object
+     * @param hash
+     *            The hash of the file
+     * @return
+     *        The file with its status. A file that is still processing may not have any information yet.
+     * @throws IOException
+     *                    If the JSON could not be read
+     */
+    public static MediaCrushFile readFileStatus(JsonReader in, String hash) throws IOException {
+        FileStatus status = null;
+        MediaCrushFile file = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("status"))
+                status = FILE_STATUS_ADAPTER.read(in);
+            else if (name.equals(hash))
+                file = readFile(in, hash);
+            else
+                in.skipValue();
+        }
+        in.endObject();
+
+        if (file == null)
+            return newFile(hash, status);
+        file.setStatus(status);
+        return file;
+    }
+
+    /**
+     * Create a file whose information is not known, only its hash and status
+     * @param hash
+     *            The hash of the file
+     * @param status
+     *              The status of the file
+     * @return
+     *        The file
+     */
+    public static MediaCrushFile newFile(String hash, FileStatus status) {
+        return new MediaCrushFile(hash, status, 0, null, null, new CrushedFile[0]);
+    }
+
+    /**
+     * Set the hash of <b>file</b>
+     * @param file
+     *            The file
+     * @param hash
+     *            The hash of the file
+     */
+    public static void setHash(MediaCrushFile file, String hash) {
+        file.setHash(hash);
+    }
+
+    /**
+     * Set the status of <b>file</b>
+     * @param file
+     *            The file
+     * @param status
+     *              The status of the file
+     */
+    public static void setStatus(MediaCrushFile file, FileStatus status) {
+        file.setStatus(status);
+    }
+
+    /**
+     * Copy <b>file</b> with another status, leaving <b>file</b> as it is
+     * @param file
+     *            The file
+     * @param status
+     *              The status of the copy
+     * @return
+     *        The copy
+     */
+    public static MediaCrushFile withStatus(MediaCrushFile file, FileStatus status) {
+        return new MediaCrushFile(file.getHash(), status, file.getCompression(), file.getOriginal(), file.getType(),
+                file.getFiles());
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,93 @@
+package jcrush.system;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors the asynchronous methods of {@link jcrush.JCrushClient} run on when no executor is given.
+ */
+public class AsyncExecutors {
+    /**
+     * The number of threads used by the fallback executor when virtual threads are not available
+     */
+    public static final int FALLBACK_THREADS = 64;
+
+    private static volatile ExecutorService defaultExecutor;
+    private static volatile boolean virtual;
+
+    /**
+     * Get the default executor. On a runtime that provides virtual threads this starts one virtual thread per task,
+     * otherwise it is a pool of {@link AsyncExecutors#FALLBACK_THREADS} daemon threads.
+     * @return
+     *        The shared default executor
+     */
+    public static ExecutorService defaultExecutor() {
+        ExecutorService executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (AsyncExecutors.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = newVirtualThreadExecutor();
+                    virtual = executor != null;
+                    if (executor == null)
+                        executor = newPlatformThreadExecutor(FALLBACK_THREADS);
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Check whether the default executor runs tasks on virtual threads
+     * @return
+     *        true if the runtime provides virtual threads
+     */
+    public static boolean isVirtual() {
+        defaultExecutor();
+        return virtual;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task
+     * @return
+     *        The executor, or null if the runtime does not provide virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Throwable t) {
+            //Not available, or only available as a preview feature
+            return null;
+        }
+    }
+
+    /**
+     * Create a pool of daemon threads
+     * @param threads
+     *               The maximum number of threads
+     * @return
+     *        The executor
+     */
+    public static ExecutorService newPlatformThreadExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "JCrush-Async-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
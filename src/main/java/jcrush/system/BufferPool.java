@@ -0,0 +1,136 @@
+package jcrush.system;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of byte arrays in size classes, so that streaming to and from the server does not allocate a new buffer for
+ * every request. <br></br>
+ * Every buffer is a power of two between {@link BufferPool#MIN_SIZE} and {@link BufferPool#MAX_SIZE} bytes. Larger
+ * buffers are allocated and dropped like any other array. A class keeps at most a fixed number of free buffers, fewer
+ * for the larger classes, and a buffer released into a full class is left to the garbage collector. <br></br>
+ * Free buffers sit in a small array per class that threads take from and put into without locking. Nothing is kept
+ * per thread, so pooling works the same for virtual threads. <br></br>
+ * A buffer must not be used once it was released. This class is thread-safe.
+ */
+public final class BufferPool {
+    /**
+     * The size of the smallest buffer handed out
+     */
+    public static final int MIN_SIZE = 512;
+    /**
+     * The size of the largest buffer that is pooled
+     */
+    public static final int MAX_SIZE = 1 << 20;
+    /**
+     * The most bytes kept free in one size class, unless that is fewer than 4 buffers
+     */
+    public static final int MAX_RETAINED_PER_CLASS = 1 << 20;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final BufferPool SHARED = new BufferPool();
+
+    private final AtomicReferenceArray<byte[]>[] free;
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool() {
+        free = new AtomicReferenceArray[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            int size = MIN_SIZE << i;
+            //A power of two, so a slot can be picked with a mask
+            int slots = Integer.highestOneBit(Math.max(4, Math.min(64, MAX_RETAINED_PER_CLASS / size)));
+            free[i] = new AtomicReferenceArray<byte[]>(slots);
+        }
+    }
+
+    /**
+     * Get the pool shared by every client
+     * @return
+     *        The shared pool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Take a buffer of at least <b>size</b> bytes
+     * @param size
+     *            The smallest size needed
+     * @return
+     *        A buffer, whose content is undefined
+     */
+    public byte[] acquire(int size) {
+        int index = classOf(size);
+        if (index >= CLASSES) {
+            allocated.incrementAndGet();
+            return new byte[size];
+        }
+        AtomicReferenceArray<byte[]> slots = free[index];
+        int mask = slots.length() - 1;
+        int start = start();
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            byte[] buf = slots.get(slot);
+            if (buf != null && slots.compareAndSet(slot, buf, null)) {
+                reused.incrementAndGet();
+                return buf;
+            }
+        }
+        allocated.incrementAndGet();
+        return new byte[MIN_SIZE << index];
+    }
+
+    /**
+     * Give a buffer back to the pool. Buffers that were not taken from a pool are accepted if their size is one of
+     * the size classes, and dropped otherwise.
+     * @param buf
+     *           The buffer, or null
+     */
+    public void release(byte[] buf) {
+        if (buf == null || buf.length < MIN_SIZE || buf.length > MAX_SIZE || Integer.bitCount(buf.length) != 1)
+            return;
+        AtomicReferenceArray<byte[]> slots = free[classOf(buf.length)];
+        int mask = slots.length() - 1;
+        int start = start();
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, buf))
+                return;
+        }
+    }
+
+    /**
+     * Get the number of buffers this pool had to allocate
+     * @return
+     *        The number of buffers
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * Get the number of buffers that were handed out again instead of being allocated
+     * @return
+     *        The number of buffers
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    private static int classOf(int size) {
+        if (size <= MIN_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Spread threads over the slots so they rarely contend for the same one
+     */
+    private static int start() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) * 0x9E3779B9 >>> 16;
+    }
+}
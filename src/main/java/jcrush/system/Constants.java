@@ -18,4 +18,16 @@ public class Constants {
      * The divider used when uploading files
      */
     public static final String CONTENT_DIVIDER = "plsrespond";
+    /**
+     * The size of the buffer used when streaming data to or from the server
+     */
+    public static final int STREAM_BUFFER_SIZE = 8192;
+    /**
+     * The longest URL sent to the server. Longer lists of hashes are split into several requests.
+     */
+    public static final int MAX_URL_LENGTH = 2000;
+    /**
+     * The default maximum number of connections a client keeps open to the server
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 16;
 }
@@ -0,0 +1,196 @@
+package jcrush.system;
+
+import jcrush.model.FileType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells the {@link FileType} of some content from its first bytes, whatever its name says. <br></br>
+ * GIF, PNG, JPEG, MP4, Ogg, WebM and MP3 are recognized. An Ogg stream is {@link FileType#OGV} when its first packet
+ * is Theora and {@link FileType#OGG} otherwise. Every Matroska stream is taken as {@link FileType#WEBM}. <br></br>
+ * HEIC, AVIF, M4A and QuickTime files share the box layout of MP4, so an ISO base media file is only
+ * {@link FileType#MP4} when the brands of its ftyp box say so.
+ */
+public final class ContentSniffer {
+    /**
+     * The number of bytes needed to sniff any type
+     */
+    public static final int SNIFF_LENGTH = 64;
+
+    private static final byte[] GIF87A = ascii("GIF87a");
+    private static final byte[] GIF89A = ascii("GIF89a");
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+    private static final byte[] FTYP = ascii("ftyp");
+    private static final byte[] OGGS = ascii("OggS");
+    private static final byte[] THEORA = { (byte) 0x80, 't', 'h', 'e', 'o', 'r', 'a' };
+    private static final byte[] EBML = { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 };
+    private static final byte[] ID3 = ascii("ID3");
+    //Brands of MP4 video, and brands of other ISO base media files whose compatible brands may still list MP4 ones
+    private static final Set<String> MP4_BRANDS = new HashSet<String>(Arrays.asList(
+            "isom", "iso2", "iso3", "iso4", "iso5", "iso6", "mp41", "mp42", "mp71", "avc1", "dash", "M4V ", "MSNV"));
+    private static final Set<String> OTHER_BRANDS = new HashSet<String>(Arrays.asList(
+            "M4A ", "M4B ", "M4P ", "qt  ", "heic", "heix", "heim", "heis", "hevc", "hevx", "hevm", "hevs", "mif1",
+            "msf1", "avif", "avis", "crx ", "jp2 ", "3gp4", "3gp5", "3gp6", "3g2a"));
+
+    private ContentSniffer() { }
+
+    /**
+     * Tell the type of content from its first bytes
+     * @param head
+     *            The first bytes of the content
+     * @param length
+     *              The number of bytes in <b>head</b>
+     * @return
+     *        The type, or {@link FileType#UNKNOWN} if it is none of the recognized types
+     */
+    public static FileType sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, GIF87A) || startsWith(head, length, 0, GIF89A))
+            return FileType.GIF;
+        if (startsWith(head, length, 0, PNG))
+            return FileType.PNG;
+        if (startsWith(head, length, 0, JPEG))
+            return FileType.JPEG;
+        if (startsWith(head, length, 4, FTYP))
+            return isMp4(head, length) ? FileType.MP4 : FileType.UNKNOWN;
+        if (startsWith(head, length, 0, OGGS))
+            return isTheora(head, length) ? FileType.OGV : FileType.OGG;
+        if (startsWith(head, length, 0, EBML))
+            return FileType.WEBM;
+        if (startsWith(head, length, 0, ID3) || isMpegAudioFrame(head, length))
+            return FileType.MP3;
+        return FileType.UNKNOWN;
+    }
+
+    /**
+     * Tell the type of <b>file</b> from its first bytes
+     * @param file
+     *            The file
+     * @return
+     *        The type, or {@link FileType#UNKNOWN} if it is none of the recognized types
+     * @throws IOException
+     *                    If the file cannot be read
+     */
+    public static FileType sniff(File file) throws IOException {
+        byte[] head = new byte[SNIFF_LENGTH];
+        return sniff(head, readHead(file, head));
+    }
+
+    /**
+     * Read the first bytes of <b>file</b> into <b>head</b>
+     * @param file
+     *            The file
+     * @param head
+     *            The array to fill
+     * @return
+     *        The number of bytes read, which is less than the length of <b>head</b> only for a shorter file
+     * @throws IOException
+     *                    If the file cannot be read
+     */
+    public static int readHead(File file, byte[] head) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readHead(in, head);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the first bytes of <b>in</b> into <b>head</b>, stopping early only at the end of the stream
+     * @param in
+     *          The stream
+     * @param head
+     *            The array to fill
+     * @return
+     *        The number of bytes read
+     * @throws IOException
+     *                    If reading fails
+     */
+    public static int readHead(InputStream in, byte[] head) throws IOException {
+        int length = 0;
+        while (length < head.length) {
+            int read = in.read(head, length, head.length - length);
+            if (read == -1)
+                break;
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * The ftyp box holds its size, a major brand, a minor version and then the compatible brands. A major brand that
+     * is not known either way is MP4 if one of the compatible brands is.
+     */
+    private static boolean isMp4(byte[] head, int length) {
+        if (length < 12)
+            return false;
+        String major = brand(head, 8);
+        if (MP4_BRANDS.contains(major))
+            return true;
+        if (OTHER_BRANDS.contains(major))
+            return false;
+        long size = ((head[0] & 0xFFL) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+        int end = (int) Math.min(size, length);
+        for (int offset = 16; offset + 4 <= end; offset += 4) {
+            if (MP4_BRANDS.contains(brand(head, offset)))
+                return true;
+        }
+        return false;
+    }
+
+    private static String brand(byte[] head, int offset) {
+        char[] brand = new char[4];
+        for (int i = 0; i < 4; i++) {
+            brand[i] = (char) (head[offset + i] & 0xFF);
+        }
+        return new String(brand);
+    }
+
+    /**
+     * The first page of an Ogg stream holds the first packet right after the segment table
+     */
+    private static boolean isTheora(byte[] head, int length) {
+        if (length < 27)
+            return false;
+        int packet = 27 + (head[26] & 0xFF);
+        return startsWith(head, length, packet, THEORA);
+    }
+
+    /**
+     * A frame sync of 11 set bits, followed by a header that is not reserved
+     */
+    private static boolean isMpegAudioFrame(byte[] head, int length) {
+        if (length < 3 || (head[0] & 0xFF) != 0xFF || (head[1] & 0xE0) != 0xE0)
+            return false;
+        int version = (head[1] >> 3) & 0x03;
+        int layer = (head[1] >> 1) & 0x03;
+        int bitrate = (head[2] >> 4) & 0x0F;
+        int sampleRate = (head[2] >> 2) & 0x03;
+        return version != 1 && layer != 0 && bitrate != 0x0F && sampleRate != 0x03;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, byte[] magic) {
+        if (length < offset + magic.length)
+            return false;
+        for (int i = 0; i < magic.length; i++) {
+            if (head[offset + i] != magic[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
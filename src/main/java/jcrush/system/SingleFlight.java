@@ -0,0 +1,126 @@
+package jcrush.system;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jcrush.system.Utils.join;
+
+/**
+ * Coalesces concurrent calls for the same key. While a call for a key is in flight, every other caller for that key
+ * waits for and shares its result instead of making the call again. Blocking and asynchronous callers share the
+ * same in-flight calls. The future of an in-flight call is never handed out: every asynchronous caller gets a future
+ * of its own, so completing or cancelling it does not change the result of the other callers.
+ * @param <K>
+ *           The type of the key
+ * @param <V>
+ *           The type of the result
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Make the call for <b>key</b> on this thread, or wait for the call already in flight for it.
+     * @param key
+     *           The key of the call
+     * @param call
+     *            The call to make
+     * @return
+     *        The result of the call
+     * @throws IOException
+     *                    If the call threw an exception
+     */
+    public V execute(K key, Callable<V> call) throws IOException {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return join(existing);
+        }
+        executed.incrementAndGet();
+        run(key, mine, call);
+        return join(mine);
+    }
+
+    /**
+     * Make the call for <b>key</b> on <b>executor</b>, or attach to the call already in flight for it.
+     * @param key
+     *           The key of the call
+     * @param call
+     *            The call to make
+     * @param executor
+     *                The executor to make the call on
+     * @return
+     *        A future of this caller's own that completes with the result of the call
+     */
+    public CompletableFuture<V> executeAsync(final K key, final Callable<V> call, Executor executor) {
+        final CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.copy();
+        }
+        executed.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SingleFlight.this.run(key, mine, call);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine.copy();
+    }
+
+    private void run(K key, CompletableFuture<V> future, Callable<V> call) {
+        V value = null;
+        Throwable failure = null;
+        try {
+            value = call.call();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        //Remove first, so callers that arrive from now on start a new call
+        inFlight.remove(key, future);
+        if (failure == null)
+            future.complete(value);
+        else
+            future.completeExceptionally(failure);
+    }
+
+    /**
+     * Get the number of calls currently in flight
+     * @return
+     *        The number of calls in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Get the number of calls that were actually made
+     * @return
+     *        The number of calls made
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * Get the number of callers that shared a call already in flight instead of making their own
+     * @return
+     *        The number of coalesced callers
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
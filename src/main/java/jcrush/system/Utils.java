@@ -1,76 +1,169 @@
 package jcrush.system;
 
-import jcrush.model.CrushedFile;
 import jcrush.model.FileStatus;
 import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
 
 import javax.imageio.ImageIO;
 import java.io.*;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Utils {
+    /**
+     * @deprecated Use {@link ModelBinding#setHash(MediaCrushFile, String)}, which does not use reflection
+     */
+    @Deprecated
     public static void setHash(MediaCrushFile file, String hash) throws NoSuchFieldException, IllegalAccessException {
-        Field f = file.getClass().getDeclaredField("hash");
-        f.setAccessible(true);
-        f.set(file, hash);
+        ModelBinding.setHash(file, hash);
     }
 
+    /**
+     * @deprecated Use {@link ModelBinding#setStatus(MediaCrushFile, FileStatus)}, which does not use reflection
+     */
+    @Deprecated
     public static void setStatus(MediaCrushFile file, FileStatus status) throws NoSuchFieldException, IllegalAccessException {
-        Field f = file.getClass().getDeclaredField("status");
-        f.setAccessible(true);
-        f.set(file, status);
+        ModelBinding.setStatus(file, status);
     }
 
-    //oh sweet jesus
+    /**
+     * @deprecated Decode the JSON with {@link ModelBinding#GSON} instead of building a map first
+     */
+    @Deprecated
     public static MediaCrushFile convertMapToFile(Map map) throws IllegalAccessException, InstantiationException, NoSuchMethodException, InvocationTargetException, NoSuchFieldException {
-        Constructor<?> _construct = MediaCrushFile.class.getDeclaredConstructors()[0];
-        _construct.setAccessible(true);
-        MediaCrushFile file = (MediaCrushFile) _construct.newInstance();
-        for (Object key : map.keySet()) {
-            if (key.equals("files")) {
-                ArrayList<Map> files = (ArrayList<Map>) map.get(key);
-                ArrayList<CrushedFile> crushedFiles = new ArrayList<CrushedFile>();
-                for (Map m : files) {
-                    CrushedFile c = new CrushedFile((String)m.get("file"), (String)m.get("type"));
-                    crushedFiles.add(c);
-                }
-                Field f = MediaCrushFile.class.getDeclaredField("files");
-                f.setAccessible(true);
-                f.set(file, crushedFiles.toArray(new CrushedFile[crushedFiles.size()]));
-            } else {
-                try {
-                    Field f = MediaCrushFile.class.getDeclaredField(key.toString());
-                    f.setAccessible(true);
-                    f.set(file, map.get(key));
-                } catch (NoSuchFieldException ignored) { }
+        return ModelBinding.GSON.fromJson(ModelBinding.GSON.toJsonTree(map), MediaCrushFile.class);
+    }
+
+    /**
+     * Copy <b>input</b> to <b>output</b> through a buffer from the shared {@link BufferPool}
+     * @param input
+     *             The stream to read to the end
+     * @param output
+     *              The stream to write to, which is flushed but not closed
+     * @param bufferSize
+     *                  The smallest size of the buffer
+     * @throws IOException
+     *                    If either stream failed
+     */
+    public static void copy(InputStream input, OutputStream output, int bufferSize) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        byte[] buf = pool.acquire(bufferSize);
+        try {
+            int bytesRead = input.read(buf);
+            while (bytesRead != -1) {
+                output.write(buf, 0, bytesRead);
+                bytesRead = input.read(buf);
             }
+            output.flush();
+        } finally {
+            pool.release(buf);
         }
+    }
 
-        return file;
+    /**
+     * Wait for <b>future</b> to complete and rethrow the exception it failed with
+     * @param future
+     *              The future to wait for
+     * @return
+     *        The result of the future
+     * @throws IOException
+     *                    If the future failed with an {@link IOException}, or with a checked exception, which is wrapped
+     */
+    public static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
     }
 
-    public static void copy(InputStream input, OutputStream output, int bufferSize) throws IOException {
-        byte[] buf = new byte[bufferSize];
-        int bytesRead = input.read(buf);
-        while (bytesRead != -1) {
-            output.write(buf, 0, bytesRead);
-            bytesRead = input.read(buf);
+    /**
+     * Create the digest MediaCrush derives its hashes from
+     * @return
+     *        A new MD5 {@link MessageDigest}
+     */
+    public static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by this runtime!", e);
+        }
+    }
+
+    /**
+     * Turn the digest of some content into the hash MediaCrush gives that content: the first 12 characters of the URL
+     * safe base64 of its MD5. This completes <b>digest</b>.
+     * @param digest
+     *              A digest created with {@link Utils#newContentDigest()} that was given all the content
+     * @return
+     *        The MediaCrush hash of the content
+     */
+    public static String toHash(MessageDigest digest) {
+        return Base64.getUrlEncoder().encodeToString(digest.digest()).substring(0, 12);
+    }
+
+    /**
+     * Compute the hash MediaCrush gives the content of <b>file</b>, without uploading it
+     * @param file
+     *            The file to hash
+     * @return
+     *        The MediaCrush hash of the file
+     * @throws IOException
+     *                    If the file could not be read
+     */
+    public static String computeHash(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return computeHash(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Compute the hash MediaCrush gives the content of <b>input</b>, without uploading it. <b>input</b> is read to the
+     * end but not closed.
+     * @param input
+     *             The content to hash
+     * @return
+     *        The MediaCrush hash of the content
+     * @throws IOException
+     *                    If the content could not be read
+     */
+    public static String computeHash(InputStream input) throws IOException {
+        MessageDigest digest = newContentDigest();
+        BufferPool pool = BufferPool.shared();
+        byte[] buf = pool.acquire(Constants.STREAM_BUFFER_SIZE);
+        try {
+            int bytesRead;
+            while ((bytesRead = input.read(buf)) != -1) {
+                digest.update(buf, 0, bytesRead);
+            }
+        } finally {
+            pool.release(buf);
         }
-        output.flush();
+        return toHash(digest);
     }
 
     public static String toContentType(File file) {
         String fName = file.getName();
-        String[] parts = fName.split("\\.");
-        String ext = parts[parts.length - 1].toLowerCase();
+        String ext = fName.substring(fName.lastIndexOf('.') + 1).toLowerCase();
 
         if (ext.equals("png") || ext.equals("jpg") || ext.equals("jpeg") || ext.equals("gif"))
             return "image/" + ext;
-        else if (ext.equals("mp4") || ext.equals("ogv"))
+        else if (ext.equals("mp4") || ext.equals("ogv") || ext.equals("webm"))
             return "video/" + ext;
         else if (ext.equals("mp3") || ext.equals("ogg"))
             return "audio/" + ext;
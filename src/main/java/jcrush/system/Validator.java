@@ -2,8 +2,10 @@ package jcrush.system;
 
 import java.io.IOException;
 import java.security.InvalidParameterException;
+import java.util.regex.Pattern;
 
 public class Validator {
+    private static final Pattern ERROR_404 = Pattern.compile("\"error\"\\s*:\\s*\"?404");
 
     public static void validateNotNull(Object value, String name) throws InvalidParameterException {
         if (value == null)
@@ -11,7 +13,7 @@ public class Validator {
     }
 
     public static void validateNot404(String json) throws IOException {
-        if (json.contains("404"))
+        if (ERROR_404.matcher(json).find())
             throw new IOException("The server returned 404!");
     }
 }
@@ -0,0 +1,28 @@
+package jcrush.system.exceptions;
+
+/**
+ * Thrown when the server answered 409 because the file was already uploaded
+ */
+public class DuplicateUploadException extends FileUploadFailedException {
+    private static final long serialVersionUID = 1L;
+    private final String hash;
+
+    public DuplicateUploadException(String message, String hash, Exception cause) {
+        super(message, cause);
+        this.hash = hash;
+    }
+
+    public DuplicateUploadException(String message, String hash) {
+        super(message);
+        this.hash = hash;
+    }
+
+    /**
+     * Get the hash of the file that was already uploaded
+     * @return
+     *        The hash, or null if the content was not hashed locally
+     */
+    public String getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,17 @@
+package jcrush.system.exceptions;
+
+/**
+ * Thrown when the server answered 420, or when a {@link jcrush.io.RateLimiter} failing fast had no token for the
+ * request
+ */
+public class RateLimitedException extends FileUploadFailedException {
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitedException(String message, Exception cause) {
+        super(message, cause);
+    }
+
+    public RateLimitedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+package jcrush.system.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answered 502, 503 or 504, or when every server of a {@link jcrush.io.ServerGroup} is ejected.
+ * These are usually transient, so a request that failed with this may be sent again.
+ */
+public class ServerUnavailableException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final int responseCode;
+
+    public ServerUnavailableException(String message, int responseCode) {
+        super(message);
+        this.responseCode = responseCode;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+}
@@ -0,0 +1,12 @@
+package jcrush.system.exceptions;
+
+/**
+ * Thrown when a {@link jcrush.UploadPolicy} refused a file before any of it was sent
+ */
+public class UploadRejectedException extends FileUploadFailedException {
+    private static final long serialVersionUID = 1L;
+
+    public UploadRejectedException(String message) {
+        super(message);
+    }
+}
@@ -5,11 +5,33 @@ import java.io.IOException;
 import java.net.URL;
 
 import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubServer;
 
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 public class APITest {
     private static final String TEST_HASH = "CPvuR5lRhmS0";
+    private static StubServer stub;
+    private static String previousApiUrl;
+
+    @BeforeClass
+    public static void startStub() throws IOException {
+        stub = new StubServer();
+        stub.seed(TEST_HASH, "image/gif");
+        stub.seed("tVWMM_ziA3nm", "image/gif");
+        //Someone else already uploaded it, so uploading it again fails with 409
+        stub.seed(new File("src/test/failedTest.gif"));
+        previousApiUrl = JCrush.getApiURL();
+        JCrush.changeApiURL(stub.getApiUrl());
+    }
+
+    @AfterClass
+    public static void stopStub() {
+        JCrush.changeApiURL(previousApiUrl);
+        stub.close();
+    }
 
     @Test(expected = IOException.class)
     public void failedUploadFileTest() throws IOException {
@@ -0,0 +1,83 @@
+package jcrush;
+
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkUploaderTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void directoryIsUploadedWithAResultPerFile() throws Exception {
+        File root = folder.newFolder("archive");
+        File nested = new File(root, "nested");
+        assertTrue(nested.mkdir());
+        for (int i = 0; i < 10; i++) {
+            write(new File(i % 2 == 0 ? root : nested, "file" + i + ".gif"), "content " + i);
+        }
+        File duplicate = write(new File(nested, "again.png"), "already there");
+        write(new File(root, "notes.txt"), "not media");
+
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed(duplicate);
+        final List<UploadResult> results = Collections.synchronizedList(new ArrayList<UploadResult>());
+        BulkUploader uploader = new BulkUploader(client);
+        uploader.setParallelism(3);
+        uploader.setListener(new BulkUploader.Listener() {
+            @Override
+            public void onResult(UploadResult result) {
+                results.add(result);
+            }
+        });
+
+        BulkUploadReport report = uploader.uploadDirectory(root);
+        assertEquals(10, report.getUploadedCount());
+        assertEquals(1, report.getDuplicateCount());
+        assertEquals(1, report.getRejectedCount());
+        assertEquals(0, report.getFailedCount());
+        assertEquals(12, results.size());
+        assertEquals(10, stub.getRequestCount("upload/file") - 1);
+
+        for (UploadResult result : results) {
+            if (result.getOutcome() == UploadResult.Outcome.UPLOADED)
+                assertNotNull(result.getHash());
+        }
+
+        //While deduplicating, duplicates are found without uploading them and their hash is known
+        client.setDeduplicating(true);
+        results.clear();
+        report = uploader.uploadDirectory(root);
+        assertEquals(11, report.getDuplicateCount());
+        assertEquals(11, stub.getRequestCount("upload/file"));
+        for (UploadResult result : results) {
+            if (result.getOutcome() == UploadResult.Outcome.DUPLICATE)
+                assertNotNull(result.getHash());
+        }
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,156 @@
+package jcrush;
+
+import jcrush.model.CrushedFile;
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class DownloaderTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyVariantIsDownloadedInSegments() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        Downloader downloader = new Downloader(client, 4);
+        try {
+            stub.seed("CPvuR5lRhmS0", "image/gif");
+            byte[] mp4 = content(1000000, 1);
+            byte[] gif = content(1000, 2);
+            stub.putContent("/CPvuR5lRhmS0.mp4", mp4);
+            stub.putContent("/CPvuR5lRhmS0.gif", gif);
+            downloader.setSegmentSize(100000);
+
+            MediaCrushFile file = client.getFileInfo("CPvuR5lRhmS0");
+            File directory = folder.newFolder("downloads");
+            Map<CrushedFile, File> files = downloader.download(file, directory);
+
+            assertEquals(2, files.size());
+            assertArrayEquals(mp4, Files.readAllBytes(new File(directory, "CPvuR5lRhmS0.mp4").toPath()));
+            assertArrayEquals(gif, Files.readAllBytes(new File(directory, "CPvuR5lRhmS0.gif").toPath()));
+            assertEquals(11, downloader.getSegmentCount());
+            assertEquals(2, directory.list().length);
+
+            //A complete file is not downloaded again
+            downloader.download(file, directory);
+            assertEquals(11, downloader.getSegmentCount());
+        } finally {
+            downloader.close();
+        }
+    }
+
+    @Test
+    public void partialDownloadsAreResumed() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        Downloader downloader = new Downloader(client);
+        try {
+            byte[] mp4 = content(250000, 3);
+            stub.putContent("/resume.mp4", mp4);
+            downloader.setSegmentSize(100000);
+            File target = new File(folder.getRoot(), "resume.mp4");
+
+            //The first segment is complete and the second one half done
+            write(new File(target.getPath() + ".part-0-99999"), Arrays.copyOfRange(mp4, 0, 100000));
+            write(new File(target.getPath() + ".part-100000-199999"), Arrays.copyOfRange(mp4, 100000, 150000));
+
+            downloader.download(new CrushedFile("/resume.mp4", "video/mp4"), target);
+            assertArrayEquals(mp4, Files.readAllBytes(target.toPath()));
+            assertEquals(150000, downloader.getResumedBytes());
+            assertEquals(100000, downloader.getDownloadedBytes());
+            assertEquals(1, folder.getRoot().list().length);
+
+            //Without ranges the file is downloaded whole
+            stub.setRangeSupport(false);
+            File whole = new File(folder.getRoot(), "whole.mp4");
+            downloader.download(new CrushedFile("/resume.mp4", "video/mp4"), whole);
+            assertArrayEquals(mp4, Files.readAllBytes(whole.toPath()));
+        } finally {
+            downloader.close();
+        }
+    }
+
+    @Test
+    public void partsLongerThanTheirRangeAreCut() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        Downloader downloader = new Downloader(client);
+        try {
+            byte[] mp4 = content(250000, 4);
+            stub.putContent("/long.mp4", mp4);
+            downloader.setSegmentSize(100000);
+            File target = new File(folder.getRoot(), "long.mp4");
+
+            byte[] tooLong = Arrays.copyOfRange(mp4, 100000, 200050);
+            write(new File(target.getPath() + ".part-100000-199999"), tooLong);
+
+            downloader.download(new CrushedFile("/long.mp4", "video/mp4"), target);
+            assertArrayEquals(mp4, Files.readAllBytes(target.toPath()));
+            assertEquals(100000, downloader.getResumedBytes());
+            assertEquals(150000, downloader.getDownloadedBytes());
+            assertEquals(1, folder.getRoot().list().length);
+        } finally {
+            downloader.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void segmentsDoNotWaitForThreadsOfASmallExecutor() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        client.setExecutor(executor);
+        Downloader downloader = new Downloader(client);
+        try {
+            byte[] first = content(500000, 4);
+            byte[] second = content(500000, 5);
+            stub.putContent("/first.mp4", first);
+            stub.putContent("/second.mp4", second);
+            downloader.setSegmentSize(100000);
+
+            File directory = folder.newFolder("small");
+            downloader.download(Arrays.asList(new CrushedFile("/first.mp4", "video/mp4"),
+                    new CrushedFile("/second.mp4", "video/mp4")), directory);
+
+            assertArrayEquals(first, Files.readAllBytes(new File(directory, "first.mp4").toPath()));
+            assertArrayEquals(second, Files.readAllBytes(new File(directory, "second.mp4").toPath()));
+            assertEquals(10, downloader.getSegmentCount());
+        } finally {
+            downloader.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] content(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static void write(File file, byte[] content) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+}
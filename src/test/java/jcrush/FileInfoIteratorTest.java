@@ -0,0 +1,128 @@
+package jcrush;
+
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static jcrush.system.Constants.MAX_URL_LENGTH;
+
+import static org.junit.Assert.*;
+
+public class FileInfoIteratorTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void everyChunkIsReadAndMissingFilesAreSkipped() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        String[] hashes = new String[400];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            if (i % 4 != 0)
+                stub.seed(hashes[i], "image/gif");
+        }
+
+        Set<String> found = new HashSet<String>();
+        FileInfoIterator files = client.iterateFileInfos(hashes);
+        try {
+            while (files.hasNext()) {
+                MediaCrushFile file = files.next();
+                assertTrue(found.add(file.getHash()));
+                assertFalse(file.getHash() + " does not exist", Integer.parseInt(file.getHash().substring(4)) % 4 == 0);
+            }
+        } finally {
+            files.close();
+        }
+        assertEquals(300, found.size());
+        assertTrue(stub.getRequestCount("list") > 2);
+        assertEquals(0, client.getConnectionPool().getActiveCount());
+    }
+
+    @Test
+    public void notFoundIsThrown() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed("CPvuR5lRhmS0", "image/gif");
+        stub.setFaultRate(404, 1);
+
+        FileInfoIterator files = client.iterateFileInfos("CPvuR5lRhmS0");
+        try {
+            files.hasNext();
+            fail("The server returned 404");
+        } catch (UncheckedIOException expected) {
+            assertTrue(expected.getMessage().contains("404"));
+        } finally {
+            files.close();
+        }
+        assertEquals(0, client.getConnectionPool().getActiveCount());
+    }
+
+    @Test
+    public void closingInTheMiddleOfAResponseReleasesTheConnection() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        String[] hashes = new String[400];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        FileInfoIterator files = client.iterateFileInfos(hashes);
+        assertEquals(hashes[0], files.next().getHash());
+        assertEquals(1, client.getConnectionPool().getActiveCount());
+        files.close();
+        assertEquals(0, client.getConnectionPool().getActiveCount());
+        assertFalse(files.hasNext());
+        assertEquals(1, stub.getRequestCount("list"));
+    }
+
+    @Test
+    public void listsAreSplitAtTheUrlLimit() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        int available = MAX_URL_LENGTH - (client.getApiURL() + "info?list=").length();
+
+        assertEquals(available, String.join(",", listOfLength(available)).length());
+        drain(client.iterateFileInfos(listOfLength(available)));
+        assertEquals(1, stub.getRequestCount("list"));
+        drain(client.iterateFileInfos(listOfLength(available + 1)));
+        assertEquals(3, stub.getRequestCount("list"));
+    }
+
+    /**
+     * Build distinct hashes whose comma separated list is exactly <b>length</b> characters long
+     */
+    private static String[] listOfLength(int length) {
+        List<String> hashes = new ArrayList<String>();
+        int used = 0;
+        while (length - used > 2 * 13) {
+            hashes.add(String.format("hash%08d", hashes.size()));
+            used += hashes.size() == 1 ? 12 : 13;
+        }
+        StringBuilder last = new StringBuilder("last");
+        while (used + 1 + last.length() < length) {
+            last.append('x');
+        }
+        hashes.add(last.toString());
+        return hashes.toArray(new String[hashes.size()]);
+    }
+
+    private static void drain(FileInfoIterator files) {
+        try {
+            while (files.hasNext()) {
+                files.next();
+            }
+        } finally {
+            files.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package jcrush;
+
+import jcrush.model.FileStatus;
+import jcrush.model.FileType;
+import jcrush.io.RetryPolicy;
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class StatusPollerTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void oneCallerGivingUpDoesNotAffectTheOthers() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        StatusPoller poller = new StatusPoller(client, 20, TimeUnit.MILLISECONDS);
+        try {
+            poller.setInitialInterval(50, TimeUnit.MILLISECONDS);
+            stub.setProcessing(500, TimeUnit.MILLISECONDS, FileStatus.DONE);
+            String hash = client.uploadFile(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 3, FileType.GIF, "test.gif");
+
+            CompletableFuture<MediaCrushFile> patient = poller.waitForStatus(hash);
+            CompletableFuture<MediaCrushFile> impatient = poller.waitForStatus(hash, 50, TimeUnit.MILLISECONDS);
+            CompletableFuture<MediaCrushFile> cancelled = poller.waitForStatus(hash);
+            assertNotSame(patient, impatient);
+            cancelled.cancel(false);
+
+            try {
+                impatient.get(5, TimeUnit.SECONDS);
+                fail("The impatient caller should have timed out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertEquals(FileStatus.DONE, patient.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(0, poller.getWatchedCount());
+        } finally {
+            poller.close();
+        }
+    }
+
+    @Test
+    public void hashIsDroppedOnceNobodyWaits() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        StatusPoller poller = new StatusPoller(client, 20, TimeUnit.MILLISECONDS);
+        try {
+            stub.setProcessing(1, TimeUnit.HOURS, FileStatus.DONE);
+            String hash = client.uploadFile(new ByteArrayInputStream(new byte[] { 4, 5, 6 }), 3, FileType.GIF, "test.gif");
+
+            poller.waitForStatus(hash).cancel(false);
+            poller.waitForStatus(hash, 10, TimeUnit.MILLISECONDS);
+            Thread.sleep(100);
+            assertEquals(0, poller.getWatchedCount());
+        } finally {
+            poller.close();
+        }
+    }
+
+    @Test
+    public void statusesMissingFromTheListAreLookedUpOnTheirOwn() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        String[] hashes = new String[30];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        MediaCrushFile[] files = client.getFileStatuses(hashes);
+        assertEquals(FileStatus.DONE, files[29].getStatus());
+        assertEquals(1, stub.getRequestCount("list"));
+        assertEquals(30, stub.getRequestCount("status"));
+
+        stub.setStatusInInfoList(true);
+        files = client.getFileStatuses(hashes);
+        assertEquals(FileStatus.DONE, files[0].getStatus());
+        assertEquals(2, stub.getRequestCount("list"));
+        assertEquals(30, stub.getRequestCount("status"));
+
+        //The poller goes through the same lookups
+        stub.setStatusInInfoList(false);
+        StatusPoller poller = new StatusPoller(client, 20, TimeUnit.MILLISECONDS);
+        try {
+            poller.setInitialInterval(20, TimeUnit.MILLISECONDS);
+            stub.setProcessing(200, TimeUnit.MILLISECONDS, FileStatus.DONE);
+            String hash = client.uploadFile(new ByteArrayInputStream(new byte[] { 7, 8, 9 }), 3, FileType.GIF, "test.gif");
+            assertEquals(FileStatus.DONE, poller.waitForStatus(hash).get(5, TimeUnit.SECONDS).getStatus());
+            assertTrue(stub.getRequestCount("status") > 30);
+        } finally {
+            poller.close();
+        }
+    }
+
+    @Test
+    public void aFailingBatchOnlyLosesItsOwnFiles() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        client.setRetryPolicy(new RetryPolicy(1));
+        String[] hashes = new String[400];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        stub.setFailing(hashes[399], true);
+        MediaCrushFile[] files = client.getFiles(hashes);
+        assertTrue(stub.getRequestCount("list") > 2);
+        assertEquals(FileStatus.DONE, files[0].getStatus());
+        assertNull(files[399]);
+        int found = 0;
+        for (MediaCrushFile file : files) {
+            if (file != null)
+                found++;
+        }
+        assertTrue(found >= 200 && found < 399);
+
+        //A server failing every request leaves every file null instead of throwing
+        stub.setFailing(hashes[399], false);
+        stub.setFaultRate(503, 1);
+        files = client.getFiles(hashes[4], hashes[5]);
+        assertEquals(2, files.length);
+        assertNull(files[0]);
+        assertNull(files[1]);
+    }
+}
@@ -0,0 +1,82 @@
+package jcrush;
+
+import jcrush.model.FileType;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import jcrush.system.Utils;
+import jcrush.system.exceptions.UploadRejectedException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class UploadPolicyTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void typeIsSniffedFromTheContent() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        client.setUploadPolicy(new UploadPolicy());
+
+        //A GIF saved as .png is uploaded as a GIF
+        String hash = client.uploadFile(write("photo.png", "GIF89a a gif"));
+        assertEquals(FileType.GIF, client.getFileInfo(hash).getOriginalFile().getFileType());
+
+        //The sniffed bytes of a stream are still sent
+        byte[] png = "\u0089PNG\r\n\u001a\n a png".getBytes("ISO-8859-1");
+        hash = client.uploadFile(new ByteArrayInputStream(png), png.length, FileType.UNKNOWN, "upload");
+        assertEquals(Utils.computeHash(new ByteArrayInputStream(png)), hash);
+        assertEquals(FileType.PNG, client.getFileInfo(hash).getOriginalFile().getFileType());
+        assertEquals(2, stub.getRequestCount("upload/file"));
+    }
+
+    @Test
+    public void refusedFilesAreNotSent() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        UploadPolicy policy = new UploadPolicy();
+        policy.setMaxSize(16);
+        policy.setAllowedTypes(FileType.GIF, FileType.JPG);
+        client.setUploadPolicy(policy);
+
+        assertRejected(client, write("large.gif", "GIF89a more than sixteen bytes"));
+        assertRejected(client, write("image.png", "\u0089PNG\r\n\u001a\n"));
+        assertRejected(client, write("notes.txt", "not media"));
+        //JPG allows JPEG
+        client.uploadFile(write("photo.jpg", "\u00ff\u00d8\u00ff\u00e0"));
+
+        policy.setRejectingMismatches(true);
+        assertRejected(client, write("mislabelled.jpg", "GIF89a"));
+        assertEquals(1, stub.getRequestCount("upload/file"));
+    }
+
+    private static void assertRejected(JCrushClient client, File file) throws IOException {
+        try {
+            client.uploadFile(file);
+            fail(file + " was uploaded");
+        } catch (UploadRejectedException expected) {
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,54 @@
+package jcrush.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExistenceFilterTest {
+
+    @Test
+    public void missingHashesAreRememberedUntilTheyExpire() throws Exception {
+        ExistenceFilter filter = new ExistenceFilter(10, 1, TimeUnit.HOURS);
+        assertFalse(filter.isKnownMissing("aaaaa"));
+        filter.recordLookup("aaaaa", false);
+        assertTrue(filter.isKnownMissing("aaaaa"));
+
+        filter.setNegativeTtl(0, TimeUnit.MILLISECONDS);
+        filter.recordMissing("bbbbb");
+        assertFalse(filter.isKnownMissing("bbbbb"));
+
+        filter.recordExists("aaaaa");
+        assertFalse(filter.isKnownMissing("aaaaa"));
+        assertEquals(1, filter.getNegativeCacheHitCount());
+    }
+
+    @Test
+    public void bloomFilterAnswersUnseenHashes() {
+        ExistenceFilter filter = new ExistenceFilter(10, 1, TimeUnit.HOURS);
+        filter.enableBloomFilter(1000, 0.01);
+        filter.seed(Arrays.asList("CPvuR5lRhmS0", "tVWMM_ziA3nm"));
+
+        assertFalse(filter.isKnownMissing("CPvuR5lRhmS0"));
+        assertFalse(filter.isKnownMissing("tVWMM_ziA3nm"));
+        assertTrue(filter.isKnownMissing("aaaaa"));
+        assertEquals(1, filter.getBloomFilterMissCount());
+    }
+
+    @Test
+    public void bloomFilterFalsePositiveRateStaysNearTarget() {
+        BloomFilter bloom = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            bloom.put("seen" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(bloom.mightContain("seen" + i));
+            if (bloom.mightContain("unseen" + i))
+                falsePositives++;
+        }
+        assertTrue("False positive rate was " + falsePositives / 10000.0, falsePositives < 300);
+    }
+}
@@ -0,0 +1,67 @@
+package jcrush.cache;
+
+import jcrush.model.FileStatus;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetadataCacheTest {
+    private static MediaCrushFile file(String hash, FileStatus status) throws Exception {
+        MediaCrushFile file = ModelBinding.GSON.fromJson("{\"compression\":1.0,\"original\":\"/" + hash + ".gif\"," +
+                "\"type\":\"image/gif\",\"files\":[]}", MediaCrushFile.class);
+        ModelBinding.setHash(file, hash);
+        if (status != null)
+            ModelBinding.setStatus(file, status);
+        return file;
+    }
+
+    @Test
+    public void doneFilesAreKeptAndProcessingFilesExpire() throws Exception {
+        MetadataCache cache = new MetadataCache(10);
+        cache.setProcessingTtl(0, TimeUnit.MILLISECONDS);
+        cache.put(file("done", FileStatus.DONE));
+        cache.put(file("processing", FileStatus.PROCESSING));
+
+        assertNotNull(cache.get("done", true));
+        assertNull(cache.get("processing", true));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void unknownStatusOnlyAnswersInfoLookups() throws Exception {
+        MetadataCache cache = new MetadataCache(10);
+        cache.put(file("info", null));
+
+        assertNotNull(cache.get("info", false));
+        assertNull(cache.get("info", true));
+
+        //A known status is not replaced by an unknown one
+        MediaCrushFile done = file("info", FileStatus.DONE);
+        cache.put(done);
+        cache.put(file("info", null));
+        assertSame(done, cache.get("info", true));
+    }
+
+    @Test
+    public void leastRecentlyUsedFileIsEvicted() throws Exception {
+        MetadataCache cache = new MetadataCache(2);
+        cache.put(file("a", FileStatus.DONE));
+        cache.put(file("b", FileStatus.DONE));
+        cache.get("a", true);
+        cache.put(file("c", FileStatus.DONE));
+
+        assertNotNull(cache.get("a", true));
+        assertNull(cache.get("b", true));
+        assertNotNull(cache.get("c", true));
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.invalidate("a");
+        assertNull(cache.get("a", true));
+    }
+}
@@ -0,0 +1,200 @@
+package jcrush.cache;
+
+import jcrush.JCrushClient;
+import jcrush.model.FileStatus;
+import jcrush.model.MediaCrushFile;
+import jcrush.model.ModelBinding;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class MetadataStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MediaCrushFile file(String hash, FileStatus status) throws Exception {
+        MediaCrushFile file = ModelBinding.GSON.fromJson("{\"compression\":1.0,\"original\":\"/" + hash + ".gif\"," +
+                "\"type\":\"image/gif\",\"files\":[{\"file\":\"/" + hash + ".mp4\",\"type\":\"video/mp4\"}]}",
+                MediaCrushFile.class);
+        ModelBinding.setHash(file, hash);
+        if (status != null)
+            ModelBinding.setStatus(file, status);
+        return file;
+    }
+
+    @Test
+    public void finishedFilesSurviveReopeningAndCrashes() throws Exception {
+        File directory = folder.newFolder("store");
+        MetadataStore store = new MetadataStore(directory);
+        for (int i = 0; i < 3000; i++) {
+            store.put(file("done" + i, FileStatus.DONE));
+        }
+        store.put(file("processing", FileStatus.PROCESSING));
+        store.put(file("unknown", null));
+        assertEquals(3001, store.size());
+        store.close();
+
+        store = new MetadataStore(directory);
+        MediaCrushFile done = store.get("done1234");
+        assertEquals("done1234", done.getHash());
+        assertEquals(FileStatus.DONE, done.getStatus());
+        assertEquals("/done1234.mp4", done.getFiles()[0].getFile());
+        assertNull(store.get("processing"));
+        assertNull(store.get("missing"));
+        assertNull(store.get("unknown"));
+        assertEquals("unknown", store.get("unknown", false).getHash());
+        assertNull(store.get("processing", false));
+        assertEquals(2, store.getHitCount());
+        store.close();
+
+        //A record torn by a crash is dropped, and a lost table is rebuilt from the log
+        FileOutputStream log = new FileOutputStream(new File(directory, "metadata.log"), true);
+        log.write(new byte[] { 0, 0, 1, 0, 42, 42 });
+        log.close();
+        assertTrue(new File(directory, "metadata.idx").delete());
+        store = new MetadataStore(directory);
+        assertEquals(3001, store.size());
+        assertNotNull(store.get("done0"));
+        assertNotNull(store.get("done2999"));
+        store.put(file("after", FileStatus.DONE));
+        store.close();
+
+        store = new MetadataStore(directory);
+        assertNotNull(store.get("after"));
+        store.close();
+    }
+
+    @Test
+    public void removedFilesAreCompactedAway() throws Exception {
+        File directory = folder.newFolder("store");
+        MetadataStore store = new MetadataStore(directory);
+        store.setCompactionThreshold(1, Long.MAX_VALUE);
+        store.setServingStale(true);
+        for (int i = 0; i < 1000; i++) {
+            store.put(file("file" + i, FileStatus.PROCESSING));
+            store.put(file("file" + i, FileStatus.DONE));
+        }
+        for (int i = 0; i < 900; i++) {
+            store.remove("file" + i);
+        }
+        long length = store.getLogLength();
+        assertTrue(store.getGarbageBytes() > length / 2);
+
+        store.compact();
+        assertEquals(1, store.getCompactionCount());
+        assertEquals(0, store.getGarbageBytes());
+        assertTrue(store.getLogLength() < length / 5);
+        assertNull(store.get("file0"));
+        assertNotNull(store.get("file999"));
+        store.close();
+
+        store = new MetadataStore(directory);
+        assertEquals(100, store.size());
+        assertNull(store.getStale("file899"));
+        assertEquals(FileStatus.DONE, store.get("file900").getStatus());
+        store.close();
+    }
+
+    @Test
+    public void warmRestartSendsNoRequests() throws Exception {
+        File directory = folder.newFolder("store");
+        StubServer stub = new StubServer();
+        stub.setStatusInInfoList(true);
+        String[] hashes = new String[200];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        MetadataStore store = new MetadataStore(directory);
+        store.setServingStale(true);
+        JCrushClient client = new JCrushClient(stub.getApiUrl());
+        client.setCoalescing(false);
+        client.setStore(store);
+        try {
+            client.getFileStatuses(hashes);
+            assertEquals(200, store.size());
+        } finally {
+            client.close();
+            store.close();
+        }
+
+        long requests = stub.getRequestCount("list");
+        store = new MetadataStore(directory);
+        store.setServingStale(true);
+        client = new JCrushClient(stub.getApiUrl());
+        client.setCoalescing(false);
+        client.setStore(store);
+        try {
+            MediaCrushFile[] files = client.getFileInfos(hashes);
+            assertEquals(hashes[42], files[42].getHash());
+            assertEquals(FileStatus.DONE, client.getFileStatus(hashes[7]).getStatus());
+            assertEquals(requests, stub.getRequestCount("list"));
+            assertEquals(0, stub.getRequestCount("status"));
+
+            //A file the store holds as processing is only served once the server cannot be reached
+            store.put(file("pending", FileStatus.PROCESSING));
+            stub.close();
+            assertEquals(FileStatus.PROCESSING, client.getFileStatus("pending").getStatus());
+            assertEquals(1, store.getStaleHitCount());
+        } finally {
+            client.close();
+            store.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void filesWithoutAStatusAnswerInfoLookups() throws Exception {
+        File directory = folder.newFolder("store");
+        StubServer stub = new StubServer();
+        stub.setStatusInInfoList(false);
+        String[] hashes = new String[50];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        MetadataStore store = new MetadataStore(directory);
+        JCrushClient client = new JCrushClient(stub.getApiUrl());
+        client.setCoalescing(false);
+        client.setStore(store);
+        try {
+            client.getFileInfos(hashes);
+            assertEquals(50, store.size());
+            assertNull(store.get(hashes[0]));
+        } finally {
+            client.close();
+            store.close();
+        }
+
+        long requests = stub.getRequestCount("list");
+        store = new MetadataStore(directory);
+        client = new JCrushClient(stub.getApiUrl());
+        client.setCoalescing(false);
+        client.setStore(store);
+        try {
+            assertEquals(hashes[42], client.getFileInfos(hashes)[42].getHash());
+            assertEquals(hashes[7], client.getFileInfo(hashes[7]).getHash());
+            assertEquals(requests, stub.getRequestCount("list"));
+            assertEquals(0, stub.getRequestCount("info"));
+
+            //A status lookup still goes to the server, and the finished file then replaces the one without a status
+            assertEquals(FileStatus.DONE, client.getFileStatus(hashes[7]).getStatus());
+            assertEquals(1, stub.getRequestCount("status"));
+            assertEquals(FileStatus.DONE, store.get(hashes[7]).getStatus());
+            store.put(file(hashes[7], null));
+            assertEquals(FileStatus.DONE, store.get(hashes[7], false).getStatus());
+        } finally {
+            client.close();
+            store.close();
+            stub.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package jcrush.io;
+
+import jcrush.JCrushClient;
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubServer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ContentEncodingTest {
+
+    @Test
+    public void compressedResponsesAreDecodedAndCounted() throws Exception {
+        for (String encoding : new String[] { "gzip", "deflate", null }) {
+            StubServer stub = new StubServer();
+            JCrushClient client = new JCrushClient(stub.getApiUrl());
+            try {
+                stub.setContentEncoding(encoding);
+                String[] hashes = new String[100];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashes[i] = String.format("hash%08d", i);
+                    stub.seed(hashes[i], "image/gif");
+                }
+
+                MediaCrushFile[] files = client.getFileInfos(hashes);
+                assertEquals(hashes.length, files.length);
+                for (int i = 0; i < files.length; i++) {
+                    assertEquals(hashes[i], files[i].getHash());
+                    assertEquals(2, files[i].getFiles().length);
+                }
+
+                TransferStats stats = client.getTransferStats();
+                if (encoding == null) {
+                    assertEquals(0, stats.getCompressedResponseCount());
+                    assertEquals(stats.getReceivedBytes(), stats.getDecodedBytes());
+                } else {
+                    assertTrue(stats.getCompressedResponseCount() > 0);
+                    assertTrue("Ratio was " + stats.getCompressionRatio(), stats.getCompressionRatio() > 5);
+                }
+            } finally {
+                client.close();
+                stub.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package jcrush.io;
+
+import jcrush.JCrushClient;
+import jcrush.model.FileType;
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import jcrush.system.exceptions.DuplicateUploadException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class HttpClientTransportTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void everyCallWorksOverTheHttpClient() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        client.setTransport(new HttpClientTransport());
+        String[] hashes = new String[200];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = String.format("hash%08d", i);
+            stub.seed(hashes[i], "image/gif");
+        }
+
+        assertEquals(hashes[0], client.getFileInfo(hashes[0]).getHash());
+        assertTrue(client.doesExists(hashes[1]));
+        assertFalse(client.doesExists("missing00000"));
+        MediaCrushFile[] files = client.getFileInfos(hashes);
+        assertEquals(hashes.length, files.length);
+        assertTrue(client.getTransferStats().getCompressedResponseCount() > 0);
+
+        List<CompletableFuture<MediaCrushFile>> lookups = new ArrayList<CompletableFuture<MediaCrushFile>>();
+        for (String hash : hashes) {
+            lookups.add(client.getFileStatusAsync(hash));
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            assertEquals(hashes[i], lookups.get(i).get().getHash());
+        }
+
+        byte[] content = "uploaded over the http client".getBytes("UTF-8");
+        String hash = client.uploadFile(new ByteArrayInputStream(content), content.length, FileType.GIF, "upload.gif");
+        assertNotNull(hash);
+        try {
+            client.uploadFile(new ByteArrayInputStream(content), content.length, FileType.GIF, "upload.gif");
+            fail("The file was already uploaded");
+        } catch (DuplicateUploadException expected) {
+        }
+        client.delete(hash);
+        assertFalse(client.doesExists(hash));
+    }
+}
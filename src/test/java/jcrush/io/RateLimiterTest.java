@@ -0,0 +1,95 @@
+package jcrush.io;
+
+import jcrush.JCrushClient;
+import jcrush.model.FileType;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import jcrush.system.exceptions.RateLimitedException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void failFastRejectsOnceTheBurstIsSpent() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.5, 2);
+        limiter.setMode(RateLimiter.Mode.FAIL_FAST);
+        limiter.acquire();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            fail("The third token should have been rejected");
+        } catch (RateLimitedException expected) {
+        }
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void rateIsCutOncePerCooldownAndGrowsBack() {
+        RateLimiter limiter = new RateLimiter(8, 1, 8, 1);
+        limiter.setCooldown(1, TimeUnit.HOURS);
+        limiter.onRateLimited();
+        limiter.onRateLimited();
+        assertEquals(4, limiter.getRate(), 0.0001);
+        assertEquals(2, limiter.getRateLimitedCount());
+
+        for (int i = 0; i < 4; i++) {
+            limiter.onSuccess();
+        }
+        assertTrue(limiter.getRate() > 4.9 && limiter.getRate() < 5.1);
+    }
+
+    @Test
+    public void queuedRequestsArePaced() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+        //The first token is saved up, the other four come 50ms apart
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        assertEquals(4, limiter.getQueuedCount());
+    }
+
+    @Test
+    public void clientCutsTheRateWhenTheServerAnswers420() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        RateLimiter limiter = new RateLimiter(100, 1, 100, 10);
+        client.setRateLimiter(limiter);
+        stub.setFaultRate(420, 1);
+        try {
+            client.uploadFile(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 3, FileType.GIF, "test.gif");
+            fail("The upload should have been rate limited");
+        } catch (RateLimitedException expected) {
+        }
+        assertEquals(50, limiter.getRate(), 0.0001);
+    }
+
+    @Test
+    public void failFastUploadsThrowRateLimitedException() throws Exception {
+        JCrushClient client = api.getClient();
+        RateLimiter limiter = new RateLimiter(0.01, 1);
+        limiter.setMode(RateLimiter.Mode.FAIL_FAST);
+        client.setRateLimiter(limiter);
+        client.uploadFile(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), 3, FileType.GIF, "test.gif");
+        try {
+            client.uploadFile(new ByteArrayInputStream(new byte[] { 4, 5, 6 }), 3, FileType.GIF, "test.gif");
+            fail("The second upload should have been rejected");
+        } catch (RateLimitedException expected) {
+        }
+        try {
+            client.uploadFileViaURL("http://example.com/test.gif");
+            fail("The URL upload should have been rejected");
+        } catch (RateLimitedException expected) {
+        }
+        assertEquals(2, limiter.getRejectedCount());
+    }
+}
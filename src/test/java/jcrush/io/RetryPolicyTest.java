@@ -0,0 +1,85 @@
+package jcrush.io;
+
+import jcrush.JCrushClient;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import jcrush.system.exceptions.ServerUnavailableException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void unavailableLookupsAreRetriedWithinTheBudget() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed("CPvuR5lRhmS0", "image/gif");
+        RetryPolicy policy = new RetryPolicy(3);
+        policy.setInitialBackoff(1, TimeUnit.MILLISECONDS);
+        policy.setBudget(0, 3);
+        client.setRetryPolicy(policy);
+        stub.setFaultRate(503, 1);
+
+        try {
+            client.getFileInfo("CPvuR5lRhmS0");
+            fail("Every attempt should have failed");
+        } catch (ServerUnavailableException expected) {
+        }
+        assertEquals(3, stub.getRequestCount("info"));
+
+        //One retry is left in the budget
+        try {
+            client.doesExists("CPvuR5lRhmS0");
+            fail("Every attempt should have failed");
+        } catch (ServerUnavailableException expected) {
+        }
+        assertEquals(2, stub.getRequestCount("exists"));
+        assertEquals(3, policy.getRetryCount());
+        assertEquals(1, policy.getBudgetExhaustedCount());
+
+        stub.setFaultRate(503, 0);
+        assertTrue(client.doesExists("CPvuR5lRhmS0"));
+        assertFalse(client.doesExists("aaaaa"));
+    }
+
+    @Test
+    public void slowRequestsAreHedged() throws Exception {
+        RetryPolicy policy = new RetryPolicy(1);
+        policy.setHedging(0.9, 20, TimeUnit.MILLISECONDS);
+        Callable<String> fast = new Callable<String>() {
+            @Override
+            public String call() {
+                return "fast";
+            }
+        };
+        for (int i = 0; i < RetryPolicy.MIN_LATENCY_SAMPLES; i++) {
+            policy.execute(fast, true);
+        }
+        assertEquals(20, policy.getHedgeDelay(TimeUnit.MILLISECONDS));
+
+        final AtomicInteger attempts = new AtomicInteger();
+        Callable<String> slowThenFast = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (attempts.incrementAndGet() == 1) {
+                    Thread.sleep(2000);
+                    return "slow";
+                }
+                return "hedge";
+            }
+        };
+        long start = System.nanoTime();
+        assertEquals("hedge", policy.execute(slowThenFast, true));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+    }
+}
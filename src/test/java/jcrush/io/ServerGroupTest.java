@@ -0,0 +1,171 @@
+package jcrush.io;
+
+import jcrush.JCrushClient;
+import jcrush.model.FileType;
+import jcrush.stub.StubServer;
+import jcrush.system.exceptions.ServerUnavailableException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ServerGroupTest {
+
+    @Test
+    public void lookupsAreRoutedByHashAndUploadsSpread() throws Exception {
+        StubServer[] stubs = { new StubServer(), new StubServer(), new StubServer() };
+        ServerGroup group = new ServerGroup(stubs[0].getApiUrl(), stubs[1].getApiUrl(), stubs[2].getApiUrl());
+        JCrushClient client = new JCrushClient(stubs[0].getApiUrl());
+        client.setServers(group);
+        try {
+            Map<String, Integer> owned = new HashMap<String, Integer>();
+            for (int i = 0; i < 300; i++) {
+                String hash = String.format("hash%08d", i);
+                for (StubServer stub : stubs) {
+                    stub.seed(hash, "image/gif");
+                }
+                String owner = group.getOwner(hash).getApiUrl();
+                owned.put(owner, owned.containsKey(owner) ? owned.get(owner) + 1 : 1);
+                assertEquals(hash, client.getFileInfo(hash).getHash());
+                assertTrue(client.doesExists(hash));
+            }
+            for (StubServer stub : stubs) {
+                int expected = owned.get(stub.getApiUrl());
+                assertTrue("Share was " + expected, expected > 50);
+                assertEquals(expected, stub.getRequestCount("info"));
+                assertEquals(expected, stub.getRequestCount("exists"));
+            }
+
+            for (int i = 0; i < 30; i++) {
+                byte[] content = ("upload " + i).getBytes("UTF-8");
+                client.uploadFile(new ByteArrayInputStream(content), content.length, FileType.GIF, "upload" + i + ".gif");
+            }
+            for (StubServer stub : stubs) {
+                assertTrue(stub.getRequestCount("upload/file") > 0);
+            }
+        } finally {
+            client.close();
+            for (StubServer stub : stubs) {
+                stub.close();
+            }
+        }
+    }
+
+    @Test
+    public void failingServerIsEjectedAndProbedBack() throws Exception {
+        StubServer[] stubs = { new StubServer(), new StubServer() };
+        ServerGroup group = new ServerGroup(Arrays.asList(stubs[0].getApiUrl(), stubs[1].getApiUrl()), 2, 200, TimeUnit.MILLISECONDS);
+        JCrushClient client = new JCrushClient(stubs[0].getApiUrl());
+        client.setServers(group);
+        client.setCoalescing(false);
+        try {
+            String hash = null;
+            for (int i = 0; hash == null; i++) {
+                String candidate = String.format("hash%08d", i);
+                if (group.getOwner(candidate).getApiUrl().equals(stubs[0].getApiUrl()))
+                    hash = candidate;
+            }
+            for (StubServer stub : stubs) {
+                stub.seed(hash, "image/gif");
+            }
+            ServerGroup.Server owner = group.getOwner(hash);
+
+            stubs[0].setFaultRate(503, 1);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    client.getFileInfo(hash);
+                    fail("The owner is failing");
+                } catch (ServerUnavailableException expected) {
+                }
+            }
+            assertEquals(CircuitBreaker.State.OPEN, owner.getCircuitBreaker().getState());
+
+            //The ejected owner is skipped for the next server on the ring
+            assertEquals(hash, client.getFileInfo(hash).getHash());
+            assertEquals(1, stubs[1].getRequestCount("info"));
+            assertEquals(2, stubs[0].getRequestCount("info"));
+
+            //Once the open time passed, a probe goes to the owner and brings it back
+            stubs[0].setFaultRate(503, 0);
+            Thread.sleep(250);
+            assertEquals(hash, client.getFileInfo(hash).getHash());
+            assertEquals(3, stubs[0].getRequestCount("info"));
+            assertEquals(CircuitBreaker.State.CLOSED, owner.getCircuitBreaker().getState());
+            assertEquals(1, owner.getCircuitBreaker().getOpenCount());
+            assertEquals(0, owner.getOutstanding());
+        } finally {
+            client.close();
+            for (StubServer stub : stubs) {
+                stub.close();
+            }
+        }
+    }
+
+    @Test
+    public void ejectedServerIsProbedInTheBackground() throws Exception {
+        StubServer[] stubs = { new StubServer(), new StubServer() };
+        ServerGroup group = new ServerGroup(Arrays.asList(stubs[0].getApiUrl(), stubs[1].getApiUrl()), 1, 100, TimeUnit.MILLISECONDS);
+        JCrushClient client = new JCrushClient(stubs[0].getApiUrl());
+        client.setServers(group);
+        client.setCoalescing(false);
+        try {
+            ServerGroup.Server failing = group.getServers().get(0);
+            stubs[0].setFaultRate(503, 1);
+            String hash = null;
+            for (int i = 0; hash == null; i++) {
+                String candidate = String.format("hash%08d", i);
+                if (group.getOwner(candidate) == failing)
+                    hash = candidate;
+            }
+            try {
+                client.getFileInfo(hash);
+                fail("The server is failing");
+            } catch (ServerUnavailableException expected) {
+            }
+
+            //A probe that fails keeps the server ejected
+            Thread.sleep(400);
+            assertTrue(stubs[0].getRequestCount("root") > 0);
+            assertTrue(failing.getCircuitBreaker().getOpenCount() > 1);
+
+            //A probe that is answered brings it back without any request for it
+            stubs[0].setFaultRate(503, 0);
+            long probes = stubs[0].getRequestCount("root");
+            Thread.sleep(400);
+            assertTrue(stubs[0].getRequestCount("root") > probes);
+            assertEquals(CircuitBreaker.State.CLOSED, failing.getCircuitBreaker().getState());
+            assertEquals(1, stubs[0].getRequestCount("info"));
+            assertEquals(0, failing.getOutstanding());
+        } finally {
+            client.close();
+            for (StubServer stub : stubs) {
+                stub.close();
+            }
+        }
+    }
+
+    @Test
+    public void requestThatNeverReachedTheServerIsNoVerdict() throws Exception {
+        ServerGroup group = new ServerGroup(Arrays.asList("http://localhost:1/api/"), 2, 50, TimeUnit.MILLISECONDS);
+        ServerGroup.Server server = group.select("hash");
+        server.release(new SocketTimeoutException(), false);
+        group.select("hash").release(new SocketTimeoutException(), false);
+        assertEquals(CircuitBreaker.State.OPEN, server.getCircuitBreaker().getState());
+
+        //A probe that fails before it is sent, e.g. on an interrupt, gives the probe back
+        Thread.sleep(60);
+        group.select("hash").release(new InterruptedIOException(), false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, server.getCircuitBreaker().getState());
+        assertSame(server, group.select("hash"));
+        server.release(null, true);
+        assertEquals(CircuitBreaker.State.CLOSED, server.getCircuitBreaker().getState());
+        assertEquals(0, server.getOutstanding());
+    }
+}
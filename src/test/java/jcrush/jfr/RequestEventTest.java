@@ -0,0 +1,69 @@
+package jcrush.jfr;
+
+import jcrush.JCrushClient;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RequestEventTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyPhaseOfARequestIsRecorded() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        Recording recording = new Recording();
+        try {
+            stub.seed("CPvuR5lRhmS0", "image/png");
+            for (String name : new String[] { "jcrush.Request", "jcrush.Connect", "jcrush.Upload", "jcrush.ServerWait", "jcrush.ResponseRead" }) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            client.getFileInfo("CPvuR5lRhmS0");
+            recording.stop();
+            File dump = folder.newFile("requests.jfr");
+            recording.dump(dump.toPath());
+
+            Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump.toPath());
+            for (RecordedEvent event : recorded) {
+                if (event.getEventType().getName().startsWith("jcrush."))
+                    assertNull("Only one request was sent", events.put(event.getEventType().getName(), event));
+            }
+            assertEquals(events.keySet().toString(), 5, events.size());
+
+            RecordedEvent request = events.get("jcrush.Request");
+            assertEquals("INFO", request.getString("endpoint"));
+            assertEquals("GET", request.getString("method"));
+            assertEquals(200, request.getInt("status"));
+            assertTrue(request.getLong("bytesReceived") > 0);
+            assertEquals(request.getLong("bytesReceived"), events.get("jcrush.ResponseRead").getLong("bytesReceived"));
+            assertEquals(200, events.get("jcrush.ServerWait").getInt("status"));
+            assertEquals(0, events.get("jcrush.Upload").getLong("bytesSent"));
+            for (RecordedEvent event : events.values()) {
+                assertEquals(request.getInt("urlHash"), event.getInt("urlHash"));
+                assertFalse(event.getStartTime().isBefore(request.getStartTime()));
+                assertFalse(event.getEndTime().isAfter(request.getEndTime()));
+            }
+        } finally {
+            recording.close();
+        }
+    }
+}
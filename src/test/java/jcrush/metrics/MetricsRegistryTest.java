@@ -0,0 +1,86 @@
+package jcrush.metrics;
+
+import jcrush.JCrushClient;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void requestsAreRecordedPerEndpoint() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed("CPvuR5lRhmS0", "image/png");
+        client.getFileInfo("CPvuR5lRhmS0");
+        assertEquals("Nothing is recorded while metrics are off", 0, client.getMetrics().get(Endpoint.INFO).getCallCount());
+
+        final AtomicInteger heard = new AtomicInteger();
+        client.getMetrics().addListener(new MetricsListener() {
+            @Override
+            public void onRequest(Endpoint endpoint, int status, long latency, long bytesSent, long bytesReceived, Throwable error) {
+                heard.incrementAndGet();
+            }
+        });
+        client.getMetrics().setEnabled(true);
+        client.setCoalescing(false);
+        for (int i = 0; i < 10; i++) {
+            client.getFileInfo("CPvuR5lRhmS0");
+        }
+        client.getFileInfos(new String[] { "CPvuR5lRhmS0" });
+
+        EndpointMetrics info = client.getMetrics().get(Endpoint.INFO);
+        assertEquals(10, info.getCallCount());
+        assertEquals(0, info.getErrorCount());
+        assertEquals(0, info.getInFlight());
+        assertEquals(10, info.getStatusCount(200));
+        assertTrue(info.getBytesReceived() > 0);
+        assertTrue(info.getLatencyP99Millis() >= info.getLatencyP50Millis());
+        assertTrue(info.getLatencyMaxMillis() >= info.getLatencyP999Millis());
+
+        EndpointMetrics list = client.getMetrics().get(Endpoint.INFO_LIST);
+        assertEquals(1, list.getCallCount());
+        assertEquals(0, list.getInFlight());
+        assertEquals(11, heard.get());
+
+        client.getMetrics().registerMBeans("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("jcrush:type=Endpoint,client=\"test\",endpoint=INFO");
+        assertEquals(10L, server.getAttribute(name, "CallCount"));
+        client.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(50000, histogram.getPercentile(0.5, TimeUnit.MICROSECONDS), 50000 * 0.032);
+        assertEquals(99000, histogram.getPercentile(0.99, TimeUnit.MICROSECONDS), 99000 * 0.032);
+        assertEquals(99900, histogram.getPercentile(0.999, TimeUnit.MICROSECONDS), 99900 * 0.032);
+        assertEquals(100000, histogram.getMax(TimeUnit.MICROSECONDS), 0);
+        assertEquals(100000000, histogram.getMax(TimeUnit.NANOSECONDS), 0);
+        assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS), 0);
+        assertEquals(50000000, histogram.getPercentile(0.5, TimeUnit.NANOSECONDS), 50000000 * 0.032);
+
+        for (long value = 0; value < 1L << 37; value = value * 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value + " is above its bucket", value <= LatencyHistogram.highestValueOf(index));
+            assertTrue(value + " is below its bucket", index == 0 || value > LatencyHistogram.highestValueOf(index - 1));
+        }
+    }
+}
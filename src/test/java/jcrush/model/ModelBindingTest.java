@@ -0,0 +1,76 @@
+package jcrush.model;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class ModelBindingTest {
+    private static final String FILE = "{\"compression\":2.5,\"original\":\"/abc.gif\",\"type\":\"image/gif\"," +
+            "\"blob_type\":\"video\",\"metadata\":{\"has_audio\":false,\"dimensions\":[1,2]}," +
+            "\"files\":[{\"file\":\"/abc.mp4\",\"type\":\"video/mp4\",\"url\":\"https://example.com/abc.mp4\"}]}";
+
+    @Test
+    public void fileIsReadInOnePassAndUnknownKeysAreSkipped() throws Exception {
+        MediaCrushFile file = ModelBinding.readFile(new JsonReader(new StringReader(FILE)), "abc");
+
+        assertEquals("abc", file.getHash());
+        assertFalse(file.isStatusKnown());
+        assertEquals(2.5, file.getCompression(), 0);
+        assertEquals("/abc.gif", file.getOriginalFile().getFile());
+        assertEquals(FileType.GIF, file.getOriginalFile().getFileType());
+        assertEquals(1, file.getFiles().length);
+        assertEquals(FileType.MP4, file.getFiles()[0].getFileType());
+        assertEquals("https://example.com/abc.mp4", file.getFiles()[0].getURLAsString());
+    }
+
+    @Test
+    public void fileSurvivesARoundTrip() throws Exception {
+        MediaCrushFile file = ModelBinding.readFile(new JsonReader(new StringReader(FILE)), "abc");
+        ModelBinding.setStatus(file, FileStatus.PROCESSING);
+
+        MediaCrushFile copy = ModelBinding.GSON.fromJson(ModelBinding.GSON.toJson(file), MediaCrushFile.class);
+        assertEquals(file, copy);
+        assertEquals(FileStatus.PROCESSING, copy.getStatus());
+        assertEquals(file.getOriginalFile().getFile(), copy.getOriginalFile().getFile());
+        assertEquals(file.getFiles()[0], copy.getFiles()[0]);
+    }
+
+    @Test
+    public void statusIsSetOnACopy() throws Exception {
+        MediaCrushFile file = ModelBinding.readFile(new JsonReader(new StringReader(FILE)), "abc");
+        MediaCrushFile copy = ModelBinding.withStatus(file, FileStatus.ERROR);
+
+        assertFalse(file.isStatusKnown());
+        assertEquals(FileStatus.ERROR, copy.getStatus());
+        assertEquals(file, copy);
+        assertEquals(file.getOriginalFile().getFile(), copy.getOriginalFile().getFile());
+    }
+
+    @Test
+    public void listsAndStatusesAreReadInOnePass() throws Exception {
+        JsonReader list = new JsonReader(new StringReader("{\"abc\":" + FILE + ",\"gone\":null,\"def\":" + FILE + "}"));
+        list.beginObject();
+        assertEquals("abc", ModelBinding.readListedFile(list).getHash());
+        assertEquals("def", ModelBinding.readListedFile(list).getHash());
+        assertNull(ModelBinding.readListedFile(list));
+        list.endObject();
+
+        MediaCrushFile file = ModelBinding.readFileStatus(new JsonReader(new StringReader(
+                "{\"status\":\"done\",\"abc\":" + FILE + "}")), "abc");
+        assertEquals(FileStatus.DONE, file.getStatus());
+        assertEquals(1, file.getFiles().length);
+        MediaCrushFile processing = ModelBinding.readFileStatus(new JsonReader(new StringReader(
+                "{\"status\":\"processing\",\"abc\":null}")), "abc");
+        assertEquals(FileStatus.PROCESSING, processing.getStatus());
+        assertEquals(0, processing.getFiles().length);
+    }
+
+    @Test
+    public void unknownStatusIsAnError() {
+        assertEquals(FileStatus.DONE, ModelBinding.GSON.fromJson("\"done\"", FileStatus.class));
+        assertEquals(FileStatus.ERROR, ModelBinding.GSON.fromJson("\"unheard of\"", FileStatus.class));
+    }
+}
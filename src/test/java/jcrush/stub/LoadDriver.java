@@ -0,0 +1,248 @@
+package jcrush.stub;
+
+import jcrush.JCrush;
+import jcrush.model.FileType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a mixed workload against the API through {@link JCrush} at a fixed request rate and reports the throughput and
+ * latency distribution of every operation. <br></br>
+ * Requests are started on an open-loop schedule: each one has an intended start time, and its latency is measured from
+ * that time rather than from when a thread got around to sending it. A slow server therefore shows up as queueing
+ * delay in the latency instead of silently lowering the request rate. <br></br>
+ * Usage: LoadDriver [rate per second] [duration in seconds] [threads] [api url] <br></br>
+ * Without an API URL, an in-process {@link StubServer} with 2-5ms of latency is started and used.
+ */
+public class LoadDriver {
+    private final int rate;
+    private final long duration;
+    private final int threads;
+    private final List<String> hashes = new ArrayList<String>();
+    private final Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+    private final Map<String, Recorder> recorders = new LinkedHashMap<String, Recorder>();
+    private final AtomicLong uploads = new AtomicLong();
+    private int totalWeight;
+    private long elapsed;
+
+    /**
+     * Create a driver
+     * @param rate
+     *            The number of requests to start every second
+     * @param duration
+     *                The time to run for
+     * @param unit
+     *            The unit of <b>duration</b>
+     * @param threads
+     *               The number of threads sending requests
+     */
+    public LoadDriver(int rate, long duration, TimeUnit unit, int threads) {
+        if (rate <= 0)
+            throw new IllegalArgumentException("rate must be greater than 0!");
+        this.rate = rate;
+        this.duration = unit.toNanos(duration);
+        this.threads = threads;
+        setWeight("info", 40);
+        setWeight("infos", 20);
+        setWeight("status", 20);
+        setWeight("exists", 15);
+        setWeight("upload", 5);
+    }
+
+    /**
+     * Set how often an operation is picked relative to the others
+     * @param operation
+     *                 info, infos, status, exists or upload
+     * @param weight
+     *              The weight, 0 to never run the operation
+     */
+    public void setWeight(String operation, int weight) {
+        if (weight <= 0) {
+            weights.remove(operation);
+            recorders.remove(operation);
+        } else {
+            weights.put(operation, weight);
+            recorders.put(operation, new Recorder());
+        }
+        totalWeight = 0;
+        for (int w : weights.values()) {
+            totalWeight += w;
+        }
+    }
+
+    /**
+     * Add hashes that exist on the server, which the lookups pick from
+     * @param hash
+     *            The hashes
+     */
+    public void addHashes(String... hash) {
+        hashes.addAll(Arrays.asList(hash));
+    }
+
+    /**
+     * Run the workload and wait for every request to finish
+     * @throws InterruptedException
+     *                              If interrupted while waiting
+     */
+    public void run() throws InterruptedException {
+        if (hashes.isEmpty())
+            throw new IllegalStateException("No hashes to look up!");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long count = duration / interval;
+        for (long i = 0; i < count; i++) {
+            final long intended = start + i * interval;
+            long wait = intended - System.nanoTime();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+            final String operation = pick();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Recorder recorder = recorders.get(operation);
+                    try {
+                        execute(operation);
+                        recorder.record(System.nanoTime() - intended, false);
+                    } catch (IOException | RuntimeException e) {
+                        recorder.record(System.nanoTime() - intended, true);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        elapsed = System.nanoTime() - start;
+    }
+
+    private String pick() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0)
+                return entry.getKey();
+        }
+        throw new IllegalStateException();
+    }
+
+    private String randomHash() {
+        return hashes.get(ThreadLocalRandom.current().nextInt(hashes.size()));
+    }
+
+    private void execute(String operation) throws IOException {
+        if (operation.equals("info")) {
+            JCrush.getFileInfo(randomHash());
+        } else if (operation.equals("infos")) {
+            String[] batch = new String[10];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = randomHash();
+            }
+            JCrush.getFileInfos(batch);
+        } else if (operation.equals("status")) {
+            JCrush.getFileStatus(randomHash());
+        } else if (operation.equals("exists")) {
+            JCrush.doesExists(randomHash());
+        } else if (operation.equals("upload")) {
+            //Unique content, so the server never answers 409 for a real duplicate
+            byte[] content = new byte[4096];
+            ThreadLocalRandom.current().nextBytes(content);
+            ByteBuffer.wrap(content).putLong(uploads.incrementAndGet());
+            JCrush.uploadFile(new ByteArrayInputStream(content), content.length, FileType.GIF, "load.gif");
+        }
+    }
+
+    /**
+     * Get the report of the last run
+     * @return
+     *        The throughput, error count and latency percentiles of every operation
+     */
+    public String getReport() {
+        StringBuilder builder = new StringBuilder();
+        double seconds = elapsed / 1e9;
+        long total = 0;
+        builder.append(String.format(Locale.ROOT, "%-8s %8s %7s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            long[] latencies = entry.getValue().snapshot();
+            total += latencies.length;
+            Arrays.sort(latencies);
+            builder.append(String.format(Locale.ROOT, "%-8s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), latencies.length, entry.getValue().errors.get(),
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), percentile(latencies, 1)));
+        }
+        builder.append(String.format(Locale.ROOT, "%d requests in %.1fs: %.1f requests/s (target %d)%n",
+                total, seconds, total / seconds, rate));
+        return builder.toString();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        String apiUrl = args.length > 3 ? args[3] : null;
+
+        LoadDriver driver = new LoadDriver(rate, seconds, TimeUnit.SECONDS, threads);
+        StubServer stub = null;
+        if (apiUrl == null) {
+            stub = new StubServer();
+            stub.setLatency(2, 3, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < 100; i++) {
+                String hash = String.format(Locale.ROOT, "load%08d", i);
+                stub.seed(hash, "image/gif");
+                driver.addHashes(hash);
+            }
+            apiUrl = stub.getApiUrl();
+        } else {
+            driver.addHashes("CPvuR5lRhmS0", "tVWMM_ziA3nm");
+        }
+        String previous = JCrush.getApiURL();
+        JCrush.changeApiURL(apiUrl);
+        try {
+            driver.run();
+            System.out.print(driver.getReport());
+        } finally {
+            JCrush.changeApiURL(previous);
+            if (stub != null)
+                stub.close();
+        }
+    }
+
+    private static class Recorder {
+        private final AtomicLong errors = new AtomicLong();
+        private long[] latencies = new long[1024];
+        private int size;
+
+        synchronized void record(long latency, boolean error) {
+            if (size == latencies.length)
+                latencies = Arrays.copyOf(latencies, size * 2);
+            latencies[size++] = latency;
+            if (error)
+                errors.incrementAndGet();
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(latencies, size);
+        }
+    }
+}
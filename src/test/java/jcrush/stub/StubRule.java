@@ -0,0 +1,37 @@
+package jcrush.stub;
+
+import jcrush.JCrushClient;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+
+/**
+ * Gives a test a {@link StubServer} and a {@link JCrushClient} pointed at it, and closes both once the test is done.
+ * They are only started when a test first asks for them.
+ */
+public class StubRule extends ExternalResource {
+    private StubServer stub;
+    private JCrushClient client;
+
+    public StubServer getStub() throws IOException {
+        if (stub == null)
+            stub = new StubServer();
+        return stub;
+    }
+
+    public JCrushClient getClient() throws IOException {
+        if (client == null)
+            client = new JCrushClient(getStub().getApiUrl());
+        return client;
+    }
+
+    @Override
+    protected void after() {
+        if (client != null)
+            client.close();
+        if (stub != null)
+            stub.close();
+        client = null;
+        stub = null;
+    }
+}
@@ -0,0 +1,565 @@
+package jcrush.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import jcrush.model.FileStatus;
+import jcrush.system.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stub of the MediaCrush API, covering everything {@link jcrush.JCrushClient} uses: <br></br>
+ * * GET /api/{hash}, /api/info?list=, /api/{hash}/status, /api/{hash}/exists and /api/{hash}/delete <br></br>
+ * * POST /api/upload/file and /api/upload/url <br></br>
+ * Uploaded files are hashed like MediaCrush does, stay {@link FileStatus#PROCESSING} for the processing time and then
+ * end up with the processing outcome. Uploading the same content twice is answered with 409, and an unknown file
+ * extension with 415. Latency and random 404/409/415/420/503 faults can be injected. JSON responses are gzipped for
+ * clients that accept it.
+ */
+public class StubServer implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PREFIX = "/api/";
+    private static final int MIN_COMPRESSED_LENGTH = 128;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, StubFile> files = new ConcurrentHashMap<String, StubFile>();
+    private final ConcurrentHashMap<Integer, Double> faults = new ConcurrentHashMap<Integer, Double>();
+    private final ConcurrentHashMap<String, AtomicLong> requests = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentHashMap<String, byte[]> contents = new ConcurrentHashMap<String, byte[]>();
+    private final Set<String> failing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean rangeSupport = true;
+    private volatile String contentEncoding = "gzip";
+    private volatile long latency;
+    private volatile long latencyJitter;
+    private volatile long processingTime;
+    private volatile FileStatus processingOutcome = FileStatus.DONE;
+    private volatile boolean statusInInfoList;
+    private double rateLimit;
+    private double rateLimitTokens;
+    private long rateLimitRefill;
+
+    /**
+     * Start a stub on a free loopback port
+     * @throws IOException
+     *                    If the server could not be started
+     */
+    public StubServer() throws IOException {
+        //Without TCP_NODELAY, every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(PREFIX, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    StubServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serveContent(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Get the URL to give {@link jcrush.JCrush#changeApiURL(String)}
+     * @return
+     *        The API URL of this stub
+     */
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PREFIX;
+    }
+
+    /**
+     * Get the URL the content put at <b>path</b> is served from
+     * @param path
+     *            The path, such as /CPvuR5lRhmS0.mp4
+     * @return
+     *        The URL
+     */
+    public String getContentUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Serve <b>content</b> at <b>path</b>, as the server does for the files it crushed
+     * @param path
+     *            The path, such as /CPvuR5lRhmS0.mp4
+     * @param content
+     *               The content
+     */
+    public void putContent(String path, byte[] content) {
+        contents.put(path, content);
+    }
+
+    /**
+     * Set whether content is served in byte ranges when a Range header is sent
+     * @param rangeSupport
+     *                    Whether ranges are supported
+     */
+    public void setRangeSupport(boolean rangeSupport) {
+        this.rangeSupport = rangeSupport;
+    }
+
+    /**
+     * Set how JSON responses of at least 128 bytes are compressed for clients that accept it
+     * @param contentEncoding
+     *                       gzip, deflate, or null to never compress
+     */
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Add a file that is done processing and may not be deleted by anyone
+     * @param hash
+     *            The hash of the file
+     * @param type
+     *            The content type of the file
+     */
+    public void seed(String hash, String type) {
+        files.put(hash, new StubFile(hash, type, false, 0, FileStatus.DONE));
+    }
+
+    /**
+     * Add the content of <b>file</b> as if it had already been uploaded by someone else
+     * @param file
+     *            The file whose content to add
+     * @return
+     *        The hash of the file
+     * @throws IOException
+     *                    If the file could not be read
+     */
+    public String seed(File file) throws IOException {
+        String hash = Utils.computeHash(file);
+        seed(hash, Utils.toContentType(file));
+        return hash;
+    }
+
+    /**
+     * Set the latency added to every request
+     * @param latency
+     *               The fixed latency
+     * @param jitter
+     *              The maximum random latency added on top of it
+     * @param unit
+     *            The unit of <b>latency</b> and <b>jitter</b>
+     */
+    public void setLatency(long latency, long jitter, TimeUnit unit) {
+        this.latency = unit.toNanos(latency);
+        this.latencyJitter = unit.toNanos(jitter);
+    }
+
+    /**
+     * Answer requests with <b>status</b> with the probability <b>rate</b>. 409 and 415 are only injected into uploads,
+     * and 404 only into info lists, which are answered with a body of {"error":404}.
+     * @param status
+     *              404, 409, 415, 420 or 503
+     * @param rate
+     *            The probability between 0 and 1, 0 to stop injecting the fault
+     */
+    public void setFaultRate(int status, double rate) {
+        if (status != 404 && status != 409 && status != 415 && status != 420 && status != 503)
+            throw new IllegalArgumentException("Only 404, 409, 415, 420 and 503 can be injected!");
+        if (rate <= 0)
+            faults.remove(status);
+        else
+            faults.put(status, rate);
+    }
+
+    /**
+     * Answer 420 to every request beyond <b>perSecond</b> requests per second, like the real server's rate limit
+     * @param perSecond
+     *                 The number of requests per second, 0 for no limit
+     */
+    public synchronized void setRateLimit(double perSecond) {
+        this.rateLimit = perSecond;
+        this.rateLimitTokens = perSecond;
+        this.rateLimitRefill = System.nanoTime();
+    }
+
+    private synchronized boolean overRateLimit() {
+        if (rateLimit <= 0)
+            return false;
+        long now = System.nanoTime();
+        rateLimitTokens = Math.min(rateLimit, rateLimitTokens + (now - rateLimitRefill) * rateLimit / 1e9);
+        rateLimitRefill = now;
+        if (rateLimitTokens < 1)
+            return true;
+        rateLimitTokens -= 1;
+        return false;
+    }
+
+    /**
+     * Set how long an uploaded file stays {@link FileStatus#PROCESSING}, and what its status is afterwards
+     * @param time
+     *            The processing time
+     * @param unit
+     *            The unit of <b>time</b>
+     * @param outcome
+     *               The status once the processing time has passed
+     */
+    public void setProcessing(long time, TimeUnit unit, FileStatus outcome) {
+        this.processingTime = unit.toNanos(time);
+        this.processingOutcome = outcome;
+    }
+
+    /**
+     * Set whether the info list includes the status of each file. The MediaCrush API does not, so it is off by default
+     * and the client has to look every status up on its own.
+     * @param statusInInfoList
+     *                        Whether to send the status
+     */
+    public void setStatusInInfoList(boolean statusInInfoList) {
+        this.statusInInfoList = statusInInfoList;
+    }
+
+    /**
+     * Set whether every request that names <b>hash</b>, on its own or in an info list, fails with a 500
+     * @param hash
+     *            The hash of the file
+     * @param fail
+     *            Whether the requests fail
+     */
+    public void setFailing(String hash, boolean fail) {
+        if (fail)
+            failing.add(hash);
+        else
+            failing.remove(hash);
+    }
+
+    /**
+     * Get the number of requests made to an endpoint
+     * @param endpoint
+     *                The endpoint: root, info, list, status, exists, delete, upload/file or upload/url
+     * @return
+     *        The number of requests
+     */
+    public long getRequestCount(String endpoint) {
+        AtomicLong count = requests.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+        String endpoint = endpointOf(path, exchange.getRequestURI().getRawQuery());
+        count(endpoint);
+        sleep();
+
+        boolean upload = endpoint.startsWith("upload/");
+        if (namesFailing(path, exchange.getRequestURI().getRawQuery())) {
+            respond(exchange, 500, "{\"error\":500}");
+            return;
+        }
+        if (inject(503)) {
+            respond(exchange, 503, "{\"error\":503}");
+            return;
+        }
+        if (inject(420) || overRateLimit()) {
+            respond(exchange, 420, "{\"error\":420}");
+            return;
+        }
+        if (upload && inject(409)) {
+            respond(exchange, 409, "{\"error\":409}");
+            return;
+        }
+        if (upload && inject(415)) {
+            respond(exchange, 415, "{\"error\":415}");
+            return;
+        }
+
+        if (endpoint.equals("upload/file")) {
+            uploadFile(exchange);
+        } else if (endpoint.equals("upload/url")) {
+            uploadUrl(exchange);
+        } else if (endpoint.equals("list") && inject(404)) {
+            respond(exchange, 200, "{\"error\":404}");
+        } else if (endpoint.equals("list")) {
+            String list = exchange.getRequestURI().getRawQuery().substring("list=".length());
+            StringBuilder builder = new StringBuilder("{");
+            String[] hashes = list.split(",");
+            for (int i = 0; i < hashes.length; i++) {
+                if (i > 0)
+                    builder.append(',');
+                StubFile file = files.get(hashes[i]);
+                builder.append('"').append(hashes[i]).append("\":").append(file == null ? "null" : file.toJson(statusInInfoList));
+            }
+            respond(exchange, 200, builder.append('}').toString());
+        } else {
+            String hash = path.contains("/") ? path.substring(0, path.indexOf('/')) : path;
+            StubFile file = files.get(hash);
+            if (file == null) {
+                if (exchange.getRequestMethod().equals("HEAD"))
+                    exchange.sendResponseHeaders(404, -1);
+                else
+                    respond(exchange, 404, "{\"error\":404}");
+                return;
+            }
+            if (endpoint.equals("exists")) {
+                if (exchange.getRequestMethod().equals("HEAD"))
+                    exchange.sendResponseHeaders(200, -1);
+                else
+                    respond(exchange, 200, "{\"exists\":true}");
+            } else if (endpoint.equals("status")) {
+                respond(exchange, 200, "{\"status\":\"" + file.getStatus() + "\",\"" + hash + "\":" + file.toJson(false) + "}");
+            } else if (endpoint.equals("delete")) {
+                if (!file.deletable) {
+                    respond(exchange, 401, "{\"error\":401}");
+                } else {
+                    files.remove(hash);
+                    respond(exchange, 200, "{\"status\":\"success\"}");
+                }
+            } else {
+                respond(exchange, 200, file.toJson(false));
+            }
+        }
+    }
+
+    private void serveContent(HttpExchange exchange) throws IOException {
+        count("download");
+        sleep();
+        byte[] content = contents.get(exchange.getRequestURI().getPath());
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if (inject(503)) {
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+        int start = 0, end = content.length - 1, status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (rangeSupport) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty())
+                    end = Math.min(end, Integer.parseInt(bounds[1]));
+                if (start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(end - start + 1));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, end - start + 1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content, start, end - start + 1);
+        out.close();
+    }
+
+    private static String endpointOf(String path, String query) {
+        if (path.isEmpty())
+            return "root";
+        if (path.equals("info") && query != null && query.startsWith("list="))
+            return "list";
+        if (path.startsWith("upload/"))
+            return path;
+        int slash = path.indexOf('/');
+        return slash == -1 ? "info" : path.substring(slash + 1);
+    }
+
+    private void uploadFile(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        byte[] body = readBody(exchange.getRequestBody());
+        String boundary = contentType == null ? null : contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String text = new String(body, "ISO-8859-1");
+        int name = text.indexOf("filename=\"");
+        int start = text.indexOf("\r\n\r\n", name);
+        int end = boundary == null ? -1 : text.lastIndexOf("\r\n--" + boundary);
+        if (name == -1 || start == -1 || end < start) {
+            respond(exchange, 400, "{\"error\":400}");
+            return;
+        }
+        String fileName = text.substring(name + "filename=\"".length(), text.indexOf('"', name + "filename=\"".length()));
+        java.security.MessageDigest digest = Utils.newContentDigest();
+        digest.update(body, start + 4, end - start - 4);
+        store(exchange, Utils.toHash(digest), Utils.toContentType(new File(fileName)));
+    }
+
+    private void uploadUrl(HttpExchange exchange) throws IOException {
+        String form = new String(readBody(exchange.getRequestBody()), UTF_8);
+        if (!form.startsWith("url=")) {
+            respond(exchange, 400, "{\"error\":400}");
+            return;
+        }
+        String url = URLDecoder.decode(form.substring("url=".length()).replace("+", "%2B"), "UTF-8");
+        java.security.MessageDigest digest = Utils.newContentDigest();
+        digest.update(url.getBytes(UTF_8));
+        store(exchange, Utils.toHash(digest), Utils.toContentType(new File(url)));
+    }
+
+    private void store(HttpExchange exchange, String hash, String type) throws IOException {
+        if (type == null) {
+            respond(exchange, 415, "{\"error\":415}");
+            return;
+        }
+        StubFile file = new StubFile(hash, type, true, System.nanoTime() + processingTime, processingOutcome);
+        if (files.putIfAbsent(hash, file) != null) {
+            respond(exchange, 409, "{\"error\":409,\"hash\":\"" + hash + "\"}");
+            return;
+        }
+        respond(exchange, 200, "{\"hash\":\"" + hash + "\"}");
+    }
+
+    private boolean namesFailing(String path, String query) {
+        if (failing.isEmpty())
+            return false;
+        String hash = path.contains("/") ? path.substring(0, path.indexOf('/')) : path;
+        if (failing.contains(hash))
+            return true;
+        if (query == null || !query.startsWith("list="))
+            return false;
+        for (String h : query.substring("list=".length()).split(",")) {
+            if (failing.contains(h))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean inject(int status) {
+        Double rate = faults.get(status);
+        return rate != null && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private void sleep() {
+        long delay = latency;
+        if (latencyJitter > 0)
+            delay += ThreadLocalRandom.current().nextLong(latencyJitter);
+        if (delay <= 0)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void count(String endpoint) {
+        AtomicLong count = requests.get(endpoint);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = requests.putIfAbsent(endpoint, created);
+            if (count == null)
+                count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        String encoding = contentEncoding;
+        if (encoding != null && accepted != null && accepted.contains(encoding) && bytes.length >= MIN_COMPRESSED_LENGTH) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed);
+            out.write(bytes);
+            out.close();
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static class StubFile {
+        final String hash;
+        final String type;
+        final boolean deletable;
+        final long doneAt;
+        final FileStatus outcome;
+
+        StubFile(String hash, String type, boolean deletable, long doneAt, FileStatus outcome) {
+            this.hash = hash;
+            this.type = type;
+            this.deletable = deletable;
+            this.doneAt = doneAt;
+            this.outcome = outcome;
+        }
+
+        FileStatus getStatus() {
+            return System.nanoTime() - doneAt >= 0 ? outcome : FileStatus.PROCESSING;
+        }
+
+        String toJson(boolean withStatus) {
+            String ext = type.substring(type.indexOf('/') + 1);
+            StringBuilder builder = new StringBuilder("{");
+            if (withStatus)
+                builder.append("\"status\":\"").append(getStatus()).append("\",");
+            builder.append("\"compression\":1.0,\"original\":\"/").append(hash).append('.').append(ext)
+                    .append("\",\"type\":\"").append(type).append("\",\"files\":[");
+            if (getStatus() == FileStatus.DONE) {
+                builder.append("{\"file\":\"/").append(hash).append(".mp4\",\"type\":\"video/mp4\"},")
+                        .append("{\"file\":\"/").append(hash).append('.').append(ext).append("\",\"type\":\"")
+                        .append(type).append("\"}");
+            }
+            return builder.append("]}").toString();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package jcrush.system;
+
+import jcrush.JCrushClient;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void buffersAreSizedByClassAndReused() {
+        BufferPool pool = new BufferPool();
+        byte[] small = pool.acquire(1);
+        assertEquals(BufferPool.MIN_SIZE, small.length);
+        byte[] medium = pool.acquire(5000);
+        assertEquals(8192, medium.length);
+        byte[] huge = pool.acquire(BufferPool.MAX_SIZE + 1);
+        assertEquals(BufferPool.MAX_SIZE + 1, huge.length);
+
+        pool.release(small);
+        pool.release(medium);
+        pool.release(huge);
+        pool.release(new byte[1000]);
+        assertSame(medium, pool.acquire(8000));
+        assertSame(small, pool.acquire(BufferPool.MIN_SIZE));
+        assertEquals(3, pool.getAllocatedCount());
+        assertEquals(2, pool.getReusedCount());
+
+        //A class keeps a bounded number of free buffers
+        for (int i = 0; i < 10; i++) {
+            pool.release(new byte[BufferPool.MAX_SIZE]);
+        }
+        long allocated = pool.getAllocatedCount();
+        for (int i = 0; i < 10; i++) {
+            pool.acquire(BufferPool.MAX_SIZE);
+        }
+        int kept = (int) (10 - (pool.getAllocatedCount() - allocated));
+        assertEquals(4, kept);
+    }
+
+    @Test
+    public void requestsStopAllocatingBuffersOnceWarm() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        Utils.copy(new ByteArrayInputStream(data), copy, Constants.STREAM_BUFFER_SIZE);
+        assertArrayEquals(data, copy.toByteArray());
+
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        client.setCoalescing(false);
+        stub.seed("CPvuR5lRhmS0", "image/png");
+        for (int i = 0; i < 10; i++) {
+            client.getFileInfo("CPvuR5lRhmS0");
+        }
+        long allocated = BufferPool.shared().getAllocatedCount();
+        for (int i = 0; i < 100; i++) {
+            assertEquals("CPvuR5lRhmS0", client.getFileInfo("CPvuR5lRhmS0").getHash());
+        }
+        assertEquals(allocated, BufferPool.shared().getAllocatedCount());
+    }
+}
@@ -0,0 +1,54 @@
+package jcrush.system;
+
+import jcrush.model.FileType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ContentSnifferTest {
+
+    @Test
+    public void signaturesAreRecognized() throws Exception {
+        assertEquals(FileType.GIF, sniff("GIF89a\u0001\u0000"));
+        assertEquals(FileType.GIF, sniff("GIF87a"));
+        assertEquals(FileType.PNG, sniff("\u0089PNG\r\n\u001a\n\u0000\u0000\u0000\rIHDR"));
+        assertEquals(FileType.JPEG, sniff("\u00ff\u00d8\u00ff\u00e0\u0000\u0010JFIF"));
+        assertEquals(FileType.MP4, sniff("\u0000\u0000\u0000\u0018ftypmp42"));
+        assertEquals(FileType.MP4, sniff("\u0000\u0000\u0000\u0018ftypXAVC\u0000\u0000\u0000\u0000mp42iso2"));
+        assertEquals(FileType.WEBM, sniff("\u001aE\u00df\u00a3\u009fB\u0086\u0081\u0001"));
+        assertEquals(FileType.MP3, sniff("ID3\u0004\u0000"));
+        assertEquals(FileType.MP3, sniff("\u00ff\u00fb\u0090d"));
+
+        //The first packet follows the 27 byte page header and a one byte segment table
+        String page = "OggS\u0000\u0002" + repeat('\u0000', 20) + "\u0001\u001e";
+        assertEquals(FileType.OGG, sniff(page + "\u0001vorbis"));
+        assertEquals(FileType.OGV, sniff(page + "\u0080theora"));
+    }
+
+    @Test
+    public void otherContentIsUnknown() throws Exception {
+        assertEquals(FileType.UNKNOWN, sniff(""));
+        assertEquals(FileType.UNKNOWN, sniff("GIF8"));
+        assertEquals(FileType.UNKNOWN, sniff("plain text, not media"));
+        //ISO base media files that are not MP4, even when they list MP4 brands as compatible
+        assertEquals(FileType.UNKNOWN, sniff("\u0000\u0000\u0000\u0018ftypheic\u0000\u0000\u0000\u0000mif1heic"));
+        assertEquals(FileType.UNKNOWN, sniff("\u0000\u0000\u0000\u001cftypavif\u0000\u0000\u0000\u0000avifmif1miaf"));
+        assertEquals(FileType.UNKNOWN, sniff("\u0000\u0000\u0000\u0020ftypM4A \u0000\u0000\u0000\u0000M4A mp42isom\u0000\u0000\u0000\u0000"));
+        assertEquals(FileType.UNKNOWN, sniff("\u0000\u0000\u0000\u0014ftypqt  \u0000\u0000\u0002\u0000qt  "));
+        //A frame sync with a reserved layer is not MP3
+        assertEquals(FileType.UNKNOWN, sniff("\u00ff\u00f9\u0090d"));
+    }
+
+    private static FileType sniff(String head) throws Exception {
+        byte[] bytes = head.getBytes("ISO-8859-1");
+        return ContentSniffer.sniff(bytes, bytes.length);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package jcrush.system;
+
+import jcrush.JCrushClient;
+import jcrush.model.MediaCrushFile;
+import jcrush.stub.StubRule;
+import jcrush.stub.StubServer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+    @Rule
+    public StubRule api = new StubRule();
+
+    @Test
+    public void concurrentLookupsShareOneRequest() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed("CPvuR5lRhmS0", "image/gif");
+        stub.setLatency(200, 0, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<MediaCrushFile> first = client.getFileInfoAsync("CPvuR5lRhmS0");
+        CompletableFuture<MediaCrushFile> second = client.getFileInfoAsync("CPvuR5lRhmS0");
+        CompletableFuture<Boolean> exists = client.doesExistsAsync("CPvuR5lRhmS0");
+        CompletableFuture<Boolean> existsAgain = client.doesExistsAsync("CPvuR5lRhmS0");
+        assertEquals("CPvuR5lRhmS0", client.getFileInfo("CPvuR5lRhmS0").getHash());
+        assertEquals("CPvuR5lRhmS0", first.get().getHash());
+        assertEquals("CPvuR5lRhmS0", second.get().getHash());
+        assertTrue(exists.get());
+        assertTrue(existsAgain.get());
+
+        assertEquals(1, stub.getRequestCount("info"));
+        assertEquals(1, stub.getRequestCount("exists"));
+        assertEquals(3, client.getCoalescedCount());
+    }
+
+    @Test
+    public void everyCallerGetsAFutureOfItsOwn() throws Exception {
+        StubServer stub = api.getStub();
+        JCrushClient client = api.getClient();
+        stub.seed("CPvuR5lRhmS0", "image/gif");
+        stub.setLatency(200, 0, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<MediaCrushFile> cancelled = client.getFileStatusAsync("CPvuR5lRhmS0");
+        CompletableFuture<MediaCrushFile> completed = client.getFileStatusAsync("CPvuR5lRhmS0");
+        CompletableFuture<MediaCrushFile> waiting = client.getFileStatusAsync("CPvuR5lRhmS0");
+        assertNotSame(cancelled, waiting);
+        cancelled.cancel(false);
+        completed.complete(null);
+
+        assertEquals("CPvuR5lRhmS0", waiting.get(5, TimeUnit.SECONDS).getHash());
+        assertTrue(cancelled.isCancelled());
+        assertNull(completed.get());
+        assertEquals(1, stub.getRequestCount("status"));
+        assertEquals(2, client.getCoalescedCount());
+    }
+}
@@ -0,0 +1,18 @@
+package jcrush.system;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.*;
+
+public class UtilsTest {
+
+    @Test
+    public void computedHashMatchesMediaCrush() throws Exception {
+        //base64(md5("")) is 1B2M2Y8AsgTpgAmY7PhCfg==
+        assertEquals("1B2M2Y8AsgTp", Utils.computeHash(new ByteArrayInputStream(new byte[0])));
+        //base64(md5("hello world")) is XrY7u+Ae7tCTyyK7j1rNww==, MediaCrush replaces + with -
+        assertEquals("XrY7u-Ae7tCT", Utils.computeHash(new ByteArrayInputStream("hello world".getBytes("UTF-8"))));
+    }
+}